@@ -39,6 +39,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -66,6 +67,7 @@ import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.common.AggregatedHttpResponse;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.HttpStatus;
 import com.linecorp.armeria.common.HttpStatusClass;
 import com.linecorp.armeria.common.MediaType;
@@ -116,6 +118,8 @@ final class ArmeriaCentralDogma extends AbstractCentralDogma {
                                     .put("value", "active")));
     private static final String REMOVED_PARAM = "?status=removed";
 
+    private static final CharSequence LAST_EVENT_ID = HttpHeaderNames.of("Last-Event-ID");
+
     private static final Map<String, Function<String, CentralDogmaException>> EXCEPTION_FACTORIES =
             ImmutableMap.<String, Function<String, CentralDogmaException>>builder()
                     .put(ProjectExistsException.class.getName(), ProjectExistsException::new)
@@ -133,11 +137,20 @@ final class ArmeriaCentralDogma extends AbstractCentralDogma {
 
     private final WebClient client;
     private final String authorization;
+    private final boolean useStreamingWatch;
+    private final Map<String, WatchMultiplexer> watchMultiplexers = new ConcurrentHashMap<>();
+    private final Map<String, WatchStreams> watchStreams = new ConcurrentHashMap<>();
 
     ArmeriaCentralDogma(ScheduledExecutorService executor, WebClient client, String accessToken) {
+        this(executor, client, accessToken, false);
+    }
+
+    ArmeriaCentralDogma(ScheduledExecutorService executor, WebClient client, String accessToken,
+                        boolean useStreamingWatch) {
         super(executor);
         this.client = requireNonNull(client, "client");
         authorization = "Bearer " + requireNonNull(accessToken, "accessToken");
+        this.useStreamingWatch = useStreamingWatch;
     }
 
     @Override
@@ -808,6 +821,25 @@ final class ArmeriaCentralDogma extends AbstractCentralDogma {
             validatePathPattern(pathPattern, "pathPattern");
             checkArgument(timeoutMillis > 0, "timeoutMillis: %s (expected: > 0)", timeoutMillis);
 
+            if (useStreamingWatch) {
+                return unsafeCast(watchStreams(projectName, repositoryName).watchRepository(
+                        pathPattern, lastKnownRevision, timeoutMillis));
+            }
+            return unsafeCast(watchMultiplexer(projectName, repositoryName).watchRepository(
+                    pathPattern, lastKnownRevision, timeoutMillis));
+        } catch (Exception e) {
+            return exceptionallyCompletedFuture(e);
+        }
+    }
+
+    /**
+     * Watches the repository with a dedicated request, which is used when the server does not support
+     * multi-watch requests.
+     */
+    private CompletableFuture<Revision> watchRepositoryAlone(String projectName, String repositoryName,
+                                                             Revision lastKnownRevision, String pathPattern,
+                                                             long timeoutMillis) {
+        try {
             final StringBuilder path = pathBuilder(projectName, repositoryName);
             path.append("/contents");
             if (pathPattern.charAt(0) != '/') {
@@ -845,16 +877,28 @@ final class ArmeriaCentralDogma extends AbstractCentralDogma {
             requireNonNull(query, "query");
             checkArgument(timeoutMillis > 0, "timeoutMillis: %s (expected: > 0)", timeoutMillis);
 
+            if (useStreamingWatch) {
+                return unsafeCast(watchStreams(projectName, repositoryName).watchFile(
+                        query, lastKnownRevision, timeoutMillis));
+            }
+            return unsafeCast(watchMultiplexer(projectName, repositoryName).watchFile(
+                    query, lastKnownRevision, timeoutMillis));
+        } catch (Exception e) {
+            return exceptionallyCompletedFuture(e);
+        }
+    }
+
+    /**
+     * Watches the file with a dedicated request, which is used when the server does not support
+     * multi-watch requests.
+     */
+    private <T> CompletableFuture<Entry<T>> watchFileAlone(String projectName, String repositoryName,
+                                                           Revision lastKnownRevision, Query<T> query,
+                                                           long timeoutMillis) {
+        try {
             final StringBuilder path = pathBuilder(projectName, repositoryName);
             path.append("/contents").append(query.path());
-            if (query.type() == QueryType.JSON_PATH) {
-                path.append('?');
-                query.expressions().forEach(expr -> path.append("jsonpath=").append(encodeParam(expr))
-                                                        .append('&'));
-
-                // Remove the trailing '?' or '&'.
-                path.setLength(path.length() - 1);
-            }
+            appendJsonPathParams(path, query);
 
             return watch(lastKnownRevision, timeoutMillis, path.toString(), query.type(),
                          ArmeriaCentralDogma::watchFile);
@@ -882,17 +926,9 @@ final class ArmeriaCentralDogma extends AbstractCentralDogma {
                                            BiFunction<AggregatedHttpResponse, QueryType, T> func) {
         final RequestHeadersBuilder builder = headersBuilder(HttpMethod.GET, path);
         builder.set(HttpHeaderNames.IF_NONE_MATCH, lastKnownRevision.text())
-               .set(HttpHeaderNames.PREFER, "wait=" + LongMath.saturatedAdd(timeoutMillis, 999) / 1000L);
+               .set(HttpHeaderNames.PREFER, preferWait(timeoutMillis));
 
-        try (SafeCloseable ignored = Clients.withContextCustomizer(ctx -> {
-            final long responseTimeoutMillis = ctx.responseTimeoutMillis();
-            final long adjustmentMillis = WatchTimeout.availableTimeout(timeoutMillis, responseTimeoutMillis);
-            if (responseTimeoutMillis > 0) {
-                ctx.setResponseTimeoutMillis(TimeoutMode.EXTEND, adjustmentMillis);
-            } else {
-                ctx.setResponseTimeoutMillis(adjustmentMillis);
-            }
-        })) {
+        try (SafeCloseable ignored = withWatchTimeout(timeoutMillis)) {
             return client.execute(builder.build()).aggregate()
                          .handle((res, cause) -> {
                              if (cause == null) {
@@ -910,6 +946,247 @@ final class ArmeriaCentralDogma extends AbstractCentralDogma {
         }
     }
 
+    private WatchMultiplexer watchMultiplexer(String projectName, String repositoryName) {
+        final String key = projectName + '/' + repositoryName;
+        return watchMultiplexers.computeIfAbsent(key, unused -> new WatchMultiplexer(
+                executor(),
+                (targets, timeoutMillis) -> watchMany(projectName, repositoryName, targets, timeoutMillis),
+                target -> {
+                    final long timeoutMillis = Math.max(1, target.remainingMillis());
+                    final Query<?> query = target.query();
+                    if (query != null) {
+                        return watchFileAlone(projectName, repositoryName, target.lastKnownRevision(),
+                                              query, timeoutMillis);
+                    }
+                    return watchRepositoryAlone(projectName, repositoryName, target.lastKnownRevision(),
+                                                target.pathPattern(), timeoutMillis);
+                }));
+    }
+
+    /**
+     * Sends a multi-watch request which watches the specified {@link WatchMultiplexer.Target}s at once.
+     */
+    private CompletableFuture<Map<Integer, Object>> watchMany(String projectName, String repositoryName,
+                                                              List<WatchMultiplexer.Target> targets,
+                                                              long timeoutMillis) {
+        final ArrayNode body = JsonNodeFactory.instance.arrayNode(targets.size());
+        for (WatchMultiplexer.Target target : targets) {
+            final ObjectNode node = body.addObject();
+            final Query<?> query = target.query();
+            if (query != null) {
+                node.put("path", query.path());
+                if (query.type() == QueryType.JSON_PATH) {
+                    final ArrayNode jsonPaths = node.putArray("jsonPaths");
+                    query.expressions().forEach(jsonPaths::add);
+                }
+            } else {
+                node.put("pathPattern", target.pathPattern());
+            }
+            node.put("lastKnownRevision", target.lastKnownRevision().major());
+        }
+
+        final String path = pathBuilder(projectName, repositoryName).append("/watch").toString();
+        final RequestHeadersBuilder builder = headersBuilder(HttpMethod.POST, path);
+        builder.set(HttpHeaderNames.PREFER, preferWait(timeoutMillis));
+
+        final HttpResponse res;
+        try (SafeCloseable ignored = withWatchTimeout(timeoutMillis)) {
+            res = client.execute(builder.build(), toBytes(body));
+        }
+        final CompletableFuture<Map<Integer, Object>> future = res.aggregate().handle((aggregated, cause) -> {
+            if (cause == null) {
+                return watchMany(aggregated, targets);
+            }
+
+            if ((cause instanceof ClosedStreamException) &&
+                client.options().factory().isClosing()) {
+                // A user closed the client factory while watching.
+                return null;
+            }
+
+            return Exceptions.throwUnsafely(cause);
+        });
+        future.whenComplete((unused, cause) -> {
+            if (future.isCancelled()) {
+                // Cancelled by WatchMultiplexer because the request is not needed anymore.
+                res.abort();
+            }
+        });
+        return future;
+    }
+
+    private static Map<Integer, Object> watchMany(AggregatedHttpResponse res,
+                                                  List<WatchMultiplexer.Target> targets) {
+        switch (res.status().code()) {
+            case 200: // OK
+                final ImmutableMap.Builder<Integer, Object> builder = ImmutableMap.builder();
+                for (JsonNode node : toJson(res, JsonNodeType.ARRAY)) {
+                    final int index = getField(node, "index").asInt();
+                    if (index < 0 || index >= targets.size()) {
+                        throw new CentralDogmaException("invalid server response; invalid index: " + node);
+                    }
+
+                    final JsonNode exceptionNode = node.get("exception");
+                    if (exceptionNode != null) {
+                        builder.put(index, newException(exceptionNode.textValue(),
+                                                        getField(node, "message").textValue()));
+                        continue;
+                    }
+
+                    final Revision revision = new Revision(getField(node, "revision").asInt());
+                    final Query<?> query = targets.get(index).query();
+                    if (query == null) {
+                        builder.put(index, revision);
+                        continue;
+                    }
+                    try {
+                        builder.put(index, toEntry(revision, getField(node, "entry"), query.type()));
+                    } catch (CentralDogmaException e) {
+                        builder.put(index, e);
+                    }
+                }
+                return builder.build();
+            case 304: // Not Modified
+                return ImmutableMap.of();
+            case 404: // Not Found
+            case 405: // Method Not Allowed
+                final MediaType contentType = res.headers().contentType();
+                if (contentType == null || !contentType.is(MediaType.JSON)) {
+                    // Not an error from the service, i.e. the server does not have the multi-watch endpoint.
+                    throw new UnsupportedOperationException("multi-watch request");
+                }
+        }
+
+        return handleErrorResponse(res);
+    }
+
+    private WatchStreams watchStreams(String projectName, String repositoryName) {
+        final String key = projectName + '/' + repositoryName;
+        return watchStreams.computeIfAbsent(key, unused -> new WatchStreams(
+                executor(),
+                new WatchStreams.Connector() {
+                    @Override
+                    public HttpResponse connect(@Nullable Query<?> query, @Nullable String pathPattern,
+                                                Revision lastKnownRevision) {
+                        return openWatchStream(projectName, repositoryName, query, pathPattern,
+                                               lastKnownRevision);
+                    }
+
+                    @Override
+                    public Object decode(@Nullable Query<?> query, @Nullable String eventType, String data) {
+                        return decodeWatchEvent(query, eventType, data);
+                    }
+
+                    @Override
+                    public Throwable toException(AggregatedHttpResponse res) {
+                        return watchStreamException(res);
+                    }
+                },
+                target -> {
+                    // Fall back to the long-polling requests.
+                    final long timeoutMillis = Math.max(1, target.remainingMillis());
+                    final WatchMultiplexer multiplexer = watchMultiplexer(projectName, repositoryName);
+                    final Query<?> query = target.query();
+                    if (query != null) {
+                        return multiplexer.watchFile(query, target.lastKnownRevision(), timeoutMillis);
+                    }
+                    return multiplexer.watchRepository(target.pathPattern(), target.lastKnownRevision(),
+                                                       timeoutMillis);
+                }));
+    }
+
+    /**
+     * Opens a stream of the server-sent events which notify the changes of the file specified with
+     * the {@link Query}, or the files which match the {@code pathPattern}.
+     */
+    private HttpResponse openWatchStream(String projectName, String repositoryName,
+                                         @Nullable Query<?> query, @Nullable String pathPattern,
+                                         Revision lastKnownRevision) {
+        final StringBuilder path = pathBuilder(projectName, repositoryName).append("/watch");
+        if (query != null) {
+            path.append(query.path());
+            appendJsonPathParams(path, query);
+        } else {
+            assert pathPattern != null;
+            if (pathPattern.charAt(0) != '/') {
+                path.append("/**/");
+            }
+            path.append(encodePathPattern(pathPattern));
+        }
+
+        final RequestHeadersBuilder builder = headersBuilder(HttpMethod.GET, path.toString());
+        builder.setObject(HttpHeaderNames.ACCEPT, MediaType.EVENT_STREAM)
+               .set(LAST_EVENT_ID, lastKnownRevision.text());
+
+        // A stream lasts as long as it is watched, and sends as many events as the changes.
+        try (SafeCloseable ignored = Clients.withContextCustomizer(ctx -> {
+            ctx.clearResponseTimeout();
+            ctx.setMaxResponseLength(0);
+        })) {
+            return client.execute(builder.build());
+        }
+    }
+
+    private static Object decodeWatchEvent(@Nullable Query<?> query, @Nullable String eventType,
+                                           String data) {
+        final JsonNode node;
+        try {
+            node = Jackson.readTree(data);
+        } catch (JsonParseException e) {
+            return new CentralDogmaException("failed to parse the watch event: " + data, e);
+        }
+
+        if ("error".equals(eventType)) {
+            return newException(getField(node, "exception").textValue(),
+                                getField(node, "message").textValue());
+        }
+
+        final Revision revision = new Revision(getField(node, "revision").asInt());
+        if (query == null) {
+            return revision;
+        }
+        return toEntry(revision, getField(node, "entry"), query.type());
+    }
+
+    private static Throwable watchStreamException(AggregatedHttpResponse res) {
+        switch (res.status().code()) {
+            case 404: // Not Found
+            case 405: // Method Not Allowed
+            case 406: // Not Acceptable
+                final MediaType contentType = res.headers().contentType();
+                if (contentType == null || !contentType.is(MediaType.JSON)) {
+                    // Not an error from the service, i.e. the server does not have the streaming endpoint.
+                    return new UnsupportedOperationException("streaming watch");
+                }
+        }
+
+        try {
+            return handleErrorResponse(res);
+        } catch (Throwable cause) {
+            return cause;
+        }
+    }
+
+    private static String preferWait(long timeoutMillis) {
+        return "wait=" + LongMath.saturatedAdd(timeoutMillis, 999) / 1000L;
+    }
+
+    /**
+     * Extends the response timeout of the next request so that it does not time out before the server
+     * responds to the watch request.
+     */
+    private static SafeCloseable withWatchTimeout(long timeoutMillis) {
+        return Clients.withContextCustomizer(ctx -> {
+            final long responseTimeoutMillis = ctx.responseTimeoutMillis();
+            final long adjustmentMillis = WatchTimeout.availableTimeout(timeoutMillis, responseTimeoutMillis);
+            if (responseTimeoutMillis > 0) {
+                ctx.setResponseTimeoutMillis(TimeoutMode.EXTEND, adjustmentMillis);
+            } else {
+                ctx.setResponseTimeoutMillis(adjustmentMillis);
+            }
+        });
+    }
+
     private static void validateProjectName(String projectName) {
         Util.validateProjectName(projectName, "projectName");
     }
@@ -951,6 +1228,17 @@ final class ArmeriaCentralDogma extends AbstractCentralDogma {
         return pathBuilder(projectName).append(REPOS).append('/').append(repositoryName);
     }
 
+    private static void appendJsonPathParams(StringBuilder path, Query<?> query) {
+        if (query.type() == QueryType.JSON_PATH) {
+            path.append('?');
+            query.expressions().forEach(expr -> path.append("jsonpath=").append(encodeParam(expr))
+                                                    .append('&'));
+
+            // Remove the trailing '?' or '&'.
+            path.setLength(path.length() - 1);
+        }
+    }
+
     private static void appendJsonPaths(StringBuilder path, QueryType queryType, Iterable<String> expressions) {
         if (queryType == QueryType.JSON_PATH) {
             expressions.forEach(expr -> path.append("&jsonpath=").append(encodeParam(expr)));
@@ -1173,4 +1461,14 @@ final class ArmeriaCentralDogma extends AbstractCentralDogma {
 
         throw new CentralDogmaException("unexpected response: " + res.headers() + ", " + res.contentUtf8());
     }
+
+    private static CentralDogmaException newException(@Nullable String typeName, @Nullable String message) {
+        if (typeName != null) {
+            final Function<String, CentralDogmaException> exceptionFactory = EXCEPTION_FACTORIES.get(typeName);
+            if (exceptionFactory != null) {
+                return exceptionFactory.apply(message);
+            }
+        }
+        return new CentralDogmaException(typeName + ": " + message);
+    }
 }
@@ -33,6 +33,28 @@ import io.netty.channel.EventLoopGroup;
  */
 public final class ArmeriaCentralDogmaBuilder
         extends AbstractArmeriaCentralDogmaBuilder<ArmeriaCentralDogmaBuilder> {
+
+    private boolean useStreamingWatch;
+
+    /**
+     * Sets the client to watch the files and the repositories with the streams of server-sent events.
+     */
+    public ArmeriaCentralDogmaBuilder useStreamingWatch() {
+        return useStreamingWatch(true);
+    }
+
+    /**
+     * Sets whether the client watches the files and the repositories with the streams of server-sent events
+     * or not. If enabled, the changes of a file or a path pattern are pushed over a single long-lived
+     * response, instead of a new request sent for each change. The client falls back to the long-polling
+     * requests if the server does not support streaming watches. The default value of this property is
+     * {@code false}.
+     */
+    public ArmeriaCentralDogmaBuilder useStreamingWatch(boolean useStreamingWatch) {
+        this.useStreamingWatch = useStreamingWatch;
+        return this;
+    }
+
     /**
      * Returns a newly-created {@link CentralDogma} instance.
      *
@@ -47,7 +69,8 @@ public final class ArmeriaCentralDogmaBuilder
         final int maxRetriesOnReplicationLag = maxNumRetriesOnReplicationLag();
         final CentralDogma dogma = new ArmeriaCentralDogma(executor,
                                                            builder.build(WebClient.class),
-                                                           accessToken());
+                                                           accessToken(),
+                                                           useStreamingWatch);
         if (maxRetriesOnReplicationLag <= 0) {
             return dogma;
         } else {
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.client.armeria;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.math.LongMath;
+
+import com.linecorp.centraldogma.common.Query;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.internal.api.v1.WatchTimeout;
+
+/**
+ * Multiplexes the watches on the same repository over a single multi-watch request, so that a client
+ * which watches many files does not hold as many long-polling requests as the files.
+ *
+ * <p>The watches added while a request is in flight are not included in the request. In such a case,
+ * the request is cancelled and a new request which includes all the pending watches is sent shortly.
+ * When the server responds, the watches in the response are completed and the remaining watches are sent
+ * again. Each watch is completed with {@code null} when its own timeout passes, as if it was sent alone.
+ */
+final class WatchMultiplexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatchMultiplexer.class);
+
+    /**
+     * The delay before sending a new request while another request is in flight, so that the watches added
+     * at about the same time, e.g. by the watchers notified by the same response, are sent together.
+     */
+    @VisibleForTesting
+    static final long REISSUE_DELAY_MILLIS = 100;
+
+    /**
+     * Sends a multi-watch request.
+     */
+    @FunctionalInterface
+    interface Transport {
+        /**
+         * Sends a request which watches the specified {@link Target}s for up to {@code timeoutMillis}.
+         *
+         * @return the future which is completed with the results of the complete watches, keyed by their
+         *         indexes in {@code targets}. A result is either an {@code Entry}, a {@link Revision} or
+         *         a {@link Throwable}. The map is empty if nothing has changed, and {@code null} if the
+         *         client is being closed. The future is completed exceptionally with
+         *         an {@link UnsupportedOperationException} if the server does not support multi-watch
+         *         requests. Cancelling the future must abort the request.
+         */
+        CompletableFuture<Map<Integer, Object>> watch(List<Target> targets, long timeoutMillis);
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Transport transport;
+    private final Function<Target, CompletableFuture<?>> fallback;
+
+    // The fields below are guarded by 'this'.
+    private final Set<Target> targets = new LinkedHashSet<>();
+    @Nullable
+    private CompletableFuture<Map<Integer, Object>> inFlight;
+    private int generation;
+    private boolean flushScheduled;
+    private boolean unsupported;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fallback the function which sends a {@link Target} alone, used when the server does not
+     *                 support multi-watch requests or a request has too many targets
+     */
+    WatchMultiplexer(ScheduledExecutorService executor, Transport transport,
+                     Function<Target, CompletableFuture<?>> fallback) {
+        this.executor = requireNonNull(executor, "executor");
+        this.transport = requireNonNull(transport, "transport");
+        this.fallback = requireNonNull(fallback, "fallback");
+    }
+
+    /**
+     * Watches the file specified with the {@link Query}.
+     */
+    CompletableFuture<Object> watchFile(Query<?> query, Revision lastKnownRevision, long timeoutMillis) {
+        return watch(new Target(query, null, lastKnownRevision, timeoutMillis));
+    }
+
+    /**
+     * Watches the repository for the changes of the files which match the {@code pathPattern}.
+     */
+    CompletableFuture<Object> watchRepository(String pathPattern, Revision lastKnownRevision,
+                                              long timeoutMillis) {
+        return watch(new Target(null, pathPattern, lastKnownRevision, timeoutMillis));
+    }
+
+    private CompletableFuture<Object> watch(Target target) {
+        final CompletableFuture<Object> future = target.future;
+        final boolean sendAlone;
+        final boolean schedule;
+        final boolean hasInFlight;
+        synchronized (this) {
+            // A request can carry only up to MAX_MULTI_WATCH_TARGETS targets, so the others are sent alone.
+            sendAlone = unsupported || targets.size() >= WatchTimeout.MAX_MULTI_WATCH_TARGETS;
+            schedule = !sendAlone && !flushScheduled;
+            hasInFlight = inFlight != null;
+            if (!sendAlone) {
+                targets.add(target);
+                flushScheduled = true;
+            }
+        }
+
+        if (sendAlone) {
+            return sendAlone(target);
+        }
+
+        future.whenComplete((unused1, unused2) -> remove(target));
+        try {
+            final ScheduledFuture<?> timeoutFuture = executor.schedule(() -> future.complete(null),
+                                                                       target.timeoutMillis,
+                                                                       TimeUnit.MILLISECONDS);
+            future.whenComplete((unused1, unused2) -> timeoutFuture.cancel(false));
+
+            if (schedule) {
+                if (hasInFlight) {
+                    executor.schedule(this::flush, REISSUE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                } else {
+                    executor.execute(this::flush);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void remove(Target target) {
+        final CompletableFuture<Map<Integer, Object>> inFlight;
+        synchronized (this) {
+            if (!targets.remove(target) || !targets.isEmpty()) {
+                return;
+            }
+
+            // Do not hold the request when nobody is interested in it.
+            inFlight = this.inFlight;
+            this.inFlight = null;
+            generation++;
+        }
+        if (inFlight != null) {
+            inFlight.cancel(false);
+        }
+    }
+
+    private void flush() {
+        final CompletableFuture<Map<Integer, Object>> oldInFlight;
+        final CompletableFuture<Map<Integer, Object>> newInFlight;
+        final List<Target> snapshot;
+        final int generation;
+        synchronized (this) {
+            flushScheduled = false;
+            oldInFlight = inFlight;
+            inFlight = null;
+            generation = ++this.generation;
+            if (targets.isEmpty() || unsupported) {
+                snapshot = null;
+                newInFlight = null;
+            } else {
+                snapshot = new ArrayList<>(targets);
+                long timeoutMillis = 0;
+                for (Target target : snapshot) {
+                    timeoutMillis = Math.max(timeoutMillis, target.remainingMillis());
+                }
+                // The transport is asynchronous, so it is safe to send a request while holding the lock.
+                newInFlight = transport.watch(snapshot, Math.max(1, timeoutMillis));
+                inFlight = newInFlight;
+            }
+        }
+
+        if (oldInFlight != null) {
+            oldInFlight.cancel(false);
+        }
+        if (newInFlight != null) {
+            newInFlight.handle((results, cause) -> {
+                onResponse(generation, snapshot, results, cause);
+                return null;
+            });
+        }
+    }
+
+    private void onResponse(int generation, List<Target> snapshot,
+                            @Nullable Map<Integer, Object> results, @Nullable Throwable cause) {
+        final boolean fallback;
+        final boolean reissue;
+        synchronized (this) {
+            if (generation != this.generation) {
+                // Cancelled or superseded by a newer request.
+                return;
+            }
+            inFlight = null;
+
+            fallback = cause instanceof UnsupportedOperationException ||
+                       cause instanceof CompletionException &&
+                       cause.getCause() instanceof UnsupportedOperationException;
+            if (fallback) {
+                unsupported = true;
+                snapshot = new ArrayList<>(targets);
+                targets.clear();
+            }
+            reissue = !fallback && cause == null && results != null && !flushScheduled;
+            if (reissue) {
+                flushScheduled = true;
+            }
+        }
+
+        if (fallback) {
+            logger.debug("The server does not support multi-watch requests; sending each watch alone.");
+            snapshot.forEach(this::sendAlone);
+            return;
+        }
+
+        if (cause != null) {
+            snapshot.forEach(target -> target.future.completeExceptionally(cause));
+            return;
+        }
+
+        if (results == null) {
+            // The client is being closed.
+            snapshot.forEach(target -> target.future.complete(null));
+            return;
+        }
+
+        results.forEach((index, result) -> {
+            final CompletableFuture<Object> future = snapshot.get(index).future;
+            if (result instanceof Throwable) {
+                future.completeExceptionally((Throwable) result);
+            } else {
+                future.complete(result);
+            }
+        });
+
+        if (reissue) {
+            // Watch the remaining targets again. flush() does nothing if there are no remaining targets.
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    flushScheduled = false;
+                }
+                snapshot.forEach(target -> target.future.completeExceptionally(e));
+            }
+        }
+    }
+
+    private CompletableFuture<Object> sendAlone(Target target) {
+        fallback.apply(target).handle((result, cause) -> {
+            if (cause != null) {
+                target.future.completeExceptionally(cause);
+            } else {
+                target.future.complete(result);
+            }
+            return null;
+        });
+        return target.future;
+    }
+
+    @VisibleForTesting
+    synchronized int numTargets() {
+        return targets.size();
+    }
+
+    /**
+     * A file or a repository to watch.
+     */
+    static final class Target {
+        @Nullable
+        private final Query<?> query;
+        @Nullable
+        private final String pathPattern;
+        private final Revision lastKnownRevision;
+        private final long timeoutMillis;
+        private final long deadlineNanos;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Target(@Nullable Query<?> query, @Nullable String pathPattern,
+               Revision lastKnownRevision, long timeoutMillis) {
+            this.query = query;
+            this.pathPattern = pathPattern;
+            this.lastKnownRevision = lastKnownRevision;
+            this.timeoutMillis = timeoutMillis;
+            deadlineNanos = LongMath.saturatedAdd(System.nanoTime(),
+                                                  TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        }
+
+        /**
+         * Returns the {@link Query} of the file to watch, or {@code null} if this is a repository watch.
+         */
+        @Nullable
+        Query<?> query() {
+            return query;
+        }
+
+        /**
+         * Returns the path pattern of the repository watch, or {@code null} if this is a file watch.
+         */
+        @Nullable
+        String pathPattern() {
+            return pathPattern;
+        }
+
+        Revision lastKnownRevision() {
+            return lastKnownRevision;
+        }
+
+        long remainingMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .omitNullValues()
+                              .add("query", query)
+                              .add("pathPattern", pathPattern)
+                              .add("lastKnownRevision", lastKnownRevision)
+                              .add("timeoutMillis", timeoutMillis)
+                              .toString();
+        }
+    }
+}
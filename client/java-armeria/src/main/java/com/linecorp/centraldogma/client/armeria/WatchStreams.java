@@ -0,0 +1,553 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.client.armeria;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpObject;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.HttpStatusClass;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.centraldogma.client.armeria.WatchMultiplexer.Target;
+import com.linecorp.centraldogma.common.Entry;
+import com.linecorp.centraldogma.common.Query;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.internal.api.v1.WatchTimeout;
+
+/**
+ * Serves the watches with the streams of server-sent events, so that the changes of a file or a path pattern
+ * are pushed over a single long-lived response instead of a new request sent for each change.
+ *
+ * <p>A stream is opened when a file or a path pattern is watched for the first time, and all the watches on
+ * the same file or path pattern share it. A watch is completed as soon as the stream receives a revision
+ * newer than the last known revision of the watch, or right away if the stream has received such a revision
+ * already, so that a watcher which watches again after a change does not send a new request. A stream is
+ * reconnected from its latest revision when it is disconnected or does not receive even a heartbeat for
+ * a while, and closed when nobody has watched it for {@link #IDLE_TIMEOUT_MILLIS}. Each watch is completed
+ * with {@code null} when its own timeout passes, as if it was sent alone.
+ */
+final class WatchStreams {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatchStreams.class);
+
+    /**
+     * How long a stream is kept open while nobody watches it.
+     */
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * How long a stream may receive nothing, not even a heartbeat, before it is considered broken.
+     */
+    private static final long MAX_SILENCE_MILLIS = WatchTimeout.STREAM_HEARTBEAT_INTERVAL_MILLIS * 3;
+
+    private static final long MIN_RECONNECT_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_RECONNECT_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Opens the streams and decodes their contents.
+     */
+    interface Connector {
+        /**
+         * Opens a stream which sends the changes of the file specified with the {@link Query}, or the files
+         * which match the {@code pathPattern}, since the {@code lastKnownRevision}.
+         */
+        HttpResponse connect(@Nullable Query<?> query, @Nullable String pathPattern,
+                             Revision lastKnownRevision);
+
+        /**
+         * Decodes the {@code data} of an event received from the stream.
+         *
+         * @param eventType the type of the event, or {@code null} if the event has no type
+         * @return an {@code Entry} if {@code query} is not {@code null}, a {@link Revision} otherwise,
+         *         or a {@link Throwable} if the event is an error
+         */
+        Object decode(@Nullable Query<?> query, @Nullable String eventType, String data);
+
+        /**
+         * Converts the response which failed to open a stream into a {@link Throwable}.
+         *
+         * @return an {@link UnsupportedOperationException} if the server does not support streaming watches
+         */
+        Throwable toException(AggregatedHttpResponse res);
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Connector connector;
+    private final Function<Target, CompletableFuture<?>> fallback;
+    private final Map<Object, Stream> streams = new ConcurrentHashMap<>();
+    private volatile boolean unsupported;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fallback the function which sends a {@link Target} without a stream, used when the server does
+     *                 not support streaming watches
+     */
+    WatchStreams(ScheduledExecutorService executor, Connector connector,
+                 Function<Target, CompletableFuture<?>> fallback) {
+        this.executor = requireNonNull(executor, "executor");
+        this.connector = requireNonNull(connector, "connector");
+        this.fallback = requireNonNull(fallback, "fallback");
+    }
+
+    /**
+     * Watches the file specified with the {@link Query}.
+     */
+    CompletableFuture<Object> watchFile(Query<?> query, Revision lastKnownRevision, long timeoutMillis) {
+        // IdentityQuery.equals() does not compare the query type, but the type determines how the events
+        // of a stream are decoded.
+        return watch(Maps.immutableEntry(query.type(), query),
+                     new Target(query, null, lastKnownRevision, timeoutMillis));
+    }
+
+    /**
+     * Watches the repository for the changes of the files which match the {@code pathPattern}.
+     */
+    CompletableFuture<Object> watchRepository(String pathPattern, Revision lastKnownRevision,
+                                              long timeoutMillis) {
+        return watch(pathPattern, new Target(null, pathPattern, lastKnownRevision, timeoutMillis));
+    }
+
+    private CompletableFuture<Object> watch(Object key, Target target) {
+        for (;;) {
+            if (unsupported) {
+                return sendAlone(target);
+            }
+
+            final Stream stream = streams.computeIfAbsent(key, unused -> new Stream(key, target));
+            if (stream.add(target)) {
+                return target.future;
+            }
+            // The stream has been closed just now. Try again with a new one.
+        }
+    }
+
+    private CompletableFuture<Object> sendAlone(Target target) {
+        fallback.apply(target).handle((result, cause) -> {
+            if (cause != null) {
+                target.future.completeExceptionally(cause);
+            } else {
+                target.future.complete(result);
+            }
+            return null;
+        });
+        return target.future;
+    }
+
+    @VisibleForTesting
+    int numStreams() {
+        return streams.size();
+    }
+
+    private static long reconnectDelayMillis(int numFailures) {
+        return Math.min(MAX_RECONNECT_DELAY_MILLIS,
+                        MIN_RECONNECT_DELAY_MILLIS << Math.min(numFailures - 1, 10));
+    }
+
+    /**
+     * A stream of the changes of a file or a path pattern.
+     */
+    private final class Stream {
+        private final Object key;
+        @Nullable
+        private final Query<?> query;
+        @Nullable
+        private final String pathPattern;
+        private final Revision initialRevision;
+        private final ScheduledFuture<?> checkFuture;
+        private volatile long lastReceivedNanos;
+
+        // The fields below are guarded by 'this'.
+        private final Set<Target> targets = new LinkedHashSet<>();
+        @Nullable
+        private HttpResponse response;
+        @Nullable
+        private ScheduledFuture<?> reconnectFuture;
+        @Nullable
+        private Revision latestRevision;
+        @Nullable
+        private Object latestResult;
+        private long lastUsedNanos;
+        private int numFailures;
+        private boolean closed;
+
+        Stream(Object key, Target firstTarget) {
+            this.key = key;
+            query = firstTarget.query();
+            pathPattern = firstTarget.pathPattern();
+            initialRevision = firstTarget.lastKnownRevision();
+            lastUsedNanos = System.nanoTime();
+            final long intervalMillis = WatchTimeout.STREAM_HEARTBEAT_INTERVAL_MILLIS;
+            checkFuture = executor.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis,
+                                                          TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Serves the specified {@link Target} with this stream.
+         *
+         * @return {@code false} if this stream has been closed
+         */
+        boolean add(Target target) {
+            final Object latestResult;
+            final boolean alone;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+
+                lastUsedNanos = System.nanoTime();
+                final Revision lastKnownRevision = target.lastKnownRevision();
+                if (latestRevision != null && !lastKnownRevision.isRelative() &&
+                    latestRevision.major() > lastKnownRevision.major()) {
+                    latestResult = this.latestResult;
+                    alone = false;
+                } else if (latestRevision == null && !lastKnownRevision.equals(initialRevision)) {
+                    // This stream cannot tell whether anything has changed since the revision
+                    // until it receives an event.
+                    latestResult = null;
+                    alone = true;
+                } else {
+                    latestResult = null;
+                    alone = false;
+                    targets.add(target);
+                    if (response == null && reconnectFuture == null) {
+                        connect();
+                    }
+                }
+            }
+
+            if (latestResult != null) {
+                target.future.complete(latestResult);
+                return true;
+            }
+            if (alone) {
+                sendAlone(target);
+                return true;
+            }
+
+            final CompletableFuture<Object> future = target.future;
+            future.whenComplete((unused1, unused2) -> remove(target));
+            try {
+                final ScheduledFuture<?> timeoutFuture = executor.schedule(() -> future.complete(null),
+                                                                           target.remainingMillis(),
+                                                                           TimeUnit.MILLISECONDS);
+                future.whenComplete((unused1, unused2) -> timeoutFuture.cancel(false));
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+            return true;
+        }
+
+        private synchronized void remove(Target target) {
+            if (targets.remove(target)) {
+                lastUsedNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * Opens a new connection. Must be invoked while holding the lock. The client is asynchronous,
+         * so it is safe to send a request while holding the lock.
+         */
+        private void connect() {
+            final Revision revision = latestRevision != null ? latestRevision : initialRevision;
+            HttpResponse res;
+            try {
+                res = connector.connect(query, pathPattern, revision);
+            } catch (Throwable cause) {
+                res = HttpResponse.ofFailure(cause);
+            }
+            response = res;
+            lastReceivedNanos = System.nanoTime();
+            res.subscribe(new EventSubscriber(res));
+        }
+
+        private void reconnect() {
+            synchronized (this) {
+                reconnectFuture = null;
+                if (closed || response != null || targets.isEmpty()) {
+                    // The stream will be connected again when it is watched.
+                    return;
+                }
+                connect();
+            }
+        }
+
+        private void onEvent(HttpResponse res, @Nullable String eventType, String data) {
+            Object result;
+            try {
+                result = connector.decode(query, eventType, data);
+            } catch (Throwable cause) {
+                result = cause;
+            }
+            if (result instanceof Throwable) {
+                onFailure(res, (Throwable) result);
+                return;
+            }
+
+            final Revision revision = result instanceof Entry ? ((Entry<?>) result).revision()
+                                                              : (Revision) result;
+            final List<Target> changed = new ArrayList<>();
+            synchronized (this) {
+                if (response != res) {
+                    return;
+                }
+
+                numFailures = 0;
+                latestRevision = revision;
+                latestResult = result;
+                final Iterator<Target> it = targets.iterator();
+                while (it.hasNext()) {
+                    final Target target = it.next();
+                    final Revision lastKnownRevision = target.lastKnownRevision();
+                    if (lastKnownRevision.isRelative() || revision.major() > lastKnownRevision.major()) {
+                        changed.add(target);
+                        it.remove();
+                    }
+                }
+            }
+
+            for (Target target : changed) {
+                target.future.complete(result);
+            }
+        }
+
+        private void onFailure(HttpResponse res, Throwable cause) {
+            final List<Target> failed;
+            synchronized (this) {
+                if (response != res) {
+                    return;
+                }
+                // Do not reconnect until watched again, so that the failure is not repeated needlessly.
+                response = null;
+                failed = new ArrayList<>(targets);
+                targets.clear();
+            }
+
+            res.abort();
+            if (cause instanceof UnsupportedOperationException) {
+                logger.debug("The server does not support streaming watches; sending each watch alone.");
+                unsupported = true;
+                close();
+                failed.forEach(WatchStreams.this::sendAlone);
+            } else {
+                failed.forEach(target -> target.future.completeExceptionally(cause));
+            }
+        }
+
+        private void onDisconnected(HttpResponse res, @Nullable Throwable cause) {
+            final RejectedExecutionException rejected;
+            synchronized (this) {
+                if (response != res) {
+                    return;
+                }
+                response = null;
+                if (closed || targets.isEmpty()) {
+                    // The stream will be connected again when it is watched.
+                    return;
+                }
+
+                final long delayMillis = reconnectDelayMillis(++numFailures);
+                logger.debug("A watch stream has been disconnected; reconnecting in {} ms: query={}, " +
+                             "pathPattern={}", delayMillis, query, pathPattern, cause);
+                try {
+                    reconnectFuture = executor.schedule(this::reconnect, delayMillis, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    rejected = e;
+                }
+            }
+            onFailure(res, rejected);
+        }
+
+        private void check() {
+            final HttpResponse res;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+
+                final long currentNanos = System.nanoTime();
+                final long idleMillis = TimeUnit.NANOSECONDS.toMillis(currentNanos - lastUsedNanos);
+                final long silenceMillis = TimeUnit.NANOSECONDS.toMillis(currentNanos - lastReceivedNanos);
+                if (targets.isEmpty() && idleMillis > IDLE_TIMEOUT_MILLIS) {
+                    res = response;
+                    response = null;
+                    close();
+                } else if (response != null && silenceMillis > MAX_SILENCE_MILLIS) {
+                    // Abort the broken connection, so that it is reconnected by onDisconnected().
+                    res = response;
+                } else {
+                    return;
+                }
+            }
+
+            if (res != null) {
+                res.abort();
+            }
+        }
+
+        private synchronized void close() {
+            closed = true;
+            checkFuture.cancel(false);
+            if (reconnectFuture != null) {
+                reconnectFuture.cancel(false);
+                reconnectFuture = null;
+            }
+            streams.remove(key, this);
+        }
+
+        /**
+         * Parses the <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">server-sent
+         * events</a> received from a connection.
+         */
+        private final class EventSubscriber implements Subscriber<HttpObject> {
+            private final HttpResponse res;
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            @Nullable
+            private ResponseHeaders headers;
+            @Nullable
+            private String eventType;
+            @Nullable
+            private StringBuilder data;
+
+            EventSubscriber(HttpResponse res) {
+                this.res = res;
+            }
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(HttpObject obj) {
+                lastReceivedNanos = System.nanoTime();
+                if (obj instanceof ResponseHeaders) {
+                    final ResponseHeaders headers = (ResponseHeaders) obj;
+                    if (headers.status().codeClass() != HttpStatusClass.INFORMATIONAL) {
+                        this.headers = headers;
+                    }
+                    return;
+                }
+                if (!(obj instanceof HttpData) || headers == null) {
+                    return;
+                }
+
+                final byte[] bytes = ((HttpData) obj).array();
+                if (headers.status() != HttpStatus.OK) {
+                    // Keep the content of the error response.
+                    line.write(bytes, 0, bytes.length);
+                    return;
+                }
+
+                for (byte b : bytes) {
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    String value = new String(line.toByteArray(), UTF_8);
+                    line.reset();
+                    if (value.endsWith("\r")) {
+                        value = value.substring(0, value.length() - 1);
+                    }
+                    onLine(value);
+                }
+            }
+
+            private void onLine(String value) {
+                if (value.isEmpty()) {
+                    // The end of an event.
+                    final StringBuilder data = this.data;
+                    final String eventType = this.eventType;
+                    this.data = null;
+                    this.eventType = null;
+                    if (data != null) {
+                        onEvent(res, eventType, data.toString());
+                    }
+                    return;
+                }
+                if (value.charAt(0) == ':') {
+                    // A comment, e.g. a heartbeat.
+                    return;
+                }
+
+                final int colonIndex = value.indexOf(':');
+                final String field = colonIndex < 0 ? value : value.substring(0, colonIndex);
+                String fieldValue = colonIndex < 0 ? "" : value.substring(colonIndex + 1);
+                if (fieldValue.startsWith(" ")) {
+                    fieldValue = fieldValue.substring(1);
+                }
+                switch (field) {
+                    case "event":
+                        eventType = fieldValue;
+                        break;
+                    case "data":
+                        if (data == null) {
+                            data = new StringBuilder(fieldValue);
+                        } else {
+                            data.append('\n').append(fieldValue);
+                        }
+                        break;
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                onDisconnected(res, t);
+            }
+
+            @Override
+            public void onComplete() {
+                final ResponseHeaders headers = this.headers;
+                if (headers != null && headers.status() != HttpStatus.OK) {
+                    onFailure(res, connector.toException(
+                            AggregatedHttpResponse.of(headers, HttpData.wrap(line.toByteArray()))));
+                } else {
+                    onDisconnected(res, null);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.client.armeria;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import com.linecorp.centraldogma.client.armeria.WatchMultiplexer.Target;
+import com.linecorp.centraldogma.common.Entry;
+import com.linecorp.centraldogma.common.EntryNotFoundException;
+import com.linecorp.centraldogma.common.Query;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.internal.api.v1.WatchTimeout;
+
+class WatchMultiplexerTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Target> fallbackTargets = new LinkedBlockingQueue<>();
+    private ScheduledExecutorService executor;
+    private WatchMultiplexer multiplexer;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        multiplexer = new WatchMultiplexer(executor, (targets, timeoutMillis) -> {
+            final Request req = new Request(targets);
+            requests.add(req);
+            return req.future;
+        }, target -> {
+            fallbackTargets.add(target);
+            return CompletableFuture.completedFuture(new Revision(10));
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void watchesShareRequest() throws Exception {
+        // Do not let the executor send a request until the first two watches are added.
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> Uninterruptibles.awaitUninterruptibly(latch));
+
+        final Query<String> query = Query.ofText("/a.txt");
+        final CompletableFuture<Object> a = multiplexer.watchFile(query, new Revision(1), TIMEOUT_MILLIS);
+        final CompletableFuture<Object> b = multiplexer.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS);
+        latch.countDown();
+
+        final Request first = requests.take();
+        assertThat(first.targets).hasSize(2);
+
+        // A new watch replaces the request in flight with the one which includes all watches.
+        final CompletableFuture<Object> c =
+                multiplexer.watchFile(Query.ofText("/c.txt"), new Revision(1), TIMEOUT_MILLIS);
+        final Request second = requests.take();
+        assertThat(first.future).isCancelled();
+        assertThat(second.targets).hasSize(3);
+
+        // Only the changed watches are completed.
+        final Entry<String> entry = Entry.ofText(new Revision(2), "/a.txt", "foo");
+        second.future.complete(ImmutableMap.of(0, entry, 2, new EntryNotFoundException()));
+        assertThat(a.join()).isSameAs(entry);
+        assertThat(c).isCompletedExceptionally();
+        assertThat(b).isNotDone();
+
+        // The remaining watch is sent again.
+        final Request third = requests.take();
+        assertThat(third.targets).hasSize(1);
+        assertThat(third.targets.get(0).pathPattern()).isEqualTo("/**");
+
+        // Nothing has changed.
+        third.future.complete(ImmutableMap.of());
+        final Request fourth = requests.take();
+        assertThat(fourth.targets).hasSize(1);
+        fourth.future.complete(ImmutableMap.of(0, new Revision(3)));
+        assertThat(b.join()).isEqualTo(new Revision(3));
+        assertThat(multiplexer.numTargets()).isZero();
+    }
+
+    @Test
+    void timeout() throws Exception {
+        final CompletableFuture<Object> a = multiplexer.watchRepository("/**", new Revision(1), 500);
+        final Request req = requests.take();
+
+        // The watch is completed with null, and the request is cancelled because no one needs it anymore.
+        assertThat(a.get(10, TimeUnit.SECONDS)).isNull();
+        await().untilAsserted(() -> assertThat(req.future).isCancelled());
+        assertThat(multiplexer.numTargets()).isZero();
+    }
+
+    @Test
+    void fallbackToSingleWatch() throws Exception {
+        final CompletableFuture<Object> a = multiplexer.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS);
+        requests.take().future.completeExceptionally(new UnsupportedOperationException());
+        assertThat(a.get(10, TimeUnit.SECONDS)).isEqualTo(new Revision(10));
+        assertThat(fallbackTargets.take().pathPattern()).isEqualTo("/**");
+
+        // The watches are sent alone from now on.
+        final CompletableFuture<Object> b = multiplexer.watchRepository("/*.json", new Revision(1),
+                                                                        TIMEOUT_MILLIS);
+        assertThat(b.join()).isEqualTo(new Revision(10));
+        assertThat(fallbackTargets.take().pathPattern()).isEqualTo("/*.json");
+        assertThat(requests).isEmpty();
+    }
+
+    @Test
+    void tooManyTargets() throws Exception {
+        // Do not let the executor send a request until all watches are added.
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> Uninterruptibles.awaitUninterruptibly(latch));
+
+        for (int i = 0; i < WatchTimeout.MAX_MULTI_WATCH_TARGETS; i++) {
+            multiplexer.watchFile(Query.ofText("/" + i + ".txt"), new Revision(1), TIMEOUT_MILLIS);
+        }
+        // The watch which exceeds the limit is sent alone.
+        final CompletableFuture<Object> overflow =
+                multiplexer.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS);
+        assertThat(overflow.join()).isEqualTo(new Revision(10));
+        assertThat(fallbackTargets.take().pathPattern()).isEqualTo("/**");
+        latch.countDown();
+
+        assertThat(requests.take().targets).hasSize(WatchTimeout.MAX_MULTI_WATCH_TARGETS);
+    }
+
+    private static final class Request {
+        final List<Target> targets;
+        final CompletableFuture<Map<Integer, Object>> future = new CompletableFuture<>();
+
+        Request(List<Target> targets) {
+            this.targets = targets;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.client.armeria;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpResponseWriter;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.centraldogma.client.armeria.WatchMultiplexer.Target;
+import com.linecorp.centraldogma.common.EntryNotFoundException;
+import com.linecorp.centraldogma.common.Query;
+import com.linecorp.centraldogma.common.QueryType;
+import com.linecorp.centraldogma.common.Revision;
+
+class WatchStreamsTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final BlockingQueue<Connection> connections = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Target> fallbackTargets = new LinkedBlockingQueue<>();
+    private ScheduledExecutorService executor;
+    private WatchStreams streams;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        streams = new WatchStreams(executor, new WatchStreams.Connector() {
+            @Override
+            public HttpResponse connect(@Nullable Query<?> query, @Nullable String pathPattern,
+                                        Revision lastKnownRevision) {
+                final Connection conn = new Connection(query, pathPattern, lastKnownRevision);
+                connections.add(conn);
+                return conn.writer;
+            }
+
+            @Override
+            public Object decode(@Nullable Query<?> query, @Nullable String eventType, String data) {
+                if ("error".equals(eventType)) {
+                    return new EntryNotFoundException(data);
+                }
+                return new Revision(data);
+            }
+
+            @Override
+            public Throwable toException(AggregatedHttpResponse res) {
+                if (res.status() == HttpStatus.NOT_FOUND) {
+                    return new UnsupportedOperationException();
+                }
+                return new IllegalStateException(res.contentUtf8());
+            }
+        }, target -> {
+            fallbackTargets.add(target);
+            return CompletableFuture.completedFuture(new Revision(10));
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void watchesShareStream() throws Exception {
+        final CompletableFuture<Object> a = streams.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS);
+        final CompletableFuture<Object> b = streams.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS);
+        final Connection conn = connections.take();
+        assertThat(conn.pathPattern).isEqualTo("/**");
+        assertThat(conn.lastKnownRevision).isEqualTo(new Revision(1));
+
+        conn.open();
+        conn.writer.write(HttpData.ofUtf8("id:2\ndata:2\n\n"));
+        assertThat(a.get(10, TimeUnit.SECONDS)).isEqualTo(new Revision(2));
+        assertThat(b.get(10, TimeUnit.SECONDS)).isEqualTo(new Revision(2));
+
+        // A watch behind the stream is completed right away, without a new connection.
+        assertThat(streams.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS).join())
+                .isEqualTo(new Revision(2));
+
+        // Heartbeats are ignored, and an event may span multiple chunks.
+        final CompletableFuture<Object> c = streams.watchRepository("/**", new Revision(2), TIMEOUT_MILLIS);
+        conn.writer.write(HttpData.ofUtf8(":\n\n"));
+        conn.writer.write(HttpData.ofUtf8("id:3\r\nda"));
+        conn.writer.write(HttpData.ofUtf8("ta:3\r\n\r\n"));
+        assertThat(c.get(10, TimeUnit.SECONDS)).isEqualTo(new Revision(3));
+        assertThat(connections).isEmpty();
+        assertThat(streams.numStreams()).isOne();
+    }
+
+    @Test
+    void streamPerQueryType() throws Exception {
+        streams.watchFile(Query.ofText("/a.json"), new Revision(1), TIMEOUT_MILLIS);
+        streams.watchFile(Query.ofJson("/a.json"), new Revision(1), TIMEOUT_MILLIS);
+
+        // The queries are equal, but their results are decoded differently, so they do not share a stream.
+        final Query<?> first = connections.take().query;
+        final Query<?> second = connections.take().query;
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull();
+        assertThat(ImmutableList.of(first.type(), second.type()))
+                .containsExactlyInAnyOrder(QueryType.IDENTITY_TEXT, QueryType.IDENTITY_JSON);
+        assertThat(streams.numStreams()).isEqualTo(2);
+    }
+
+    @Test
+    void reconnect() throws Exception {
+        final CompletableFuture<Object> a = streams.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS);
+        final Connection first = connections.take();
+        first.open();
+        first.writer.write(HttpData.ofUtf8("data:2\n\n"));
+        assertThat(a.get(10, TimeUnit.SECONDS)).isEqualTo(new Revision(2));
+
+        // The stream is reconnected from its latest revision.
+        final CompletableFuture<Object> b = streams.watchRepository("/**", new Revision(2), TIMEOUT_MILLIS);
+        first.writer.close();
+        final Connection second = connections.poll(10, TimeUnit.SECONDS);
+        assertThat(second).isNotNull();
+        assertThat(second.lastKnownRevision).isEqualTo(new Revision(2));
+
+        second.open();
+        second.writer.write(HttpData.ofUtf8("data:3\n\n"));
+        assertThat(b.get(10, TimeUnit.SECONDS)).isEqualTo(new Revision(3));
+    }
+
+    @Test
+    void errorEvent() throws Exception {
+        final CompletableFuture<Object> a = streams.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS);
+        final Connection conn = connections.take();
+        conn.open();
+        conn.writer.write(HttpData.ofUtf8("event:error\ndata:foo\n\n"));
+        assertThatThrownBy(() -> a.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(EntryNotFoundException.class);
+    }
+
+    @Test
+    void timeout() throws Exception {
+        final CompletableFuture<Object> a = streams.watchRepository("/**", new Revision(1), 500);
+        connections.take().open();
+        assertThat(a.get(10, TimeUnit.SECONDS)).isNull();
+    }
+
+    @Test
+    void fallbackToLongPolling() throws Exception {
+        final CompletableFuture<Object> a = streams.watchRepository("/**", new Revision(1), TIMEOUT_MILLIS);
+        final Connection conn = connections.take();
+        conn.writer.write(ResponseHeaders.of(HttpStatus.NOT_FOUND));
+        conn.writer.close();
+        assertThat(a.get(10, TimeUnit.SECONDS)).isEqualTo(new Revision(10));
+        assertThat(fallbackTargets.take().pathPattern()).isEqualTo("/**");
+        assertThat(streams.numStreams()).isZero();
+
+        // The watches are sent without a stream from now on.
+        final CompletableFuture<Object> b = streams.watchRepository("/*.json", new Revision(1),
+                                                                     TIMEOUT_MILLIS);
+        assertThat(b.join()).isEqualTo(new Revision(10));
+        assertThat(fallbackTargets.take().pathPattern()).isEqualTo("/*.json");
+        assertThat(connections).isEmpty();
+    }
+
+    private static final class Connection {
+        @Nullable
+        final Query<?> query;
+        @Nullable
+        final String pathPattern;
+        final Revision lastKnownRevision;
+        final HttpResponseWriter writer = HttpResponse.streaming();
+
+        Connection(@Nullable Query<?> query, @Nullable String pathPattern, Revision lastKnownRevision) {
+            this.query = query;
+            this.pathPattern = pathPattern;
+            this.lastKnownRevision = lastKnownRevision;
+        }
+
+        void open() {
+            writer.write(ResponseHeaders.builder(HttpStatus.OK)
+                                        .contentType(MediaType.EVENT_STREAM)
+                                        .build());
+        }
+    }
+}
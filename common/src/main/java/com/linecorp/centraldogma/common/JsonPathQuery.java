@@ -16,6 +16,7 @@
 
 package com.linecorp.centraldogma.common;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.linecorp.centraldogma.internal.Util.validateJsonFilePath;
 import static java.util.Objects.requireNonNull;
 
@@ -26,6 +27,7 @@ import javax.annotation.Nullable;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Streams;
+import com.jayway.jsonpath.JsonPath;
 
 import com.linecorp.centraldogma.internal.Jackson;
 import com.linecorp.centraldogma.internal.Util;
@@ -34,6 +36,7 @@ final class JsonPathQuery implements Query<JsonNode> {
 
     private final String path;
     private final List<String> jsonPaths;
+    private final List<JsonPath> compiledJsonPaths;
     private int hashCode;
     @Nullable
     private String strVal;
@@ -47,6 +50,10 @@ final class JsonPathQuery implements Query<JsonNode> {
         Streams.stream(requireNonNull(jsonPaths, "jsonPaths"))
                .forEach(jsonPath -> Util.validateJsonPath(jsonPath, "jsonPath"));
         this.jsonPaths = ImmutableList.copyOf(jsonPaths);
+        // Keep the compiled JSON paths so that they are not parsed again whenever this query is applied.
+        compiledJsonPaths = this.jsonPaths.stream()
+                                          .map(Jackson::compileJsonPath)
+                                          .collect(toImmutableList());
     }
 
     @Override
@@ -92,7 +99,11 @@ final class JsonPathQuery implements Query<JsonNode> {
     @Override
     public JsonNode apply(JsonNode input) {
         requireNonNull(input, "input");
-        return Jackson.extractTree(input, jsonPaths);
+        JsonNode result = input;
+        for (int i = 0; i < compiledJsonPaths.size(); i++) {
+            result = Jackson.extractTree(result, jsonPaths.get(i), compiledJsonPaths.get(i));
+        }
+        return result;
     }
 
     @Override
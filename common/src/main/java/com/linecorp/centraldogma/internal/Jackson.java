@@ -50,6 +50,8 @@ import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jsr310.deser.InstantDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.InstantSerializer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.jayway.jsonpath.Configuration;
@@ -89,6 +91,12 @@ public final class Jackson {
                          .mappingProvider(new JacksonMappingProvider(prettyMapper))
                          .build();
 
+    /**
+     * The compiled {@link JsonPath}s, which are immutable and thus can be shared by all threads.
+     */
+    private static final Cache<String, JsonPath> jsonPathCache =
+            CacheBuilder.newBuilder().maximumSize(1024).build();
+
     static {
         // If the json-path library is shaded, its transitive dependency 'json-smart' should not be required.
         // Override the default configuration so that json-path does not attempt to load the json-smart classes.
@@ -279,13 +287,18 @@ public final class Jackson {
     public static JsonNode extractTree(JsonNode jsonNode, String jsonPath) {
         requireNonNull(jsonNode, "jsonNode");
         requireNonNull(jsonPath, "jsonPath");
+        return extractTree(jsonNode, jsonPath, compileJsonPath(jsonPath));
+    }
 
-        final JsonPath compiledJsonPath;
-        try {
-            compiledJsonPath = JsonPath.compile(jsonPath);
-        } catch (Exception e) {
-            throw new QuerySyntaxException("invalid JSON path: " + jsonPath, e);
-        }
+    /**
+     * Evaluates the specified {@link JsonPath} which was compiled from the specified {@code jsonPath}
+     * expression. The expression is used in the error message as it is, because {@link JsonPath#getPath()}
+     * returns the normalized form of it.
+     */
+    public static JsonNode extractTree(JsonNode jsonNode, String jsonPath, JsonPath compiledJsonPath) {
+        requireNonNull(jsonNode, "jsonNode");
+        requireNonNull(jsonPath, "jsonPath");
+        requireNonNull(compiledJsonPath, "compiledJsonPath");
 
         try {
             return JsonPath.parse(jsonNode, jsonPathCfg)
@@ -295,6 +308,31 @@ public final class Jackson {
         }
     }
 
+    /**
+     * Compiles the specified JSON path expression, or returns the cached {@link JsonPath} if the same
+     * expression has been compiled recently.
+     *
+     * @throws QuerySyntaxException if the specified expression is not a valid JSON path
+     */
+    public static JsonPath compileJsonPath(String jsonPath) {
+        requireNonNull(jsonPath, "jsonPath");
+
+        final JsonPath cached = jsonPathCache.getIfPresent(jsonPath);
+        if (cached != null) {
+            return cached;
+        }
+
+        final JsonPath compiledJsonPath;
+        try {
+            compiledJsonPath = JsonPath.compile(jsonPath);
+        } catch (Exception e) {
+            throw new QuerySyntaxException("invalid JSON path: " + jsonPath, e);
+        }
+
+        jsonPathCache.put(jsonPath, compiledJsonPath);
+        return compiledJsonPath;
+    }
+
     public static String escapeText(String text) {
         final JsonStringEncoder enc = JsonStringEncoder.getInstance();
         return new String(enc.quoteAsString(text));
@@ -28,6 +28,16 @@ public final class WatchTimeout {
      */
     public static final long MAX_MILLIS = TimeUnit.DAYS.toMillis(1);
 
+    /**
+     * The interval of the heartbeats sent by a streaming watch while nothing changes, in milliseconds.
+     */
+    public static final long STREAM_HEARTBEAT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    /**
+     * The maximum number of the targets in a multi-watch request.
+     */
+    public static final int MAX_MULTI_WATCH_TARGETS = 64;
+
     /**
      * Returns an available timeout duration for a watch request with limitation of max timeout.
      *
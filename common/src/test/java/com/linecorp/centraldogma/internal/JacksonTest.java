@@ -18,6 +18,7 @@ package com.linecorp.centraldogma.internal;
 
 import static com.linecorp.centraldogma.internal.Jackson.readTree;
 import static net.javacrumbs.jsonunit.fluent.JsonFluentAssert.assertThatJson;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.io.IOException;
@@ -27,6 +28,7 @@ import org.junit.jupiter.api.Test;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import com.linecorp.centraldogma.common.QueryExecutionException;
+import com.linecorp.centraldogma.common.QuerySyntaxException;
 
 class JacksonTest {
 
@@ -156,4 +158,13 @@ class JacksonTest {
                 .isExactlyInstanceOf(QueryExecutionException.class)
                 .hasMessageContaining("/a/b/ type: NUMBER (expected: STRING)");
     }
+
+    @Test
+    void compiledJsonPathIsCached() throws IOException {
+        assertThat(Jackson.compileJsonPath("$.a.b")).isSameAs(Jackson.compileJsonPath("$.a.b"));
+        assertThatJson(Jackson.extractTree(readTree("{ \"a\": { \"b\": 1 } }"), "$.a.b")).isEqualTo(1);
+
+        assertThatThrownBy(() -> Jackson.compileJsonPath("$.a["))
+                .isExactlyInstanceOf(QuerySyntaxException.class);
+    }
 }
@@ -33,6 +33,7 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.List;
@@ -85,6 +86,7 @@ import com.linecorp.armeria.server.HttpService;
 import com.linecorp.armeria.server.Route;
 import com.linecorp.armeria.server.Server;
 import com.linecorp.armeria.server.ServerBuilder;
+import com.linecorp.armeria.server.ServerListener;
 import com.linecorp.armeria.server.ServerPort;
 import com.linecorp.armeria.server.ServiceRequestContext;
 import com.linecorp.armeria.server.auth.AuthService;
@@ -134,6 +136,7 @@ import com.linecorp.centraldogma.server.internal.mirror.DefaultMirroringServiceP
 import com.linecorp.centraldogma.server.internal.replication.ZooKeeperCommandExecutor;
 import com.linecorp.centraldogma.server.internal.storage.project.DefaultProjectManager;
 import com.linecorp.centraldogma.server.internal.storage.project.SafeProjectManager;
+import com.linecorp.centraldogma.server.internal.storage.repository.RepositoryTaskScheduler;
 import com.linecorp.centraldogma.server.internal.thrift.CentralDogmaExceptionTranslator;
 import com.linecorp.centraldogma.server.internal.thrift.CentralDogmaServiceImpl;
 import com.linecorp.centraldogma.server.internal.thrift.CentralDogmaTimeoutScheduler;
@@ -324,11 +327,25 @@ public class CentralDogma implements AutoCloseable {
             meterRegistry = PrometheusMeterRegistries.newRegistry();
 
             logger.info("Starting the Central Dogma ..");
-            final ThreadPoolExecutor repositoryWorkerImpl = new ThreadPoolExecutor(
-                    cfg.numRepositoryWorkers(), cfg.numRepositoryWorkers(),
-                    60, TimeUnit.SECONDS, new LinkedTransferQueue<>(),
-                    new DefaultThreadFactory("repository-worker", true));
-            repositoryWorkerImpl.allowCoreThreadTimeOut(true);
+            ExecutorService repositoryWorkerImpl = null;
+            if (cfg.isRepositoryWorkerVirtualThreadsEnabled()) {
+                repositoryWorkerImpl = newVirtualThreadPerTaskExecutor();
+                if (repositoryWorkerImpl != null) {
+                    logger.info("Using virtual threads for the repository workers.");
+                } else {
+                    logger.warn("Virtual threads are not available in Java {}; " +
+                                "using platform threads for the repository workers.",
+                                System.getProperty("java.version"));
+                }
+            }
+            if (repositoryWorkerImpl == null) {
+                final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                        cfg.numRepositoryWorkers(), cfg.numRepositoryWorkers(),
+                        60, TimeUnit.SECONDS, new LinkedTransferQueue<>(),
+                        new DefaultThreadFactory("repository-worker", true));
+                threadPoolExecutor.allowCoreThreadTimeOut(true);
+                repositoryWorkerImpl = threadPoolExecutor;
+            }
             repositoryWorker = ExecutorServiceMetrics.monitor(meterRegistry, repositoryWorkerImpl,
                                                               "repositoryWorker");
 
@@ -337,7 +354,13 @@ public class CentralDogma implements AutoCloseable {
             purgeWorker = Executors.newSingleThreadScheduledExecutor(
                     new DefaultThreadFactory("purge-worker", true));
 
-            pm = new DefaultProjectManager(cfg.dataDir(), repositoryWorker, purgeWorker,
+            // Schedule the tasks of the repositories fairly, so that a busy repository does not starve
+            // the others.
+            final RepositoryTaskScheduler repositoryTaskScheduler = new RepositoryTaskScheduler(
+                    repositoryWorker, cfg.numRepositoryWorkers(),
+                    cfg.maxNumRepositoryWorkersPerRepository().orElse(cfg.numRepositoryWorkers()),
+                    meterRegistry);
+            pm = new DefaultProjectManager(cfg.dataDir(), repositoryTaskScheduler, purgeWorker,
                                            meterRegistry, cfg.repositoryCacheSpec());
 
             logger.info("Started the project manager: {}", pm);
@@ -378,6 +401,29 @@ public class CentralDogma implements AutoCloseable {
         }
     }
 
+    /**
+     * Returns a new {@link ExecutorService} which starts a new virtual thread for each task,
+     * or {@code null} if virtual threads are not available in the current JVM.
+     */
+    @Nullable
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        final Method method;
+        try {
+            // Use reflection because we build against Java 8.
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+
+        try {
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            // Virtual threads are a preview feature in this JVM.
+            logger.debug("Failed to create a virtual thread executor:", e);
+            return null;
+        }
+    }
+
     private CommandExecutor startCommandExecutor(
             ProjectManager pm, Executor repositoryWorker,
             ScheduledExecutorService purgeWorker, MeterRegistry meterRegistry,
@@ -416,8 +462,8 @@ public class CentralDogma implements AutoCloseable {
         final ReplicationMethod replicationMethod = cfg.replicationConfig().method();
         switch (replicationMethod) {
             case ZOOKEEPER:
-                executor = newZooKeeperCommandExecutor(pm, repositoryWorker, meterRegistry, sessionManager,
-                                                       onTakeLeadership, onReleaseLeadership);
+                executor = newZooKeeperCommandExecutor(pm, repositoryWorker, purgeWorker, meterRegistry,
+                                                       sessionManager, onTakeLeadership, onReleaseLeadership);
                 break;
             case NONE:
                 logger.info("No replication mechanism specified; entering standalone");
@@ -518,6 +564,9 @@ public class CentralDogma implements AutoCloseable {
 
         final MetadataService mds = new MetadataService(pm, executor);
         final WatchService watchService = new WatchService(meterRegistry);
+        sb.serverListener(ServerListener.builder()
+                                        .addStoppingCallback(unused -> watchService.serverStopping())
+                                        .build());
         final AuthProvider authProvider = createAuthProvider(executor, sessionManager, mds);
 
         configureThriftService(sb, pm, executor, watchService, mds);
@@ -593,7 +642,7 @@ public class CentralDogma implements AutoCloseable {
     }
 
     private CommandExecutor newZooKeeperCommandExecutor(
-            ProjectManager pm, Executor repositoryWorker, MeterRegistry meterRegistry,
+            ProjectManager pm, Executor repositoryWorker, Executor purgeWorker, MeterRegistry meterRegistry,
             @Nullable SessionManager sessionManager,
             @Nullable Consumer<CommandExecutor> onTakeLeadership,
             @Nullable Consumer<CommandExecutor> onReleaseLeadership) {
@@ -608,7 +657,8 @@ public class CentralDogma implements AutoCloseable {
                 zkCfg, cfg.dataDir(),
                 new StandaloneCommandExecutor(pm, repositoryWorker, sessionManager,
                         /* onTakeLeadership */ null, /* onReleaseLeadership */ null),
-                meterRegistry, pm, config().writeQuotaPerRepository(), onTakeLeadership, onReleaseLeadership);
+                meterRegistry, pm, purgeWorker, config().writeQuotaPerRepository(),
+                onTakeLeadership, onReleaseLeadership);
     }
 
     private void configureThriftService(ServerBuilder sb, ProjectManager pm, CommandExecutor executor,
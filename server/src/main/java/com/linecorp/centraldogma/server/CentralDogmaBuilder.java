@@ -93,6 +93,9 @@ public final class CentralDogmaBuilder {
     // Central Dogma properties
     private final File dataDir;
     private int numRepositoryWorkers = DEFAULT_NUM_REPOSITORY_WORKERS;
+    private boolean repositoryWorkerVirtualThreadsEnabled;
+    @Nullable
+    private Integer maxNumRepositoryWorkersPerRepository;
     private long maxRemovedRepositoryAgeMillis = DEFAULT_MAX_REMOVED_REPOSITORY_AGE_MILLIS;
 
     @Nullable
@@ -305,6 +308,29 @@ public final class CentralDogmaBuilder {
         return this;
     }
 
+    /**
+     * Sets whether the repository workers run on virtual threads, which requires Java 21 or above.
+     * If enabled, {@link #numRepositoryWorkers(int)} limits the number of the repository operations running
+     * concurrently rather than the number of the threads, so it can be much larger than the number of
+     * the platform threads you would create. If virtual threads are not available, the platform threads
+     * are used. Disabled by default.
+     */
+    public CentralDogmaBuilder repositoryWorkerVirtualThreadsEnabled(
+            boolean repositoryWorkerVirtualThreadsEnabled) {
+        this.repositoryWorkerVirtualThreadsEnabled = repositoryWorkerVirtualThreadsEnabled;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of the repository workers that can be used by the operations of a single
+     * repository at the same time, so that a busy repository does not occupy all repository workers.
+     * If unspecified, a repository can use all repository workers.
+     */
+    public CentralDogmaBuilder maxNumRepositoryWorkersPerRepository(int maxNumRepositoryWorkersPerRepository) {
+        this.maxNumRepositoryWorkersPerRepository = maxNumRepositoryWorkersPerRepository;
+        return this;
+    }
+
     /**
      * Sets the maximum allowed age of removed projects and repositories before they are purged.
      * Set {@code 0} to disable automatic purge.
@@ -565,7 +591,8 @@ public final class CentralDogmaBuilder {
         return new CentralDogmaConfig(dataDir, ports, tls, trustedProxyAddresses, clientAddressSources,
                                       numWorkers, maxNumConnections,
                                       requestTimeoutMillis, idleTimeoutMillis, maxFrameLength,
-                                      numRepositoryWorkers, repositoryCacheSpec,
+                                      numRepositoryWorkers, repositoryWorkerVirtualThreadsEnabled,
+                                      maxNumRepositoryWorkersPerRepository, repositoryCacheSpec,
                                       maxRemovedRepositoryAgeMillis, gracefulShutdownTimeout,
                                       webAppEnabled, webAppTitle, mirroringEnabled, numMirroringThreads,
                                       maxNumFilesPerMirror, maxNumBytesPerMirror, replicationConfig,
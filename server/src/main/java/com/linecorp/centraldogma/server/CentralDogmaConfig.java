@@ -101,6 +101,9 @@ public final class CentralDogmaConfig {
 
     // Repository
     private final Integer numRepositoryWorkers;
+    private final boolean repositoryWorkerVirtualThreadsEnabled;
+    @Nullable
+    private final Integer maxNumRepositoryWorkersPerRepository;
     private final long maxRemovedRepositoryAgeMillis;
 
     // Cache
@@ -155,6 +158,10 @@ public final class CentralDogmaConfig {
             @JsonProperty("idleTimeoutMillis") @Nullable Long idleTimeoutMillis,
             @JsonProperty("maxFrameLength") @Nullable Integer maxFrameLength,
             @JsonProperty("numRepositoryWorkers") @Nullable Integer numRepositoryWorkers,
+            @JsonProperty("repositoryWorkerVirtualThreadsEnabled")
+            @Nullable Boolean repositoryWorkerVirtualThreadsEnabled,
+            @JsonProperty("maxNumRepositoryWorkersPerRepository")
+            @Nullable Integer maxNumRepositoryWorkersPerRepository,
             @JsonProperty("repositoryCacheSpec") @Nullable String repositoryCacheSpec,
             @JsonProperty("maxRemovedRepositoryAgeMillis") @Nullable Long maxRemovedRepositoryAgeMillis,
             @JsonProperty("gracefulShutdownTimeout") @Nullable GracefulShutdownTimeout gracefulShutdownTimeout,
@@ -188,6 +195,11 @@ public final class CentralDogmaConfig {
         this.numRepositoryWorkers = firstNonNull(numRepositoryWorkers, DEFAULT_NUM_REPOSITORY_WORKERS);
         checkArgument(this.numRepositoryWorkers > 0,
                       "numRepositoryWorkers: %s (expected: > 0)", this.numRepositoryWorkers);
+        this.repositoryWorkerVirtualThreadsEnabled = firstNonNull(repositoryWorkerVirtualThreadsEnabled, false);
+        checkArgument(maxNumRepositoryWorkersPerRepository == null || maxNumRepositoryWorkersPerRepository > 0,
+                      "maxNumRepositoryWorkersPerRepository: %s (expected: > 0)",
+                      maxNumRepositoryWorkersPerRepository);
+        this.maxNumRepositoryWorkersPerRepository = maxNumRepositoryWorkersPerRepository;
         this.maxRemovedRepositoryAgeMillis = firstNonNull(maxRemovedRepositoryAgeMillis,
                                                           DEFAULT_MAX_REMOVED_REPOSITORY_AGE_MILLIS);
         checkArgument(this.maxRemovedRepositoryAgeMillis >= 0,
@@ -331,6 +343,26 @@ public final class CentralDogmaConfig {
         return numRepositoryWorkers;
     }
 
+    /**
+     * Returns whether the repository workers run on virtual threads rather than a fixed number of platform
+     * threads. If enabled, {@link #numRepositoryWorkers()} limits the number of the repository operations
+     * running concurrently. Ignored if virtual threads are not available in the current JVM.
+     */
+    @JsonProperty
+    boolean isRepositoryWorkerVirtualThreadsEnabled() {
+        return repositoryWorkerVirtualThreadsEnabled;
+    }
+
+    /**
+     * Returns the maximum number of the repository workers that can be used by the operations of
+     * a single repository at the same time.
+     */
+    @JsonProperty
+    @JsonSerialize(converter = OptionalConverter.class)
+    Optional<Integer> maxNumRepositoryWorkersPerRepository() {
+        return Optional.ofNullable(maxNumRepositoryWorkersPerRepository);
+    }
+
     /**
      * Returns the maximum age of a removed repository in milliseconds. A removed repository is first marked
      * as removed, and then is purged permanently once the amount of time returned by this property passes
@@ -49,6 +49,7 @@ public final class ZooKeeperReplicationConfig implements ReplicationConfig {
     private static final int DEFAULT_NUM_WORKERS = 16;
     private static final int DEFAULT_MAX_LOG_COUNT = 1024;
     private static final long DEFAULT_MIN_LOG_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int DEFAULT_MAX_GROUP_COMMIT_SIZE = 1;
     private static final String DEFAULT_SECRET = "ch4n63m3";
 
     private final int serverId;
@@ -59,6 +60,8 @@ public final class ZooKeeperReplicationConfig implements ReplicationConfig {
     private final int numWorkers;
     private final int maxLogCount;
     private final long minLogAgeMillis;
+    private final int maxGroupCommitSize;
+    private final boolean compressLogs;
 
     /**
      * Creates a new replication configuration.
@@ -67,16 +70,18 @@ public final class ZooKeeperReplicationConfig implements ReplicationConfig {
      * @param servers the ZooKeeper server addresses, keyed by their ZooKeeper server IDs
      */
     public ZooKeeperReplicationConfig(int serverId, Map<Integer, ZooKeeperServerConfig> servers) {
-        this(serverId, servers, null, null, null, null, null, null);
+        this(serverId, servers, null, null, null, null, null, null, null, null);
     }
 
     @VisibleForTesting
     ZooKeeperReplicationConfig(
             int serverId, Map<Integer, ZooKeeperServerConfig> servers, String secret,
             Map<String, String> additionalProperties,
-            int timeoutMillis, int numWorkers, int maxLogCount, long minLogAgeMillis) {
+            int timeoutMillis, int numWorkers, int maxLogCount, long minLogAgeMillis,
+            int maxGroupCommitSize, boolean compressLogs) {
         this(Integer.valueOf(serverId), servers, secret, additionalProperties, Integer.valueOf(timeoutMillis),
-             Integer.valueOf(numWorkers), Integer.valueOf(maxLogCount), Long.valueOf(minLogAgeMillis));
+             Integer.valueOf(numWorkers), Integer.valueOf(maxLogCount), Long.valueOf(minLogAgeMillis),
+             Integer.valueOf(maxGroupCommitSize), Boolean.valueOf(compressLogs));
     }
 
     @JsonCreator
@@ -91,7 +96,9 @@ public final class ZooKeeperReplicationConfig implements ReplicationConfig {
                                @JsonProperty("timeoutMillis") @Nullable Integer timeoutMillis,
                                @JsonProperty("numWorkers") @Nullable Integer numWorkers,
                                @JsonProperty("maxLogCount") @Nullable Integer maxLogCount,
-                               @JsonProperty("minLogAgeMillis") @Nullable Long minLogAgeMillis) {
+                               @JsonProperty("minLogAgeMillis") @Nullable Long minLogAgeMillis,
+                               @JsonProperty("maxGroupCommitSize") @Nullable Integer maxGroupCommitSize,
+                               @JsonProperty("compressLogs") @Nullable Boolean compressLogs) {
 
         requireNonNull(servers, "servers");
         this.serverId = serverId != null ? serverId : findServerId(servers);
@@ -122,6 +129,12 @@ public final class ZooKeeperReplicationConfig implements ReplicationConfig {
 
         this.minLogAgeMillis =
                 minLogAgeMillis == null || minLogAgeMillis <= 0 ? DEFAULT_MIN_LOG_AGE_MILLIS : minLogAgeMillis;
+
+        this.maxGroupCommitSize =
+                maxGroupCommitSize == null || maxGroupCommitSize <= 0 ? DEFAULT_MAX_GROUP_COMMIT_SIZE
+                                                                      : maxGroupCommitSize;
+
+        this.compressLogs = firstNonNull(compressLogs, false);
     }
 
     private static int findServerId(Map<Integer, ZooKeeperServerConfig> servers) {
@@ -259,6 +272,26 @@ public final class ZooKeeperReplicationConfig implements ReplicationConfig {
         return minLogAgeMillis;
     }
 
+    /**
+     * Returns the maximum number of concurrently submitted commands which are replicated together,
+     * i.e. whose logs are written to ZooKeeper in the same transactions. Group commit is disabled if {@code 1}.
+     * If unspecified, the default of {@value #DEFAULT_MAX_GROUP_COMMIT_SIZE} is returned.
+     */
+    @JsonProperty
+    public int maxGroupCommitSize() {
+        return maxGroupCommitSize;
+    }
+
+    /**
+     * Returns whether the log items are compressed when stored in ZooKeeper. Enable this only after all
+     * replicas are upgraded to the version which supports it, because the older replicas cannot read
+     * the compressed log items. If unspecified, the default of {@code false} is returned.
+     */
+    @JsonProperty
+    public boolean compressLogs() {
+        return compressLogs;
+    }
+
     @Override
     public int hashCode() {
         return serverId;
@@ -282,7 +315,9 @@ public final class ZooKeeperReplicationConfig implements ReplicationConfig {
                timeoutMillis() == that.timeoutMillis() &&
                numWorkers() == that.numWorkers() &&
                maxLogCount() == that.maxLogCount() &&
-               minLogAgeMillis() == that.minLogAgeMillis();
+               minLogAgeMillis() == that.minLogAgeMillis() &&
+               maxGroupCommitSize() == that.maxGroupCommitSize() &&
+               compressLogs() == that.compressLogs();
     }
 
     @Override
@@ -294,6 +329,8 @@ public final class ZooKeeperReplicationConfig implements ReplicationConfig {
                           .add("timeoutMillis", timeoutMillis())
                           .add("numWorkers", numWorkers())
                           .add("maxLogCount", maxLogCount())
-                          .add("minLogAgeMillis", minLogAgeMillis()).toString();
+                          .add("minLogAgeMillis", minLogAgeMillis())
+                          .add("maxGroupCommitSize", maxGroupCommitSize())
+                          .add("compressLogs", compressLogs()).toString();
     }
 }
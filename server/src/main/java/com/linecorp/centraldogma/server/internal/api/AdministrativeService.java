@@ -16,7 +16,9 @@
 
 package com.linecorp.centraldogma.server.internal.api;
 
+import java.io.File;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,18 +26,25 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.util.Exceptions;
 import com.linecorp.armeria.server.HttpStatusException;
 import com.linecorp.armeria.server.ServiceRequestContext;
 import com.linecorp.armeria.server.annotation.Consumes;
 import com.linecorp.armeria.server.annotation.Get;
 import com.linecorp.armeria.server.annotation.Patch;
+import com.linecorp.armeria.server.annotation.Produces;
 import com.linecorp.armeria.server.annotation.ProducesJson;
+import com.linecorp.armeria.server.file.HttpFile;
 import com.linecorp.centraldogma.internal.Jackson;
 import com.linecorp.centraldogma.internal.jsonpatch.JsonPatch;
 import com.linecorp.centraldogma.internal.jsonpatch.JsonPatchException;
 import com.linecorp.centraldogma.server.command.CommandExecutor;
 import com.linecorp.centraldogma.server.internal.api.auth.RequiresAdministrator;
+import com.linecorp.centraldogma.server.internal.replication.ZooKeeperCommandExecutor;
 import com.linecorp.centraldogma.server.storage.project.ProjectManager;
 
 @ProducesJson
@@ -43,6 +52,8 @@ public final class AdministrativeService extends AbstractService {
 
     private static final Logger logger = LoggerFactory.getLogger(AdministrativeService.class);
 
+    private final AtomicBoolean snapshotInProgress = new AtomicBoolean();
+
     public AdministrativeService(ProjectManager projectManager, CommandExecutor executor) {
         super(projectManager, executor);
     }
@@ -129,6 +140,49 @@ public final class AdministrativeService extends AbstractService {
         throw HttpStatusException.of(HttpStatus.NOT_MODIFIED);
     }
 
+    /**
+     * GET /replication/snapshot
+     *
+     * <p>Returns a consistent snapshot of the data directory of this replica as a ZIP file. A new replica
+     * can start with the data directory extracted from it and replay only the logs written after the snapshot.
+     * Only one snapshot is written at a time, and it is abandoned when the client goes away.
+     */
+    @Get("/replication/snapshot")
+    @Produces("application/zip")
+    @RequiresAdministrator
+    public HttpResponse snapshot(ServiceRequestContext ctx) {
+        if (!(executor() instanceof ZooKeeperCommandExecutor)) {
+            return HttpApiUtil.newResponse(ctx, HttpStatus.NOT_FOUND, "Replication is not enabled.");
+        }
+
+        if (!snapshotInProgress.compareAndSet(false, true)) {
+            return HttpApiUtil.newResponse(ctx, HttpStatus.CONFLICT, "Another snapshot is being written.");
+        }
+
+        // Writing the snapshot of a large data directory may take longer than the request timeout.
+        ctx.clearRequestTimeout();
+        final ZooKeeperCommandExecutor executor = (ZooKeeperCommandExecutor) executor();
+        return HttpResponse.from(CompletableFuture.supplyAsync(() -> {
+            try {
+                final File zipFile = File.createTempFile("centraldogma-snapshot-", ".zip");
+                ctx.log().whenComplete().thenRun(zipFile::delete);
+                // Stop writing the snapshot if the response has been completed, i.e. the client has gone away.
+                final long revision = executor.createSnapshot(zipFile, () -> ctx.log().isComplete());
+                return HttpFile.builder(zipFile)
+                               .contentType(MediaType.ZIP)
+                               .addHeader(HttpHeaderNames.CONTENT_DISPOSITION,
+                                          "attachment; filename=\"snapshot-" + revision + ".zip\"")
+                               .build()
+                               .asService()
+                               .serve(ctx, ctx.request());
+            } catch (Exception e) {
+                return Exceptions.throwUnsafely(e);
+            } finally {
+                snapshotInProgress.set(false);
+            }
+        }, ctx.blockingTaskExecutor()));
+    }
+
     private static CompletableFuture<ServerStatus> rejectStatusPatch(JsonNode patch) {
         throw new IllegalArgumentException("Invalid JSON patch: " + patch);
     }
@@ -23,34 +23,55 @@ import static com.linecorp.centraldogma.common.EntryType.DIRECTORY;
 import static com.linecorp.centraldogma.internal.Util.isValidDirPath;
 import static com.linecorp.centraldogma.internal.Util.isValidFilePath;
 import static com.linecorp.centraldogma.server.internal.api.DtoConverter.convert;
-import static com.linecorp.centraldogma.server.internal.api.HttpApiUtil.returnOrThrow;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Nullable;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
 
+import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.ResponseHeadersBuilder;
 import com.linecorp.armeria.common.util.Exceptions;
 import com.linecorp.armeria.server.ServiceRequestContext;
 import com.linecorp.armeria.server.annotation.Default;
 import com.linecorp.armeria.server.annotation.ExceptionHandler;
 import com.linecorp.armeria.server.annotation.Get;
+import com.linecorp.armeria.server.annotation.Header;
 import com.linecorp.armeria.server.annotation.Param;
 import com.linecorp.armeria.server.annotation.Post;
+import com.linecorp.armeria.server.annotation.ProducesEventStream;
 import com.linecorp.armeria.server.annotation.ProducesJson;
 import com.linecorp.armeria.server.annotation.RequestConverter;
+import com.linecorp.armeria.server.encoding.EncodingService;
 import com.linecorp.centraldogma.common.Author;
 import com.linecorp.centraldogma.common.Change;
 import com.linecorp.centraldogma.common.Entry;
@@ -59,6 +80,7 @@ import com.linecorp.centraldogma.common.MergeQuery;
 import com.linecorp.centraldogma.common.Query;
 import com.linecorp.centraldogma.common.Revision;
 import com.linecorp.centraldogma.common.RevisionRange;
+import com.linecorp.centraldogma.internal.Jackson;
 import com.linecorp.centraldogma.internal.api.v1.ChangeDto;
 import com.linecorp.centraldogma.internal.api.v1.CommitMessageDto;
 import com.linecorp.centraldogma.internal.api.v1.EntryDto;
@@ -73,6 +95,9 @@ import com.linecorp.centraldogma.server.internal.api.auth.RequiresWritePermissio
 import com.linecorp.centraldogma.server.internal.api.converter.ChangesRequestConverter;
 import com.linecorp.centraldogma.server.internal.api.converter.CommitMessageRequestConverter;
 import com.linecorp.centraldogma.server.internal.api.converter.MergeQueryRequestConverter;
+import com.linecorp.centraldogma.server.internal.api.converter.MultiWatchRequestConverter;
+import com.linecorp.centraldogma.server.internal.api.converter.MultiWatchRequestConverter.MultiWatchRequest;
+import com.linecorp.centraldogma.server.internal.api.converter.MultiWatchRequestConverter.WatchTarget;
 import com.linecorp.centraldogma.server.internal.api.converter.QueryRequestConverter;
 import com.linecorp.centraldogma.server.internal.api.converter.WatchRequestConverter;
 import com.linecorp.centraldogma.server.internal.api.converter.WatchRequestConverter.WatchRequest;
@@ -90,8 +115,40 @@ import com.linecorp.centraldogma.server.storage.repository.Repository;
 @ExceptionHandler(HttpApiExceptionHandler.class)
 public class ContentServiceV1 extends AbstractService {
 
+    private static final Splitter COMMA_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    /**
+     * The maximum total size of the encoded responses in {@link #responseCache}, including their compressed
+     * representations, in bytes.
+     */
+    private static final long MAX_RESPONSE_CACHE_WEIGHT = 32 * 1024 * 1024;
+
+    /**
+     * The maximum number of entries in a file list which is encoded into a single buffer. A larger list is
+     * streamed by {@link JsonArrayStreamer} and is not cached.
+     */
+    private static final int MAX_BUFFERED_ENTRIES = 256;
+
+    /**
+     * The minimum size of a cached response which is compressed and cached in advance. A smaller response
+     * is compressed by the {@link EncodingService} if necessary.
+     */
+    private static final int MIN_PRECOMPRESSION_SIZE = 1024;
+
+    private static final String GZIP = "gzip";
+
     private final WatchService watchService;
 
+    /**
+     * The encoded JSON responses of the file retrievals and the file watches at a normalized revision.
+     * The files at a normalized revision never change, so the entries never need to be invalidated.
+     */
+    private final Cache<ResponseCacheKey, EncodedResponse> responseCache =
+            Caffeine.newBuilder()
+                    .maximumWeight(MAX_RESPONSE_CACHE_WEIGHT)
+                    .weigher((ResponseCacheKey key, EncodedResponse value) -> value.weight())
+                    .build();
+
     public ContentServiceV1(ProjectManager projectManager, CommandExecutor executor,
                             WatchService watchService) {
         super(projectManager, executor);
@@ -104,18 +161,39 @@ public class ContentServiceV1 extends AbstractService {
      * <p>Returns the list of files in the path.
      */
     @Get("regex:/projects/(?<projectName>[^/]+)/repos/(?<repoName>[^/]+)/list(?<path>(|/.*))$")
-    public CompletableFuture<List<EntryDto<?>>> listFiles(@Param String path,
-                                                          @Param @Default("-1") String revision,
-                                                          Repository repository) {
+    public CompletableFuture<?> listFiles(ServiceRequestContext ctx,
+                                          @Param String path,
+                                          @Param @Default("-1") String revision,
+                                          Repository repository) {
         final String normalizedPath = normalizePath(path);
         final Revision normalizedRev = repository.normalizeNow(new Revision(revision));
-        final CompletableFuture<List<EntryDto<?>>> future = new CompletableFuture<>();
-        listFiles(repository, normalizedPath, normalizedRev, false, future);
-        return future;
+        return cachedResponse(ctx, repository, normalizedRev, normalizedPath, null, "list",
+                              eTag -> listFiles(repository, normalizedPath, normalizedRev, false, eTag));
     }
 
-    private static void listFiles(Repository repository, String pathPattern, Revision normalizedRev,
-                                  boolean withContent, CompletableFuture<List<EntryDto<?>>> result) {
+    /**
+     * Retrieves the files matching the specified {@code pathPattern} and returns a {@link List} of
+     * {@link EntryDto}s, or an {@link HttpResponse} which streams them if there are too many entries.
+     * Note that {@link Repository#find(Revision, String, Map)} retrieves all matching entries at once
+     * even if they are streamed, so streaming saves only the memory for the DTOs and the encoded response.
+     */
+    private static CompletableFuture<Object> listFiles(Repository repository, String pathPattern,
+                                                       Revision normalizedRev, boolean withContent,
+                                                       String eTag) {
+        final CompletableFuture<Map<String, Entry<?>>> future = new CompletableFuture<>();
+        findFiles(repository, pathPattern, normalizedRev, withContent, future);
+        return future.thenApply(entries -> {
+            final Function<Entry<?>, EntryDto<?>> converter =
+                    entry -> convert(repository, normalizedRev, entry, withContent);
+            if (entries.size() <= MAX_BUFFERED_ENTRIES) {
+                return entries.values().stream().map(converter).collect(toImmutableList());
+            }
+            return JsonArrayStreamer.stream(newJsonHeaders(eTag), entries.values().iterator(), converter);
+        });
+    }
+
+    private static void findFiles(Repository repository, String pathPattern, Revision normalizedRev,
+                                  boolean withContent, CompletableFuture<Map<String, Entry<?>>> result) {
         final Map<FindOption<?>, ?> options = withContent ? FindOptions.FIND_ALL_WITH_CONTENT
                                                           : FindOptions.FIND_ALL_WITHOUT_CONTENT;
 
@@ -129,11 +207,9 @@ public class ContentServiceV1 extends AbstractService {
             // This is called once at most, because the pathPattern is not a valid file path anymore.
             if (isValidFilePath(pathPattern) && entries.size() == 1 &&
                 entries.values().iterator().next().type() == DIRECTORY) {
-                listFiles(repository, pathPattern + "/*", normalizedRev, withContent, result);
+                findFiles(repository, pathPattern + "/*", normalizedRev, withContent, result);
             } else {
-                result.complete(entries.values().stream()
-                                       .map(entry -> convert(repository, normalizedRev, entry, withContent))
-                                       .collect(toImmutableList()));
+                result.complete(entries);
             }
             return null;
         });
@@ -220,12 +296,17 @@ public class ContentServiceV1 extends AbstractService {
      * jsonpath={jsonpath}
      *
      * <p>Returns the entry of files in the path. This is same with
-     * {@link #listFiles(String, String, Repository)} except that containing the content of the files.
+     * {@link #listFiles(ServiceRequestContext, String, String, Repository)} except that containing
+     * the content of the files.
      * Note that if the {@link HttpHeaderNames#IF_NONE_MATCH} in which has a revision is sent with,
      * this will await for the time specified in {@link HttpHeaderNames#PREFER}.
      * During the time if the specified revision becomes different with the latest revision, this will
      * response back right away to the client.
      * {@link HttpStatus#NOT_MODIFIED} otherwise.
+     *
+     * <p>If the {@link HttpHeaderNames#IF_NONE_MATCH} contains an entity tag rather than a revision,
+     * it is compared with the {@link HttpHeaderNames#ETAG} of the requested content, and then
+     * {@link HttpStatus#NOT_MODIFIED} is sent if they are same.
      */
     @Get("regex:/projects/(?<projectName>[^/]+)/repos/(?<repoName>[^/]+)/contents(?<path>(|/.*))$")
     public CompletableFuture<?> getFiles(
@@ -250,15 +331,143 @@ public class ContentServiceV1 extends AbstractService {
         final Revision normalizedRev = repository.normalizeNow(new Revision(revision));
         if (query != null) {
             // get a file
-            return repository.get(normalizedRev, query)
-                             .handle(returnOrThrow((Entry<?> result) -> convert(repository, normalizedRev,
-                                                                                result, true)));
+            return cachedResponse(ctx, repository, normalizedRev, query.path(), query, "contents", eTag -> {
+                final CompletableFuture<? extends Entry<?>> future = repository.get(normalizedRev, query);
+                return future.thenApply(entry -> convert(repository, normalizedRev, entry, true));
+            });
         }
 
         // get files
-        final CompletableFuture<List<EntryDto<?>>> future = new CompletableFuture<>();
-        listFiles(repository, normalizedPath, normalizedRev, true, future);
-        return future;
+        return cachedResponse(ctx, repository, normalizedRev, normalizedPath, null, "contents",
+                              eTag -> listFiles(repository, normalizedPath, normalizedRev, true, eTag));
+    }
+
+    /**
+     * Sends the cached response of a file retrieval if possible. Otherwise, retrieves the files and
+     * caches the encoded response. {@link HttpStatus#NOT_MODIFIED} is sent without retrieving the files
+     * if the client has the same content already. The {@link HttpResponse} created by
+     * the {@code responseFactory} is sent as it is without being cached.
+     */
+    private CompletableFuture<?> cachedResponse(ServiceRequestContext ctx, Repository repository,
+                                                Revision normalizedRev, String path, @Nullable Query<?> query,
+                                                String kind,
+                                                Function<String, CompletableFuture<?>> responseFactory) {
+        final ResponseCacheKey key = new ResponseCacheKey(repository, normalizedRev, path, query, kind);
+        final String eTag = key.eTag();
+        final String matchedETag = matchETag(ctx.request().headers().get(HttpHeaderNames.IF_NONE_MATCH), eTag);
+        if (matchedETag != null) {
+            return CompletableFuture.completedFuture(HttpResponse.of(
+                    ResponseHeaders.builder(HttpStatus.NOT_MODIFIED)
+                                   .set(HttpHeaderNames.ETAG, matchedETag)
+                                   .build()));
+        }
+
+        final EncodedResponse cached = responseCache.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(newJsonResponse(ctx, key, eTag, cached));
+        }
+
+        return responseFactory.apply(eTag).thenApply(resObj -> {
+            if (resObj instanceof HttpResponse) {
+                return resObj;
+            }
+            if (resObj instanceof Collection && ((Collection<?>) resObj).isEmpty()) {
+                // Let HttpApiResponseConverter send '204 No Content'.
+                return resObj;
+            }
+
+            final EncodedResponse encoded = encode(resObj);
+            responseCache.put(key, encoded);
+            return newJsonResponse(ctx, key, eTag, encoded);
+        });
+    }
+
+    private static EncodedResponse encode(Object resObj) {
+        try {
+            return new EncodedResponse(Jackson.writeValueAsBytes(resObj));
+        } catch (JsonProcessingException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Returns the entity tag in the specified {@link HttpHeaderNames#IF_NONE_MATCH} header which matches
+     * the specified {@code eTag} or its gzip-compressed variant.
+     */
+    @Nullable
+    private static String matchETag(@Nullable String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        for (String tag : COMMA_SPLITTER.split(ifNoneMatch)) {
+            if (tag.equals(eTag) || tag.equals(gzipETag(eTag))) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    private static String gzipETag(String eTag) {
+        return eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+    }
+
+    /**
+     * Returns a new {@link HttpResponse} which sends the specified {@link EncodedResponse} cached with
+     * the specified {@link ResponseCacheKey}. The cached gzip-compressed content is sent if the client
+     * accepts it.
+     */
+    private HttpResponse newJsonResponse(ServiceRequestContext ctx, ResponseCacheKey key,
+                                         @Nullable String eTag, EncodedResponse response) {
+        final ResponseHeadersBuilder headers = ResponseHeaders.builder(HttpStatus.OK)
+                                                              .contentType(MediaType.JSON_UTF_8);
+        final byte[] content;
+        if (response.isCompressible()) {
+            headers.set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING.toString());
+        }
+        if (response.isCompressible() &&
+            acceptsGzip(ctx.request().headers().get(HttpHeaderNames.ACCEPT_ENCODING))) {
+            final boolean compressed = response.isGzipped();
+            content = response.gzipped();
+            if (!compressed) {
+                // Let the cache weigh the response again, now that it holds the compressed content as well.
+                responseCache.asMap().replace(key, response, response);
+            }
+            headers.set(HttpHeaderNames.CONTENT_ENCODING, GZIP);
+            if (eTag != null) {
+                headers.set(HttpHeaderNames.ETAG, gzipETag(eTag));
+            }
+        } else {
+            content = response.content;
+            if (eTag != null) {
+                headers.set(HttpHeaderNames.ETAG, eTag);
+            }
+        }
+        return HttpResponse.of(headers.build(), HttpData.wrap(content));
+    }
+
+    @VisibleForTesting
+    static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean acceptsAny = false;
+        for (String coding : COMMA_SPLITTER.split(acceptEncoding)) {
+            final int semicolonIdx = coding.indexOf(';');
+            final String name = (semicolonIdx < 0 ? coding : coding.substring(0, semicolonIdx)).trim();
+            final boolean acceptable = semicolonIdx < 0 || !isZeroQuality(coding.substring(semicolonIdx + 1));
+            if (GZIP.equalsIgnoreCase(name)) {
+                return acceptable;
+            }
+            if ("*".equals(name)) {
+                acceptsAny = acceptable;
+            }
+        }
+        return acceptsAny;
+    }
+
+    private static boolean isZeroQuality(String params) {
+        final String qValue = params.replace(" ", "");
+        return qValue.startsWith("q=0") && !qValue.matches("q=0\\.0*[1-9][0-9]*");
     }
 
     private CompletableFuture<?> watchFile(ServiceRequestContext ctx,
@@ -272,9 +481,15 @@ public class ContentServiceV1 extends AbstractService {
         }
 
         return future.thenApply(entry -> {
+            // Many clients usually receive the same watch result, so encode and compress it only once.
             final Revision revision = entry.revision();
-            final EntryDto<?> entryDto = convert(repository, revision, entry, true);
-            return (Object) new WatchResultDto(revision, entryDto);
+            final ResponseCacheKey key = new ResponseCacheKey(repository, revision, query.path(), query,
+                                                              "watch");
+            final EncodedResponse encoded = responseCache.get(key, unused -> {
+                final EntryDto<?> entryDto = convert(repository, revision, entry, true);
+                return encode(new WatchResultDto(revision, entryDto));
+            });
+            return (Object) newJsonResponse(ctx, key, null, encoded);
         }).exceptionally(ContentServiceV1::handleWatchFailure);
     }
 
@@ -292,6 +507,99 @@ public class ContentServiceV1 extends AbstractService {
                      .exceptionally(ContentServiceV1::handleWatchFailure);
     }
 
+    /**
+     * POST /projects/{projectName}/repos/{repoName}/watch
+     *
+     * <p>Watches all the files and the path patterns specified in the request content at once, so that
+     * a client does not need to send as many requests as the files it watches. When any of them is changed,
+     * returns a JSON array whose elements are the results of the watches which are complete, with
+     * the {@code index} of the watch in the request. {@link HttpStatus#NOT_MODIFIED} is sent if nothing
+     * has changed for the time specified in {@link HttpHeaderNames#PREFER}.
+     */
+    @Post("/projects/{projectName}/repos/{repoName}/watch")
+    public CompletableFuture<?> watchMany(
+            ServiceRequestContext ctx, Repository repository,
+            @RequestConverter(MultiWatchRequestConverter.class) MultiWatchRequest watchRequest) {
+        final List<WatchTarget> targets = watchRequest.targets();
+        final ImmutableList.Builder<CompletableFuture<?>> builder =
+                ImmutableList.builderWithExpectedSize(targets.size());
+        for (WatchTarget target : targets) {
+            final Query<?> query = target.query();
+            if (query != null) {
+                builder.add(repository.watch(target.lastKnownRevision(), query));
+            } else {
+                builder.add(repository.watch(target.lastKnownRevision(), target.pathPattern()));
+            }
+        }
+        final List<CompletableFuture<?>> watches = builder.build();
+        final CompletableFuture<Void> future = watchService.watchAny(watches, watchRequest.timeoutMillis());
+
+        if (!future.isDone()) {
+            ctx.log().whenComplete().thenRun(() -> future.cancel(false));
+        }
+
+        return future.thenApply(unused -> {
+            final ArrayNode results = JsonNodeFactory.instance.arrayNode();
+            for (int i = 0; i < watches.size(); i++) {
+                final CompletableFuture<?> watch = watches.get(i);
+                if (!watch.isDone() || watch.isCancelled()) {
+                    continue;
+                }
+
+                final ObjectNode result = results.addObject().put("index", i);
+                try {
+                    final Object value = watch.join();
+                    if (value instanceof Entry) {
+                        final Entry<?> entry = (Entry<?>) value;
+                        result.put("revision", entry.revision().major())
+                              .set("entry",
+                                   Jackson.valueToTree(convert(repository, entry.revision(), entry, true)));
+                    } else {
+                        result.put("revision", ((Revision) value).major());
+                    }
+                } catch (CompletionException e) {
+                    final Throwable cause = Exceptions.peel(e);
+                    result.put("exception", cause.getClass().getName())
+                          .put("message", firstNonNull(cause.getMessage(), ""));
+                }
+            }
+            return (Object) results;
+        }).exceptionally(ContentServiceV1::handleWatchFailure);
+    }
+
+    /**
+     * GET /projects/{projectName}/repos/{repoName}/watch{path}?jsonpath={jsonpath}
+     *
+     * <p>Watches the file or the files which match the path pattern, and sends every change as
+     * a server-sent event over a single response, so that a client does not need to send a new request
+     * for each change. The {@code Last-Event-ID} header specifies the last known revision, which is
+     * {@link Revision#HEAD} if absent. See {@link WatchEventStreamer} for the format of the events.
+     */
+    @Get("regex:/projects/(?<projectName>[^/]+)/repos/(?<repoName>[^/]+)/watch(?<path>/.*)$")
+    @ProducesEventStream
+    public HttpResponse watchEvents(
+            ServiceRequestContext ctx,
+            @Param String path, Repository repository,
+            @Header("Last-Event-ID") @Nullable String lastEventId,
+            @RequestConverter(QueryRequestConverter.class) @Nullable Query<?> query) {
+        final Revision lastKnownRevision = isNullOrEmpty(lastEventId) ? Revision.HEAD
+                                                                       : new Revision(lastEventId);
+        if (query != null) {
+            return WatchEventStreamer.<Entry<?>>stream(
+                    ctx, watchService, lastKnownRevision,
+                    revision -> repository.watch(revision, query),
+                    Entry::revision,
+                    entry -> new WatchResultDto(entry.revision(),
+                                                convert(repository, entry.revision(), entry, true)));
+        }
+
+        final String pathPattern = normalizePath(path);
+        return WatchEventStreamer.stream(ctx, watchService, lastKnownRevision,
+                                         revision -> repository.watch(revision, pathPattern),
+                                         Function.identity(),
+                                         revision -> new WatchResultDto(revision, null));
+    }
+
     private static Object handleWatchFailure(Throwable thrown) {
         if (Throwables.getRootCause(thrown) instanceof CancellationException) {
             // timeout happens
@@ -390,4 +698,105 @@ public class ContentServiceV1 extends AbstractService {
             @RequestConverter(MergeQueryRequestConverter.class) MergeQuery<T> query) {
         return repository.mergeFiles(new Revision(revision), query).thenApply(DtoConverter::convert);
     }
+
+    /**
+     * The key of a file retrieval, which also determines the {@link HttpHeaderNames#ETAG} of the response.
+     */
+    private static final class ResponseCacheKey {
+
+        private final String value;
+        private final int revision;
+
+        ResponseCacheKey(Repository repository, Revision normalizedRev, String path,
+                         @Nullable Query<?> query, String kind) {
+            final StringBuilder buf = new StringBuilder(64);
+            buf.append(repository.parent().name()).append('/')
+               .append(repository.name()).append('/')
+               .append(repository.creationTimeMillis()).append(':')
+               .append(kind).append(':')
+               .append(path);
+            if (query != null) {
+                buf.append(':').append(query.type());
+                for (String expr : query.expressions()) {
+                    buf.append(':').append(expr);
+                }
+            }
+            value = buf.toString();
+            revision = normalizedRev.major();
+        }
+
+        /**
+         * Returns the strong entity tag of the response, which changes when the revision changes.
+         */
+        String eTag() {
+            return "\"" + revision + '-' + Hashing.murmur3_128().hashString(value, UTF_8) + '"';
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode() * 31 + revision;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ResponseCacheKey)) {
+                return false;
+            }
+            final ResponseCacheKey that = (ResponseCacheKey) obj;
+            return revision == that.revision && value.equals(that.value);
+        }
+
+        @Override
+        public String toString() {
+            return value + '@' + revision;
+        }
+    }
+
+    /**
+     * A JSON response encoded into bytes, with its gzip-compressed representation created on demand.
+     */
+    private static final class EncodedResponse {
+        final byte[] content;
+        @Nullable
+        private volatile byte[] gzipped;
+
+        EncodedResponse(byte[] content) {
+            this.content = content;
+        }
+
+        boolean isCompressible() {
+            return content.length >= MIN_PRECOMPRESSION_SIZE;
+        }
+
+        boolean isGzipped() {
+            return gzipped != null;
+        }
+
+        /**
+         * Returns the number of bytes held by this response, including its compressed representation.
+         */
+        int weight() {
+            final byte[] gzipped = this.gzipped;
+            return gzipped != null ? content.length + gzipped.length : content.length;
+        }
+
+        byte[] gzipped() {
+            byte[] gzipped = this.gzipped;
+            if (gzipped == null) {
+                // Compressing more than once in a race is harmless.
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4);
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                    gzipOut.write(content);
+                } catch (IOException e) {
+                    // Never happens with ByteArrayOutputStream.
+                    throw new UncheckedIOException(e);
+                }
+                this.gzipped = gzipped = out.toByteArray();
+            }
+            return gzipped;
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.api;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpResponseWriter;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.centraldogma.internal.Jackson;
+
+/**
+ * Sends a JSON array whose elements are converted and encoded lazily, one chunk at a time.
+ * The next chunk is not encoded until the previous chunk has been consumed by the transport,
+ * so that neither the converted elements nor the encoded array are held in memory as a whole.
+ * Note that this does not bound the memory used by the source of the elements, which is up to the caller.
+ */
+final class JsonArrayStreamer<T> {
+
+    /**
+     * The approximate maximum size of a chunk, in bytes.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Returns a new {@link HttpResponse} which sends the specified {@code elements} as a JSON array.
+     */
+    static <T> HttpResponse stream(ResponseHeaders headers, Iterator<T> elements,
+                                   Function<? super T, ?> converter) {
+        requireNonNull(headers, "headers");
+        requireNonNull(elements, "elements");
+        requireNonNull(converter, "converter");
+
+        final HttpResponseWriter writer = HttpResponse.streaming();
+        writer.write(headers);
+        new JsonArrayStreamer<>(writer, elements, converter).writeNext();
+        return writer;
+    }
+
+    private final HttpResponseWriter writer;
+    private final Iterator<T> elements;
+    private final Function<? super T, ?> converter;
+    private boolean started;
+
+    private JsonArrayStreamer(HttpResponseWriter writer, Iterator<T> elements,
+                              Function<? super T, ?> converter) {
+        this.writer = writer;
+        this.elements = elements;
+        this.converter = converter;
+    }
+
+    private void writeNext() {
+        if (!writer.isOpen()) {
+            // The client has gone away.
+            return;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+        try {
+            while (out.size() < CHUNK_SIZE && elements.hasNext()) {
+                out.write(started ? ',' : '[');
+                started = true;
+                final byte[] encoded = Jackson.writeValueAsBytes(converter.apply(elements.next()));
+                out.write(encoded, 0, encoded.length);
+            }
+
+            if (!elements.hasNext()) {
+                if (!started) {
+                    out.write('[');
+                }
+                out.write(']');
+                if (writer.tryWrite(HttpData.wrap(out.toByteArray()))) {
+                    writer.close();
+                }
+                return;
+            }
+
+            if (writer.tryWrite(HttpData.wrap(out.toByteArray()))) {
+                writer.whenConsumed().thenRun(this::writeNext);
+            }
+        } catch (Throwable cause) {
+            writer.close(cause);
+        }
+    }
+}
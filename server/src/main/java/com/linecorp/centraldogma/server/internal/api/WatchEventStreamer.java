@@ -0,0 +1,207 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.api;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpResponseWriter;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.util.Exceptions;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.internal.Jackson;
+import com.linecorp.centraldogma.internal.api.v1.WatchTimeout;
+
+/**
+ * Sends the results of the consecutive watches on a file or a repository as
+ * <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">server-sent events</a>, so that
+ * a client receives every change over a single response instead of sending a new request for each change.
+ * The {@code id} of an event is the revision of the change, and its {@code data} is the JSON-encoded result
+ * of the watch. A comment is sent every {@link WatchTimeout#STREAM_HEARTBEAT_INTERVAL_MILLIS} so that
+ * the client and the intermediaries can tell an idle stream from a broken connection. The stream is closed
+ * with an {@code error} event when a watch fails, and closed gracefully after {@link WatchTimeout#MAX_MILLIS}
+ * or when the server stops.
+ */
+final class WatchEventStreamer<T> {
+
+    private static final HttpData HEARTBEAT = HttpData.ofUtf8(":\n\n");
+    private static final HttpData SHUTDOWN = HttpData.ofUtf8(":server is shutting down\n\n");
+
+    /**
+     * Returns a new {@link HttpResponse} which sends the results of the watches made by the specified
+     * {@code watcher}, starting from the specified {@code lastKnownRevision}. The stream is registered to
+     * the specified {@link WatchService} so that it is closed when the server stops.
+     *
+     * @param watcher the function which watches the changes since the specified {@link Revision}
+     * @param revisionFunction the function which returns the {@link Revision} of a watch result
+     * @param converter the function which converts a watch result into the JSON-encodable object
+     */
+    static <T> HttpResponse stream(ServiceRequestContext ctx, WatchService watchService,
+                                   Revision lastKnownRevision,
+                                   Function<Revision, ? extends CompletableFuture<? extends T>> watcher,
+                                   Function<? super T, Revision> revisionFunction,
+                                   Function<? super T, ?> converter) {
+        requireNonNull(ctx, "ctx");
+        requireNonNull(watchService, "watchService");
+        requireNonNull(lastKnownRevision, "lastKnownRevision");
+        requireNonNull(watcher, "watcher");
+        requireNonNull(revisionFunction, "revisionFunction");
+        requireNonNull(converter, "converter");
+
+        final HttpResponseWriter writer = HttpResponse.streaming();
+        writer.write(ResponseHeaders.builder(HttpStatus.OK)
+                                    .contentType(MediaType.EVENT_STREAM)
+                                    .set(HttpHeaderNames.CACHE_CONTROL, "no-cache")
+                                    .build());
+        new WatchEventStreamer<>(ctx, writer, lastKnownRevision, watcher, revisionFunction, converter)
+                .start(watchService);
+        return writer;
+    }
+
+    private final ServiceRequestContext ctx;
+    private final HttpResponseWriter writer;
+    private final Function<Revision, ? extends CompletableFuture<? extends T>> watcher;
+    private final Function<? super T, Revision> revisionFunction;
+    private final Function<? super T, ?> converter;
+
+    // Updated only by the callback of the previous watch, so there's no concurrent access.
+    private Revision lastKnownRevision;
+    @Nullable
+    private volatile CompletableFuture<? extends T> currentWatch;
+
+    private WatchEventStreamer(ServiceRequestContext ctx, HttpResponseWriter writer, Revision lastKnownRevision,
+                               Function<Revision, ? extends CompletableFuture<? extends T>> watcher,
+                               Function<? super T, Revision> revisionFunction,
+                               Function<? super T, ?> converter) {
+        this.ctx = ctx;
+        this.writer = writer;
+        this.lastKnownRevision = lastKnownRevision;
+        this.watcher = watcher;
+        this.revisionFunction = revisionFunction;
+        this.converter = converter;
+    }
+
+    private void start(WatchService watchService) {
+        // The stream lasts until the client goes away or it is closed gracefully below.
+        ctx.clearRequestTimeout();
+
+        final long heartbeatMillis = WatchTimeout.STREAM_HEARTBEAT_INTERVAL_MILLIS;
+        final ScheduledFuture<?> heartbeatFuture = ctx.eventLoop().scheduleWithFixedDelay(
+                () -> writer.tryWrite(HEARTBEAT), heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        final ScheduledFuture<?> closeFuture = ctx.eventLoop().schedule(
+                writer::close, WatchTimeout.MAX_MILLIS, TimeUnit.MILLISECONDS);
+
+        writer.whenComplete().handle((unused1, unused2) -> {
+            heartbeatFuture.cancel(false);
+            closeFuture.cancel(false);
+            final CompletableFuture<? extends T> currentWatch = this.currentWatch;
+            if (currentWatch != null) {
+                currentWatch.cancel(false);
+            }
+            return null;
+        });
+
+        watchService.addStream(this);
+        watchNext();
+    }
+
+    /**
+     * Returns the future which is completed when this stream is closed.
+     */
+    CompletableFuture<Void> whenComplete() {
+        return writer.whenComplete();
+    }
+
+    /**
+     * Closes this stream with a comment, so that the client reconnects to another server without waiting for
+     * the graceful shutdown of this server to finish.
+     */
+    void closeForShutdown() {
+        ctx.eventLoop().execute(() -> {
+            writer.tryWrite(SHUTDOWN);
+            writer.close();
+        });
+    }
+
+    private void watchNext() {
+        if (!writer.isOpen()) {
+            // The client has gone away.
+            return;
+        }
+
+        final CompletableFuture<? extends T> future;
+        try {
+            future = watcher.apply(lastKnownRevision);
+        } catch (Throwable cause) {
+            fail(cause);
+            return;
+        }
+
+        currentWatch = future;
+        if (!writer.isOpen()) {
+            // The client has gone away while starting the watch.
+            future.cancel(false);
+            return;
+        }
+
+        future.handle((result, cause) -> {
+            if (cause != null) {
+                if (!(Exceptions.peel(cause) instanceof CancellationException)) {
+                    fail(cause);
+                }
+                return null;
+            }
+
+            try {
+                final Revision revision = revisionFunction.apply(result);
+                final String data = Jackson.writeValueAsString(converter.apply(result));
+                lastKnownRevision = revision;
+                if (writer.tryWrite(HttpData.ofUtf8("id:" + revision.major() + "\ndata:" + data + "\n\n"))) {
+                    writer.whenConsumed().thenRun(this::watchNext);
+                }
+            } catch (Throwable t) {
+                fail(t);
+            }
+            return null;
+        });
+    }
+
+    private void fail(Throwable cause) {
+        final Throwable peeled = Exceptions.peel(cause);
+        final ObjectNode data = JsonNodeFactory.instance.objectNode()
+                                                       .put("exception", peeled.getClass().getName())
+                                                       .put("message", firstNonNull(peeled.getMessage(), ""));
+        writer.tryWrite(HttpData.ofUtf8("event:error\ndata:" + data + "\n\n"));
+        writer.close();
+    }
+}
@@ -19,6 +19,7 @@ package com.linecorp.centraldogma.server.internal.api;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
@@ -59,6 +60,9 @@ public final class WatchService {
 
     private final Set<CompletableFuture<?>> pendingFutures =
             Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Set<WatchEventStreamer<?>> activeStreams =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean stopping;
     private final Counter wakeupCounter;
     private final Counter timeoutCounter;
     private final Counter failureCounter;
@@ -67,6 +71,8 @@ public final class WatchService {
         requireNonNull(meterRegistry, "meterRegistry");
 
         Gauge.builder("watches.active", this, self -> self.pendingFutures.size()).register(meterRegistry);
+        Gauge.builder("watches.streams.active", this, self -> self.activeStreams.size())
+             .register(meterRegistry);
 
         wakeupCounter = Counter.builder("watches.processed")
                                .tag("result", "wakeup")
@@ -122,6 +128,51 @@ public final class WatchService {
         return result;
     }
 
+    /**
+     * Awaits until any of the specified {@code watches} is complete. This will wait until the specified
+     * {@code timeoutMillis} passes. If there's no change during the time, the returned future will be
+     * exceptionally completed with the {@link CancellationException}. The {@code watches} which are not
+     * complete yet are cancelled when the returned future is complete, so that a single request does not
+     * hold the watches after it is done.
+     */
+    public CompletableFuture<Void> watchAny(List<? extends CompletableFuture<?>> watches, long timeoutMillis) {
+        final ServiceRequestContext ctx = RequestContext.current();
+        updateRequestTimeout(ctx, timeoutMillis);
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        for (CompletableFuture<?> watch : watches) {
+            watch.handle((unused1, unused2) -> result.complete(null));
+        }
+        result.whenComplete((unused1, unused2) -> watches.forEach(watch -> watch.cancel(false)));
+        if (result.isDone()) {
+            return result;
+        }
+
+        scheduleTimeout(ctx, result, timeoutMillis);
+        return result;
+    }
+
+    /**
+     * Counts a streaming watch as active until it is closed. The stream is closed right away if the server
+     * is stopping.
+     */
+    void addStream(WatchEventStreamer<?> stream) {
+        requireNonNull(stream, "stream");
+        activeStreams.add(stream);
+        stream.whenComplete().handle((unused1, unused2) -> activeStreams.remove(stream));
+        if (stopping) {
+            stream.closeForShutdown();
+        }
+    }
+
+    /**
+     * Closes all active streaming watches, which would otherwise hold the graceful shutdown of the server
+     * until they time out. Invoked when the server starts to stop.
+     */
+    public void serverStopping() {
+        stopping = true;
+        activeStreams.forEach(WatchEventStreamer::closeForShutdown);
+    }
+
     private <T> void scheduleTimeout(ServiceRequestContext ctx, CompletableFuture<T> result,
                                      long timeoutMillis) {
         pendingFutures.add(result);
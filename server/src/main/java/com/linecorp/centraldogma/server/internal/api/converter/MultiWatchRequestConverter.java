@@ -0,0 +1,183 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.api.converter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.linecorp.centraldogma.internal.Util.isValidFilePath;
+import static com.linecorp.centraldogma.internal.Util.validatePathPattern;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import com.linecorp.armeria.common.AggregatedHttpRequest;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import com.linecorp.armeria.server.annotation.JacksonRequestConverterFunction;
+import com.linecorp.armeria.server.annotation.RequestConverterFunction;
+import com.linecorp.centraldogma.common.Query;
+import com.linecorp.centraldogma.common.QueryType;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.internal.api.v1.WatchTimeout;
+
+/**
+ * A request converter that converts to {@link MultiWatchRequest}. The request content must be a JSON array
+ * whose elements are either a file watch, e.g.
+ * <pre>{@code
+ * { "path": "/foo.json", "jsonPaths": ["$.a"], "lastKnownRevision": 3 }
+ * }</pre>
+ * or a repository watch, e.g.
+ * <pre>{@code
+ * { "pathPattern": "/**", "lastKnownRevision": 3 }
+ * }</pre>
+ * The watch timeout is specified with the {@link HttpHeaderNames#PREFER} header, as same as
+ * {@link WatchRequestConverter}. The array may contain up to
+ * {@link WatchTimeout#MAX_MULTI_WATCH_TARGETS} elements.
+ */
+public final class MultiWatchRequestConverter implements RequestConverterFunction {
+
+    private final JacksonRequestConverterFunction delegate = new JacksonRequestConverterFunction();
+
+    @Override
+    public MultiWatchRequest convertRequest(
+            ServiceRequestContext ctx, AggregatedHttpRequest request, Class<?> expectedResultType,
+            @Nullable ParameterizedType expectedParameterizedResultType) throws Exception {
+
+        final JsonNode node = (JsonNode) delegate.convertRequest(ctx, request, JsonNode.class, null);
+        if (node == null) {
+            return RequestConverterFunction.fallthrough();
+        }
+        checkArgument(node.getNodeType() == JsonNodeType.ARRAY && node.size() > 0,
+                      "the watch targets must be a non-empty array.");
+        checkArgument(node.size() <= WatchTimeout.MAX_MULTI_WATCH_TARGETS,
+                      "too many watch targets: %s (expected: <= %s)",
+                      node.size(), WatchTimeout.MAX_MULTI_WATCH_TARGETS);
+
+        final ImmutableList.Builder<WatchTarget> builder = ImmutableList.builderWithExpectedSize(node.size());
+        for (JsonNode target : node) {
+            builder.add(readTarget(target));
+        }
+
+        final long timeoutMillis =
+                WatchRequestConverter.timeoutMillis(request.headers().get(HttpHeaderNames.PREFER));
+        return new MultiWatchRequest(builder.build(), timeoutMillis);
+    }
+
+    private static WatchTarget readTarget(JsonNode node) {
+        final JsonNode lastKnownRevision = node.get("lastKnownRevision");
+        checkArgument(lastKnownRevision != null && lastKnownRevision.isInt(),
+                      "a watch target should have a lastKnownRevision.");
+        final Revision revision = new Revision(lastKnownRevision.intValue());
+
+        final JsonNode path = node.get("path");
+        if (path != null) {
+            final String path0 = path.textValue();
+            checkArgument(path0 != null && isValidFilePath(path0), "invalid file path: %s", path);
+
+            final JsonNode jsonPaths = node.get("jsonPaths");
+            if (jsonPaths == null) {
+                return new WatchTarget(revision, Query.of(QueryType.IDENTITY, path0), null);
+            }
+            checkArgument(jsonPaths.isArray(), "'jsonPaths' must be an array.");
+            final ImmutableList.Builder<String> expressions = ImmutableList.builder();
+            for (JsonNode expression : jsonPaths) {
+                checkArgument(expression.isTextual(), "invalid JSON path: %s", expression);
+                expressions.add(expression.textValue());
+            }
+            return new WatchTarget(revision, Query.ofJsonPath(path0, expressions.build()), null);
+        }
+
+        final JsonNode pathPattern = node.get("pathPattern");
+        checkArgument(pathPattern != null && pathPattern.isTextual(),
+                      "a watch target should have a path or a pathPattern.");
+        return new WatchTarget(revision, null,
+                               validatePathPattern(pathPattern.textValue(), "pathPattern"));
+    }
+
+    public static final class MultiWatchRequest {
+        private final List<WatchTarget> targets;
+        private final long timeoutMillis;
+
+        MultiWatchRequest(List<WatchTarget> targets, long timeoutMillis) {
+            this.targets = targets;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public List<WatchTarget> targets() {
+            return targets;
+        }
+
+        public long timeoutMillis() {
+            return timeoutMillis;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("targets", targets)
+                              .add("timeoutMillis", timeoutMillis)
+                              .toString();
+        }
+    }
+
+    /**
+     * A file or a repository to watch. Either {@link #query()} or {@link #pathPattern()} is not
+     * {@code null}.
+     */
+    public static final class WatchTarget {
+        private final Revision lastKnownRevision;
+        @Nullable
+        private final Query<?> query;
+        @Nullable
+        private final String pathPattern;
+
+        WatchTarget(Revision lastKnownRevision, @Nullable Query<?> query, @Nullable String pathPattern) {
+            this.lastKnownRevision = lastKnownRevision;
+            this.query = query;
+            this.pathPattern = pathPattern;
+        }
+
+        public Revision lastKnownRevision() {
+            return lastKnownRevision;
+        }
+
+        @Nullable
+        public Query<?> query() {
+            return query;
+        }
+
+        @Nullable
+        public String pathPattern() {
+            return pathPattern;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .omitNullValues()
+                              .add("lastKnownRevision", lastKnownRevision)
+                              .add("query", query)
+                              .add("pathPattern", pathPattern)
+                              .toString();
+        }
+    }
+}
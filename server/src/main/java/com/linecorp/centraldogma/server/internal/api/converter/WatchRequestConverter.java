@@ -34,7 +34,7 @@ import com.linecorp.centraldogma.common.Revision;
 
 /**
  * A request converter that converts to {@link WatchRequest} when the request contains
- * {@link HttpHeaderNames#IF_NONE_MATCH}.
+ * {@link HttpHeaderNames#IF_NONE_MATCH} with a {@link Revision}.
  */
 public final class WatchRequestConverter implements RequestConverterFunction {
 
@@ -51,20 +51,34 @@ public final class WatchRequestConverter implements RequestConverterFunction {
             @Nullable ParameterizedType expectedParameterizedResultType) throws Exception {
 
         final String ifNoneMatch = request.headers().get(HttpHeaderNames.IF_NONE_MATCH);
-        if (isNullOrEmpty(ifNoneMatch)) {
+        if (isNullOrEmpty(ifNoneMatch) || isEntityTag(ifNoneMatch)) {
+            // Not a watch request, or a conditional request with the entity tags of the content.
             return null;
         }
 
         final Revision lastKnownRevision = new Revision(ifNoneMatch);
-        final String prefer = request.headers().get(HttpHeaderNames.PREFER);
-        final long timeoutMillis;
-        if (!isNullOrEmpty(prefer)) {
-            timeoutMillis = getTimeoutMillis(prefer);
-        } else {
-            timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        final long timeoutMillis = timeoutMillis(request.headers().get(HttpHeaderNames.PREFER));
+        return new WatchRequest(lastKnownRevision, timeoutMillis);
+    }
+
+    /**
+     * Returns the watch timeout specified in the {@link HttpHeaderNames#PREFER} header value,
+     * or the default timeout if the header is absent.
+     */
+    static long timeoutMillis(@Nullable String prefer) {
+        if (isNullOrEmpty(prefer)) {
+            return DEFAULT_TIMEOUT_MILLIS;
         }
+        return getTimeoutMillis(prefer);
+    }
 
-        return new WatchRequest(lastKnownRevision, timeoutMillis);
+    /**
+     * Returns {@code true} if the specified {@link HttpHeaderNames#IF_NONE_MATCH} header value contains
+     * entity tags, e.g. {@code "1-abcd"} or {@code W/"1-abcd"}, rather than a {@link Revision}.
+     */
+    private static boolean isEntityTag(String ifNoneMatch) {
+        final char firstChar = ifNoneMatch.charAt(0);
+        return firstChar == '"' || firstChar == 'W' || firstChar == '*';
     }
 
     private static long getTimeoutMillis(String preferHeader) {
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.replication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import com.linecorp.centraldogma.internal.Jackson;
+
+/**
+ * Encodes and decodes the {@link ReplicationLog}s stored in ZooKeeper.
+ *
+ * <p>A log is stored either as a plain JSON document, which always starts with {@code '{'}, or as
+ * a compressed JSON document prefixed with a header:
+ * <pre>{@code
+ * +-----------------+-------------------------------+-------------------------+
+ * | format (1 byte) | uncompressed length (4 bytes) | DEFLATE-compressed JSON |
+ * +-----------------+-------------------------------+-------------------------+
+ * }</pre>
+ * Both formats are always accepted by {@link #decode(byte[])}, so that the replicas can read the logs
+ * written by the replicas with different settings.
+ */
+final class ReplicationLogFormat {
+
+    private static final byte FORMAT_DEFLATE = 1;
+    private static final int HEADER_LEN = 1 + 4;
+
+    /**
+     * The logs smaller than this are not worth compressing.
+     */
+    private static final int MIN_COMPRESSION_LEN = 512;
+
+    static byte[] encode(ReplicationLog<?> log, boolean compress) throws JsonProcessingException {
+        final byte[] json = Jackson.writeValueAsBytes(log);
+        if (!compress || json.length < MIN_COMPRESSION_LEN) {
+            return json;
+        }
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(json);
+            deflater.finish();
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 2);
+            out.write(FORMAT_DEFLATE);
+            out.write(ByteBuffer.allocate(4).putInt(json.length).array(), 0, 4);
+            final byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+
+            if (out.size() >= json.length) {
+                // Not compressible.
+                return json;
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static ReplicationLog<?> decode(byte[] data) throws IOException {
+        if (data.length == 0 || data[0] != FORMAT_DEFLATE) {
+            return Jackson.readValue(data, ReplicationLog.class);
+        }
+
+        if (data.length < HEADER_LEN) {
+            throw new IOException("too short compressed log: " + data.length + " byte(s)");
+        }
+
+        final int length = ByteBuffer.wrap(data, 1, 4).getInt();
+        if (length <= 0) {
+            throw new IOException("invalid uncompressed log length: " + length);
+        }
+
+        final byte[] json = new byte[length];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_LEN, data.length - HEADER_LEN);
+            int offset = 0;
+            while (offset < length) {
+                final int inflated = inflater.inflate(json, offset, length - offset);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() ||
+                                      inflater.needsDictionary())) {
+                    break;
+                }
+                offset += inflated;
+            }
+
+            if (offset != length) {
+                throw new IOException("mismatching uncompressed log length: " + offset +
+                                      " (expected: " + length + ')');
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("failed to decompress a log", e);
+        } finally {
+            inflater.end();
+        }
+
+        return Jackson.readValue(json, ReplicationLog.class);
+    }
+
+    private ReplicationLogFormat() {}
+}
@@ -26,23 +26,41 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableSet;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
@@ -50,7 +68,12 @@ import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.annotation.Nullable;
 
@@ -58,6 +81,7 @@ import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
@@ -84,11 +108,14 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.escape.Escaper;
 import com.google.common.escape.Escapers;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import com.linecorp.armeria.common.util.Exceptions;
 import com.linecorp.armeria.common.util.SafeCloseable;
@@ -110,9 +137,12 @@ import com.linecorp.centraldogma.server.metadata.MetadataService;
 import com.linecorp.centraldogma.server.metadata.RepositoryMetadata;
 import com.linecorp.centraldogma.server.storage.project.Project;
 import com.linecorp.centraldogma.server.storage.project.ProjectManager;
+import com.linecorp.centraldogma.server.storage.repository.Repository;
 
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
@@ -123,9 +153,23 @@ public final class ZooKeeperCommandExecutor
     private static final Escaper jaasValueEscaper =
             Escapers.builder().addEscape('\"', "\\\"").addEscape('\\', "\\\\").build();
     private static final Joiner colonJoiner = Joiner.on(':');
+    private static final Joiner revisionJoiner = Joiner.on(',');
+    private static final Splitter revisionSplitter = Splitter.on(',').trimResults().omitEmptyStrings();
 
     private static final String PATH_PREFIX = "/dogma";
     private static final int MAX_BYTES = 1024 * 1023; // Max size in document is 1M. but safety.
+    /**
+     * The maximum size of a transaction which creates multiple nodes, including the estimated overhead of
+     * its operations. Kept at a half of {@code jute.maxbuffer} (1 MiB by default) for safety.
+     */
+    private static final int MAX_TRANSACTION_BYTES = 512 * 1024;
+    /**
+     * The estimated overhead of an operation in a transaction, such as its path, ACL and headers, which is
+     * far larger than its actual size so that it is never underestimated.
+     */
+    private static final int TRANSACTION_OP_OVERHEAD_BYTES = 1024;
+    private static final int MAX_TRANSACTION_OPS = 128;
+    private static final int REPLAY_WINDOW_SIZE = 16;
 
     // Log revision should be started at 0 and be increased by 1. Do not create any changes without creating
     // a log node, because otherwise the consistency of the log revision will be broken. Also, we should use
@@ -142,6 +186,17 @@ public final class ZooKeeperCommandExecutor
 
     private static final String LEADER_PATH = "leader";
 
+    private static final String ZOOKEEPER_DIR = "_zookeeper";
+    private static final String MIRRORS_DIR = "_mirrors";
+    private static final String SESSIONS_DIR = "_sessions";
+
+    /**
+     * A special value of {@link #latestLogRevision} which means that the revision of the latest log has to be
+     * retrieved by listing all logs.
+     */
+    @VisibleForTesting
+    static final long UNKNOWN_LOG_REVISION = Long.MIN_VALUE;
+
     private static final RetryPolicy RETRY_POLICY_ALWAYS = new RetryForever(500);
     private static final RetryPolicy RETRY_POLICY_NEVER = (retryCount, elapsedTimeMs, sleeper) -> false;
 
@@ -151,6 +206,24 @@ public final class ZooKeeperCommandExecutor
 
     private final ConcurrentMap<String, InterProcessMutex> mutexMap = new ConcurrentHashMap<>();
 
+    /**
+     * The revision of the latest log known to this replica. Updated whenever a new log is stored by this
+     * replica or observed by {@link #logWatcher}, and reset to {@link #UNKNOWN_LOG_REVISION} when the
+     * connection to ZooKeeper is re-established.
+     */
+    @VisibleForTesting
+    final AtomicLong latestLogRevision = new AtomicLong(UNKNOWN_LOG_REVISION);
+
+    /**
+     * The commands waiting to be executed together when group commit is enabled.
+     */
+    private final Queue<PendingCommand<?>> pendingCommands = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Held exclusively while a snapshot is written, and shared while a command is executed or replayed.
+     */
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
     @VisibleForTesting
     final ConcurrentMap<String, Entry<InterProcessSemaphoreV2, SettableSharedCount>> semaphoreMap =
             new ConcurrentHashMap<>();
@@ -159,16 +232,25 @@ public final class ZooKeeperCommandExecutor
     final Cache<String, QuotaConfig> writeQuotaCache = Caffeine.newBuilder().maximumSize(2000).build();
 
     private final ZooKeeperReplicationConfig cfg;
+    private final File dataDir;
     private final File revisionFile;
     private final File zkConfFile;
     private final File zkDataDir;
     private final File zkLogDir;
     private final CommandExecutor delegate;
     private final MeterRegistry meterRegistry;
+    private final ProjectManager projectManager;
+    @Nullable
+    private final Executor purgeWorker;
 
     @Nullable
     private final QuotaConfig writeQuota;
 
+    @Nullable
+    private final DistributionSummary groupCommitSize;
+    @Nullable
+    private final Timer groupCommitWaitTime;
+
     private MetadataService metadataService;
 
     private volatile EmbeddedZooKeeper quorumPeer;
@@ -280,13 +362,17 @@ public final class ZooKeeperCommandExecutor
 
     private static final class ListenerInfo {
         long lastReplayedRevision;
+        // The revisions greater than lastReplayedRevision which have been replayed already,
+        // because the logs are replayed concurrently.
+        final NavigableSet<Long> replayedRevisions;
         final Runnable onTakeLeadership;
         final Runnable onReleaseLeadership;
 
-        ListenerInfo(long lastReplayedRevision,
+        ListenerInfo(long lastReplayedRevision, NavigableSet<Long> replayedRevisions,
                      @Nullable Runnable onTakeLeadership, @Nullable Runnable onReleaseLeadership) {
 
             this.lastReplayedRevision = lastReplayedRevision;
+            this.replayedRevisions = replayedRevisions;
             this.onReleaseLeadership = onReleaseLeadership;
             this.onTakeLeadership = onTakeLeadership;
         }
@@ -297,24 +383,26 @@ public final class ZooKeeperCommandExecutor
     public ZooKeeperCommandExecutor(ZooKeeperReplicationConfig cfg,
                                     File dataDir, CommandExecutor delegate,
                                     MeterRegistry meterRegistry,
-                                    ProjectManager projectManager,
+                                    ProjectManager projectManager, @Nullable Executor purgeWorker,
                                     @Nullable QuotaConfig writeQuota,
                                     @Nullable Consumer<CommandExecutor> onTakeLeadership,
                                     @Nullable Consumer<CommandExecutor> onReleaseLeadership) {
         super(onTakeLeadership, onReleaseLeadership);
 
         this.cfg = requireNonNull(cfg, "cfg");
-        requireNonNull(dataDir, "dataDir");
+        this.dataDir = requireNonNull(dataDir, "dataDir");
         revisionFile = new File(dataDir.getAbsolutePath() + File.separatorChar + "last_revision");
         zkConfFile = new File(dataDir.getAbsolutePath() + File.separatorChar +
-                              "_zookeeper" + File.separatorChar + "config.properties");
+                              ZOOKEEPER_DIR + File.separatorChar + "config.properties");
         zkDataDir = new File(dataDir.getAbsolutePath() + File.separatorChar +
-                             "_zookeeper" + File.separatorChar + "data");
+                             ZOOKEEPER_DIR + File.separatorChar + "data");
         zkLogDir = new File(dataDir.getAbsolutePath() + File.separatorChar +
-                            "_zookeeper" + File.separatorChar + "log");
+                            ZOOKEEPER_DIR + File.separatorChar + "log");
 
         this.delegate = requireNonNull(delegate, "delegate");
         this.meterRegistry = requireNonNull(meterRegistry, "meterRegistry");
+        this.projectManager = requireNonNull(projectManager, "projectManager");
+        this.purgeWorker = purgeWorker;
         this.writeQuota = writeQuota;
         metadataService = new MetadataService(projectManager, this);
 
@@ -341,6 +429,16 @@ public final class ZooKeeperCommandExecutor
                           return info.lastReplayedRevision;
                       })
              .register(meterRegistry);
+
+        if (cfg.maxGroupCommitSize() > 1) {
+            groupCommitSize = DistributionSummary.builder("replica.group.commit.size")
+                                                 .register(meterRegistry);
+            groupCommitWaitTime = Timer.builder("replica.group.commit.wait.time")
+                                       .register(meterRegistry);
+        } else {
+            groupCommitSize = null;
+            groupCommitWaitTime = null;
+        }
     }
 
     @Override
@@ -355,8 +453,10 @@ public final class ZooKeeperCommandExecutor
             // Get the last replayed revision.
             final long lastReplayedRevision;
             try {
-                lastReplayedRevision = getLastReplayedRevision();
-                listenerInfo = new ListenerInfo(lastReplayedRevision, onTakeLeadership, onReleaseLeadership);
+                final NavigableSet<Long> replayedRevisions = new TreeSet<>();
+                lastReplayedRevision = getLastReplayedRevision(replayedRevisions);
+                listenerInfo = new ListenerInfo(lastReplayedRevision, replayedRevisions,
+                                                onTakeLeadership, onReleaseLeadership);
             } catch (Exception e) {
                 throw new ReplicationException("failed to read " + revisionFile, e);
             }
@@ -372,6 +472,9 @@ public final class ZooKeeperCommandExecutor
                         return retryPolicy.allowRetry(retryCount, elapsedTimeMs, sleeper);
                     });
 
+            latestLogRevision.set(UNKNOWN_LOG_REVISION);
+            curator.getConnectionStateListenable().addListener(
+                    (client, newState) -> onConnectionStateChanged(newState));
             curator.start();
 
             // Start the log replay.
@@ -672,7 +775,12 @@ public final class ZooKeeperCommandExecutor
         return interrupted;
     }
 
-    private long getLastReplayedRevision() throws Exception {
+    /**
+     * Reads the last replayed revision from the revision file. The revisions greater than the last replayed
+     * revision, which have been replayed ahead of the older revisions, are added to the specified
+     * {@code replayedRevisions}.
+     */
+    private long getLastReplayedRevision(Set<Long> replayedRevisions) throws Exception {
         final FileInputStream fis;
         try {
             fis = new FileInputStream(revisionFile);
@@ -685,14 +793,21 @@ public final class ZooKeeperCommandExecutor
             if (l == null) {
                 return -1;
             }
+            final String replayed = br.readLine();
+            if (replayed != null) {
+                for (String revision : revisionSplitter.split(replayed)) {
+                    replayedRevisions.add(Long.parseLong(revision));
+                }
+            }
             return Long.parseLong(l.trim());
         }
     }
 
-    private void updateLastReplayedRevision(long lastReplayedRevision) throws Exception {
+    private void updateLastReplayedRevision(ListenerInfo info) throws Exception {
+        final long lastReplayedRevision = info.lastReplayedRevision;
         boolean success = false;
         try (FileOutputStream fos = new FileOutputStream(revisionFile)) {
-            fos.write(String.valueOf(lastReplayedRevision).getBytes(StandardCharsets.UTF_8));
+            fos.write(revisionFileContent(info).getBytes(StandardCharsets.UTF_8));
             success = true;
         } finally {
             if (success) {
@@ -703,7 +818,38 @@ public final class ZooKeeperCommandExecutor
         }
     }
 
-    private synchronized void replayLogs(long targetRevision) {
+    /**
+     * Returns the content of the revision file, which is the last replayed revision followed by
+     * the line of the revisions greater than it which have been replayed already, if any.
+     */
+    private static String revisionFileContent(ListenerInfo info) {
+        if (info.replayedRevisions.isEmpty()) {
+            return String.valueOf(info.lastReplayedRevision);
+        }
+        return info.lastReplayedRevision + "\n" + revisionJoiner.join(info.replayedRevisions);
+    }
+
+    /**
+     * Replays the logs up to the specified revision. The logs are fetched ahead of the replay, up to
+     * {@value #REPLAY_WINDOW_SIZE} logs, and the commands whose execution paths do not overlap with each
+     * other are replayed concurrently. The commands whose execution paths overlap, e.g. {@code /foo} and
+     * {@code /foo/bar}, are always replayed in the order of their revisions.
+     *
+     * <p>Replaying a command is not idempotent, e.g. a push replayed twice yields a mismatching result.
+     * Therefore, the revisions replayed ahead of the older revisions are recorded as well, and the replays
+     * in progress are drained before stopping on a failure, so that no log is replayed twice after restart.
+     */
+    private void replayLogs(long targetRevision) {
+        // Acquire the snapshot lock before the lock of this executor. See createSnapshot().
+        snapshotLock.readLock().lock();
+        try {
+            replayLogs0(targetRevision);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    private synchronized void replayLogs0(long targetRevision) {
         final ListenerInfo info = listenerInfo;
         if (info == null) {
             return;
@@ -713,45 +859,154 @@ public final class ZooKeeperCommandExecutor
             return;
         }
 
+        final ArrayDeque<PendingReplay> pendingReplays = new ArrayDeque<>();
         try {
-            for (;;) {
-                final long nextRevision = info.lastReplayedRevision + 1;
-                final Optional<ReplicationLog<?>> log = loadLog(nextRevision, true);
-                if (log.isPresent()) {
-                    final ReplicationLog<?> l = log.get();
-                    final Command<?> command = l.command();
-                    final Object expectedResult = l.result();
-                    final Object actualResult = delegate.execute(command).get();
-
-                    if (!Objects.equals(expectedResult, actualResult)) {
-                        throw new ReplicationException(
-                                "mismatching replay result at revision " + info.lastReplayedRevision +
-                                ": " + actualResult + " (expected: " + expectedResult +
-                                ", command: " + command + ')');
-                    }
-                    if (command instanceof RemoveRepositoryCommand) {
-                        clearWriteQuota((RemoveRepositoryCommand) command);
-                    }
+            createParentNodes();
+
+            final ArrayDeque<CompletableFuture<Optional<byte[]>>> prefetchedLogs = new ArrayDeque<>();
+            long nextPrefetchRevision = info.lastReplayedRevision + 1;
+            for (long revision = info.lastReplayedRevision + 1; revision <= targetRevision; revision++) {
+                while (nextPrefetchRevision <= targetRevision &&
+                       nextPrefetchRevision - revision < REPLAY_WINDOW_SIZE) {
+                    prefetchedLogs.add(loadLogAsync(nextPrefetchRevision++, true));
+                }
+
+                final Optional<byte[]> data = prefetchedLogs.remove().join();
+                if (info.replayedRevisions.contains(revision)) {
+                    // Replayed already before the previous failure or restart.
+                    pendingReplays.add(new PendingReplay(revision, null,
+                                                         CompletableFuture.completedFuture(null)));
+                } else if (data.isPresent()) {
+                    final ReplicationLog<?> log = ReplicationLogFormat.decode(data.get());
+                    final Command<?> command = log.command();
+                    pendingReplays.add(new PendingReplay(revision, command.executionPath(),
+                                                         replay(revision, log, pendingReplays)));
                 } else {
                     // same replicaId. skip
+                    pendingReplays.add(new PendingReplay(revision, null,
+                                                         CompletableFuture.completedFuture(null)));
                 }
 
-                info.lastReplayedRevision = nextRevision;
-                updateLastReplayedRevision(nextRevision);
-                if (nextRevision == targetRevision) {
-                    break;
+                if (pendingReplays.size() >= REPLAY_WINDOW_SIZE) {
+                    // Too many replays in progress.
+                    pendingReplays.peek().future.join();
                 }
+                completeReplays(info, pendingReplays);
+            }
+
+            while (!pendingReplays.isEmpty()) {
+                pendingReplays.peek().future.join();
+                completeReplays(info, pendingReplays);
             }
         } catch (Throwable t) {
+            // Record the replays completed in the meantime so that they are not replayed again.
+            drainReplays(info, pendingReplays);
+
+            Throwable cause = Exceptions.peel(t);
+            if (cause instanceof KeeperException.NoNodeException) {
+                // The logs have been removed by the leader, so this replica cannot catch up by replaying.
+                cause = new ReplicationException(
+                        "the log at revision " + (info.lastReplayedRevision + 1) + " does not exist; " +
+                        "restore the data directory from a snapshot of another replica", cause);
+            }
             logger.error("Failed to replay a log at revision {}; entering read-only mode",
-                         info.lastReplayedRevision, t);
+                         info.lastReplayedRevision, cause);
             stopLater();
 
-            if (t instanceof ReplicationException) {
-                throw (ReplicationException) t;
+            if (cause instanceof ReplicationException) {
+                throw (ReplicationException) cause;
             }
             throw new ReplicationException("failed to replay a log at revision " +
-                                           info.lastReplayedRevision, t);
+                                           info.lastReplayedRevision, cause);
+        }
+    }
+
+    private CompletableFuture<Void> replay(long revision, ReplicationLog<?> log,
+                                           Iterable<PendingReplay> pendingReplays) {
+        final Command<?> command = log.command();
+        final Object expectedResult = log.result();
+        final String executionPath = command.executionPath();
+
+        final List<CompletableFuture<?>> dependencies = new ArrayList<>();
+        for (PendingReplay pendingReplay : pendingReplays) {
+            if (pendingReplay.overlapsWith(executionPath)) {
+                dependencies.add(pendingReplay.future);
+            }
+        }
+
+        final CompletableFuture<Void> dependenciesFuture =
+                CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]));
+
+        return dependenciesFuture.thenCompose(unused -> delegate.execute(command)).thenAccept(actualResult -> {
+            if (!Objects.equals(expectedResult, actualResult)) {
+                throw new ReplicationException(
+                        "mismatching replay result at revision " + revision +
+                        ": " + actualResult + " (expected: " + expectedResult +
+                        ", command: " + command + ')');
+            }
+            if (command instanceof RemoveRepositoryCommand) {
+                clearWriteQuota((RemoveRepositoryCommand) command);
+            }
+        });
+    }
+
+    /**
+     * Records the completed replays and raises the exception if the oldest replay in progress failed.
+     */
+    private void completeReplays(ListenerInfo info, ArrayDeque<PendingReplay> pendingReplays) throws Exception {
+        recordReplays(info, pendingReplays);
+
+        final PendingReplay pendingReplay = pendingReplays.peek();
+        if (pendingReplay != null && pendingReplay.future.isCompletedExceptionally()) {
+            pendingReplay.future.join();
+        }
+    }
+
+    /**
+     * Waits for all replays in progress regardless of their results and records the completed ones.
+     */
+    private void drainReplays(ListenerInfo info, ArrayDeque<PendingReplay> pendingReplays) {
+        for (PendingReplay pendingReplay : pendingReplays) {
+            try {
+                pendingReplay.future.join();
+            } catch (Throwable ignored) {
+                // Not recorded below.
+            }
+        }
+
+        try {
+            recordReplays(info, pendingReplays);
+        } catch (Throwable t) {
+            logger.warn("Failed to record the completed replays", t);
+        }
+    }
+
+    /**
+     * Removes the replays completed in the order of their revisions and updates the last replayed revision.
+     * The replays completed ahead of the older revisions are recorded as well.
+     */
+    private void recordReplays(ListenerInfo info, ArrayDeque<PendingReplay> pendingReplays) throws Exception {
+        boolean updated = false;
+        for (;;) {
+            final PendingReplay pendingReplay = pendingReplays.peek();
+            if (pendingReplay == null || !pendingReplay.isReplayed()) {
+                break;
+            }
+
+            pendingReplays.remove();
+            info.lastReplayedRevision = pendingReplay.revision;
+            updated = true;
+        }
+        info.replayedRevisions.headSet(info.lastReplayedRevision, true).clear();
+
+        for (PendingReplay pendingReplay : pendingReplays) {
+            if (pendingReplay.isReplayed() && info.replayedRevisions.add(pendingReplay.revision)) {
+                updated = true;
+            }
+        }
+
+        if (updated) {
+            updateLastReplayedRevision(info);
         }
     }
 
@@ -762,8 +1017,19 @@ public final class ZooKeeperCommandExecutor
         }
 
         final long lastKnownRevision = revisionFromPath(event.getData().getPath());
+        updateLatestLogRevision(lastKnownRevision);
+
+        // Replay the logs appended after this log as well, so that they are replayed concurrently
+        // rather than one by one as their events arrive.
+        long targetRevision = lastKnownRevision;
         try {
-            replayLogs(lastKnownRevision);
+            targetRevision = Math.max(targetRevision, findLatestLogRevision());
+        } catch (Exception e) {
+            logger.warn("Failed to find the latest log revision; replaying up to {}", lastKnownRevision, e);
+        }
+
+        try {
+            replayLogs(targetRevision);
         } catch (ReplicationException ignored) {
             // replayLogs() logs and handles the exception already, so we just bail out here.
             return;
@@ -773,18 +1039,31 @@ public final class ZooKeeperCommandExecutor
     }
 
     private SafeCloseable safeLock(Command<?> command) {
+        // Align with the default request timeout
+        final SafeCloseable lock = safeLock(command, 10, TimeUnit.SECONDS);
+        if (lock == null) {
+            throw new ReplicationException(
+                    "Failed to acquire a lock for " + command.executionPath() + " in 10 seconds");
+        }
+        return lock;
+    }
+
+    /**
+     * Acquires the lock for the execution path of the specified {@link Command}.
+     *
+     * @return the {@link SafeCloseable} which releases the lock,
+     *         or {@code null} if failed to acquire the lock within the specified timeout.
+     */
+    @Nullable
+    private SafeCloseable safeLock(Command<?> command, long timeout, TimeUnit unit) {
         final String executionPath = command.executionPath();
         final InterProcessMutex mtx = mutexMap.computeIfAbsent(
                 executionPath, k -> new InterProcessMutex(curator, absolutePath(LOCK_PATH, k)));
 
         WriteLock writeLock = null;
-        boolean lockTimeout = false;
         try {
-            // Align with the default request timeout
-            if (!mtx.acquire(10, TimeUnit.SECONDS)) {
-                lockTimeout = true;
-                throw new ReplicationException(
-                        "Failed to acquire a lock for " + executionPath + " in 10 seconds");
+            if (!mtx.acquire(timeout, unit)) {
+                return null;
             }
             if (command instanceof NormalizingPushCommand) {
                 writeLock = acquireWriteLock((NormalizingPushCommand) command);
@@ -792,10 +1071,6 @@ public final class ZooKeeperCommandExecutor
                 clearWriteQuota((RemoveRepositoryCommand) command);
             }
         } catch (Exception e) {
-            if (lockTimeout) {
-                return Exceptions.throwUnsafely(e);
-            }
-
             logger.error("Failed to acquire a lock for {}; entering read-only mode", executionPath, e);
             stopLater();
             throw new ReplicationException("failed to acquire a lock for " + executionPath, e);
@@ -979,7 +1254,7 @@ public final class ZooKeeperCommandExecutor
 
     private long storeLog(ReplicationLog<?> log) {
         try {
-            final byte[] bytes = Jackson.writeValueAsBytes(log);
+            final byte[] bytes = ReplicationLogFormat.encode(log, cfg.compressLogs());
             assert bytes.length > 0;
 
             final LogMeta logMeta = new LogMeta(log.replicaId(), System.currentTimeMillis(), bytes.length);
@@ -1000,7 +1275,9 @@ public final class ZooKeeperCommandExecutor
                     curator.create().withMode(CreateMode.PERSISTENT_SEQUENTIAL)
                            .forPath(absolutePath(LOG_PATH) + '/', Jackson.writeValueAsBytes(logMeta));
 
-            return revisionFromPath(logPath);
+            final long revision = revisionFromPath(logPath);
+            updateLatestLogRevision(revision);
+            return revision;
         } catch (Exception e) {
             logger.error("Failed to store a log; entering read-only mode: {}", log, e);
             stopLater();
@@ -1008,36 +1285,168 @@ public final class ZooKeeperCommandExecutor
         }
     }
 
+    /**
+     * Stores the specified logs in the specified order, using as few ZooKeeper transactions as possible.
+     * The log blocks are created first because the {@link LogMeta}s have to refer to their IDs.
+     *
+     * @return the revisions of the stored logs
+     */
+    private long[] storeLogs(List<ReplicationLog<?>> logs) {
+        try {
+            final List<byte[]> logBytes = new ArrayList<>(logs.size());
+            final List<byte[]> blocks = new ArrayList<>();
+            for (ReplicationLog<?> log : logs) {
+                final byte[] bytes = ReplicationLogFormat.encode(log, cfg.compressLogs());
+                assert bytes.length > 0;
+                logBytes.add(bytes);
+                for (int start = 0; start < bytes.length; start += MAX_BYTES) {
+                    blocks.add(Arrays.copyOfRange(bytes, start, Math.min(start + MAX_BYTES, bytes.length)));
+                }
+            }
+
+            final List<String> blockPaths = createSequentialNodes(absolutePath(LOG_BLOCK_PATH) + '/', blocks);
+
+            final long timestamp = System.currentTimeMillis();
+            final List<byte[]> logMetas = new ArrayList<>(logs.size());
+            int blockIndex = 0;
+            for (int i = 0; i < logs.size(); i++) {
+                final int size = logBytes.get(i).length;
+                final LogMeta logMeta = new LogMeta(logs.get(i).replicaId(), timestamp, size);
+                final int count = (size + MAX_BYTES - 1) / MAX_BYTES;
+                for (int j = 0; j < count; j++) {
+                    logMeta.appendBlock(revisionFromPath(blockPaths.get(blockIndex++)));
+                }
+                logMetas.add(Jackson.writeValueAsBytes(logMeta));
+            }
+
+            final List<String> logPaths = createSequentialNodes(absolutePath(LOG_PATH) + '/', logMetas);
+            final long[] revisions = logPaths.stream().mapToLong(ZooKeeperCommandExecutor::revisionFromPath)
+                                             .toArray();
+            updateLatestLogRevision(revisions[revisions.length - 1]);
+            return revisions;
+        } catch (Exception e) {
+            logger.error("Failed to store logs; entering read-only mode: {}", logs, e);
+            stopLater();
+            throw new ReplicationException("failed to store logs: " + logs, e);
+        }
+    }
+
+    /**
+     * Creates the sequential nodes with the specified data in order, putting up to
+     * {@link #MAX_TRANSACTION_OPS} nodes into a single transaction as long as its estimated size does not
+     * exceed {@link #MAX_TRANSACTION_BYTES}. A node which is too large to share a transaction is created
+     * alone without a transaction.
+     *
+     * @return the paths of the created nodes
+     */
+    private List<String> createSequentialNodes(String pathPrefix, List<byte[]> data) throws Exception {
+        final List<String> paths = new ArrayList<>(data.size());
+        final List<CuratorOp> ops = new ArrayList<>();
+        int opsBytes = 0;
+        for (byte[] d : data) {
+            final int opBytes = d.length + TRANSACTION_OP_OVERHEAD_BYTES;
+            if (!ops.isEmpty() &&
+                (ops.size() == MAX_TRANSACTION_OPS || opsBytes + opBytes > MAX_TRANSACTION_BYTES)) {
+                commitCreateOps(ops, paths);
+                opsBytes = 0;
+            }
+            if (opBytes > MAX_TRANSACTION_BYTES) {
+                paths.add(curator.create().withMode(CreateMode.PERSISTENT_SEQUENTIAL).forPath(pathPrefix, d));
+                continue;
+            }
+            ops.add(curator.transactionOp().create().withMode(CreateMode.PERSISTENT_SEQUENTIAL)
+                           .forPath(pathPrefix, d));
+            opsBytes += opBytes;
+        }
+        if (!ops.isEmpty()) {
+            commitCreateOps(ops, paths);
+        }
+        return paths;
+    }
+
+    private void commitCreateOps(List<CuratorOp> ops, List<String> paths) throws Exception {
+        for (CuratorTransactionResult result : curator.transaction().forOperations(ops)) {
+            paths.add(result.getResultPath());
+        }
+        ops.clear();
+    }
+
     @VisibleForTesting
     Optional<ReplicationLog<?>> loadLog(long revision, boolean skipIfSameReplica) {
         try {
             createParentNodes();
 
-            final String logPath = absolutePath(LOG_PATH) + '/' + pathFromRevision(revision);
+            final Optional<byte[]> data = loadLogAsync(revision, skipIfSameReplica).join();
+            if (!data.isPresent()) {
+                return Optional.empty();
+            }
+
+            final ReplicationLog<?> log = ReplicationLogFormat.decode(data.get());
+            return Optional.of(log);
+        } catch (Throwable t) {
+            final Throwable cause = Exceptions.peel(t);
+            logger.error("Failed to load a log at revision {}; entering read-only mode", revision, cause);
+            stopLater();
+            throw new ReplicationException("failed to load a log at revision " + revision, cause);
+        }
+    }
 
-            final LogMeta logMeta = Jackson.readValue(curator.getData().forPath(logPath), LogMeta.class);
+    /**
+     * Fetches the encoded log at the specified revision. All blocks of the log are fetched concurrently.
+     *
+     * @return the encoded log, or an empty {@link Optional} if {@code skipIfSameReplica} is {@code true} and
+     *         the log was written by this replica
+     */
+    private CompletableFuture<Optional<byte[]>> loadLogAsync(long revision, boolean skipIfSameReplica)
+            throws Exception {
+        final String logPath = absolutePath(LOG_PATH) + '/' + pathFromRevision(revision);
+        return getDataAsync(logPath).thenCompose(
+                logMetaBytes -> loadLogBlocks(logMetaBytes, skipIfSameReplica));
+    }
 
+    private CompletableFuture<Optional<byte[]>> loadLogBlocks(byte[] logMetaBytes, boolean skipIfSameReplica) {
+        final LogMeta logMeta;
+        final List<CompletableFuture<byte[]>> blockFutures;
+        try {
+            logMeta = Jackson.readValue(logMetaBytes, LogMeta.class);
             if (skipIfSameReplica && replicaId() == logMeta.replicaId()) {
-                return Optional.empty();
+                return CompletableFuture.completedFuture(Optional.empty());
             }
 
-            final byte[] bytes = new byte[logMeta.size()];
-            int offset = 0;
+            blockFutures = new ArrayList<>(logMeta.blocks().size());
             for (long blockId : logMeta.blocks()) {
                 final String blockPath = absolutePath(LOG_BLOCK_PATH) + '/' + pathFromRevision(blockId);
-                final byte[] b = curator.getData().forPath(blockPath);
+                blockFutures.add(getDataAsync(blockPath));
+            }
+        } catch (Exception e) {
+            return Exceptions.throwUnsafely(e);
+        }
+
+        return CompletableFuture.allOf(blockFutures.toArray(new CompletableFuture[0])).thenApply(unused -> {
+            final byte[] bytes = new byte[logMeta.size()];
+            int offset = 0;
+            for (CompletableFuture<byte[]> blockFuture : blockFutures) {
+                final byte[] b = blockFuture.join();
                 System.arraycopy(b, 0, bytes, offset, b.length);
                 offset += b.length;
             }
             assert logMeta.size() == offset;
+            return Optional.of(bytes);
+        });
+    }
 
-            final ReplicationLog<?> log = Jackson.readValue(bytes, ReplicationLog.class);
-            return Optional.of(log);
-        } catch (Exception e) {
-            logger.error("Failed to load a log at revision {}; entering read-only mode", revision, e);
-            stopLater();
-            throw new ReplicationException("failed to load a log at revision " + revision, e);
-        }
+    private CompletableFuture<byte[]> getDataAsync(String path) throws Exception {
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        curator.getData().inBackground((client, event) -> {
+            final int resultCode = event.getResultCode();
+            if (resultCode == KeeperException.Code.OK.intValue()) {
+                future.complete(event.getData());
+            } else {
+                future.completeExceptionally(
+                        KeeperException.create(KeeperException.Code.get(resultCode), event.getPath()));
+            }
+        }).forPath(path);
+        return future;
     }
 
     private static long revisionFromPath(String path) {
@@ -1053,6 +1462,18 @@ public final class ZooKeeperCommandExecutor
     @Override
     protected <T> CompletableFuture<T> doExecute(Command<T> command) throws Exception {
         final CompletableFuture<T> future = new CompletableFuture<>();
+        if (cfg.maxGroupCommitSize() > 1) {
+            final PendingCommand<T> pendingCommand = new PendingCommand<>(command, future);
+            pendingCommands.add(pendingCommand);
+            try {
+                executor.execute(this::executePendingCommands);
+            } catch (Throwable t) {
+                pendingCommands.remove(pendingCommand);
+                throw t;
+            }
+            return future;
+        }
+
         executor.execute(() -> {
             try {
                 future.complete(blockingExecute(command));
@@ -1066,6 +1487,7 @@ public final class ZooKeeperCommandExecutor
     private <T> T blockingExecute(Command<T> command) throws Exception {
         createParentNodes();
 
+        snapshotLock.readLock().lock();
         try (SafeCloseable ignored = safeLock(command)) {
 
             // NB: We are sure no other replicas will append the conflicting logs (the commands with the
@@ -1074,32 +1496,359 @@ public final class ZooKeeperCommandExecutor
             //     Other replicas may still append the logs with different execution paths, because, by design,
             //     two commands never conflict with each other if they have different execution paths.
 
-            final List<String> recentRevisions = curator.getChildren().forPath(absolutePath(LOG_PATH));
-            if (!recentRevisions.isEmpty()) {
-                final long lastRevision = recentRevisions.stream().mapToLong(Long::parseLong).max().getAsLong();
+            final long lastRevision = findLatestLogRevision();
+            if (lastRevision >= 0) {
                 replayLogs(lastRevision);
             }
 
             final T result = delegate.execute(command).get();
-            final ReplicationLog<?> log;
-            if (command.type() == CommandType.NORMALIZING_PUSH) {
-                final NormalizingPushCommand normalizingPushCommand = (NormalizingPushCommand) command;
-                assert result instanceof CommitResult : result;
-                final CommitResult commitResult = (CommitResult) result;
-                final Command<Revision> pushAsIsCommand = normalizingPushCommand.asIs(commitResult);
-                log = new ReplicationLog<>(replicaId(), pushAsIsCommand, commitResult.revision());
-            } else {
-                log = new ReplicationLog<>(replicaId(), command, result);
-            }
+            final ReplicationLog<?> log = newReplicationLog(command, result);
 
             // Store the command execution log to ZooKeeper.
             final long revision = storeLog(log);
 
             logger.debug("logging OK. revision = {}, log = {}", revision, log);
             return result;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    private <T> ReplicationLog<?> newReplicationLog(Command<T> command, T result) {
+        if (command.type() == CommandType.NORMALIZING_PUSH) {
+            final NormalizingPushCommand normalizingPushCommand = (NormalizingPushCommand) command;
+            assert result instanceof CommitResult : result;
+            final CommitResult commitResult = (CommitResult) result;
+            final Command<Revision> pushAsIsCommand = normalizingPushCommand.asIs(commitResult);
+            return new ReplicationLog<>(replicaId(), pushAsIsCommand, commitResult.revision());
+        }
+        return new ReplicationLog<>(replicaId(), command, result);
+    }
+
+    /**
+     * Executes the pending commands submitted so far together, up to
+     * {@link ZooKeeperReplicationConfig#maxGroupCommitSize()}. The locks for all commands are held
+     * while the commands are executed and their logs are stored in as few ZooKeeper transactions as possible.
+     */
+    private void executePendingCommands() {
+        final List<PendingCommand<?>> batch = new ArrayList<>();
+        while (batch.size() < cfg.maxGroupCommitSize()) {
+            final PendingCommand<?> pendingCommand = pendingCommands.poll();
+            if (pendingCommand == null) {
+                break;
+            }
+            batch.add(pendingCommand);
+        }
+        if (batch.isEmpty()) {
+            // Executed by the other tasks already.
+            return;
+        }
+
+        assert groupCommitSize != null;
+        assert groupCommitWaitTime != null;
+        groupCommitSize.record(batch.size());
+        final long startTimeNanos = System.nanoTime();
+        for (PendingCommand<?> pendingCommand : batch) {
+            groupCommitWaitTime.record(startTimeNanos - pendingCommand.submittedTimeNanos,
+                                       TimeUnit.NANOSECONDS);
+        }
+
+        try {
+            createParentNodes();
+        } catch (Throwable t) {
+            batch.forEach(pendingCommand -> pendingCommand.future.completeExceptionally(t));
+            return;
+        }
+
+        // Acquire the locks in the order of the execution paths, so that two batches never wait for each
+        // other's locks. The sort is stable, so the commands with the same execution path are still executed
+        // in the submitted order.
+        batch.sort(Comparator.comparing(PendingCommand::executionPath));
+
+        // Do not wait for a lock while holding the others, so that a contended execution path does not stall
+        // the other execution paths in the batch. The commands whose lock is held by others are executed
+        // separately after the batch, together with the later commands with the same execution path.
+        final List<SafeCloseable> locks = new ArrayList<>(batch.size());
+        final List<PendingCommand<?>> lockedCommands = new ArrayList<>(batch.size());
+        final Map<String, List<PendingCommand<?>>> contendedCommands = new LinkedHashMap<>();
+        snapshotLock.readLock().lock();
+        try {
+            for (PendingCommand<?> pendingCommand : batch) {
+                final List<PendingCommand<?>> contended =
+                        contendedCommands.get(pendingCommand.executionPath());
+                if (contended != null) {
+                    contended.add(pendingCommand);
+                    continue;
+                }
+
+                try {
+                    final SafeCloseable lock = safeLock(pendingCommand.command, 0, TimeUnit.MILLISECONDS);
+                    if (lock != null) {
+                        locks.add(lock);
+                        lockedCommands.add(pendingCommand);
+                    } else {
+                        final List<PendingCommand<?>> commands = new ArrayList<>();
+                        commands.add(pendingCommand);
+                        contendedCommands.put(pendingCommand.executionPath(), commands);
+                    }
+                } catch (Throwable t) {
+                    pendingCommand.future.completeExceptionally(t);
+                }
+            }
+
+            if (!lockedCommands.isEmpty()) {
+                blockingExecute(lockedCommands);
+            }
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).close();
+            }
+            snapshotLock.readLock().unlock();
+        }
+
+        contendedCommands.values().forEach(this::executeContendedCommands);
+    }
+
+    /**
+     * Executes the specified {@link PendingCommand}s with the same execution path one by one in a separate
+     * task, waiting for the lock as a non-grouped command does.
+     */
+    private void executeContendedCommands(List<PendingCommand<?>> commands) {
+        try {
+            executor.execute(() -> commands.forEach(PendingCommand::executeAlone));
+        } catch (Throwable t) {
+            commands.forEach(pendingCommand -> pendingCommand.future.completeExceptionally(t));
+        }
+    }
+
+    private void blockingExecute(List<PendingCommand<?>> commands) {
+        final List<PendingCommand<?>> executedCommands = new ArrayList<>(commands.size());
+        final List<ReplicationLog<?>> logs = new ArrayList<>(commands.size());
+        try {
+            final long lastRevision = findLatestLogRevision();
+            if (lastRevision >= 0) {
+                replayLogs(lastRevision);
+            }
+
+            for (PendingCommand<?> pendingCommand : commands) {
+                try {
+                    logs.add(pendingCommand.execute());
+                    executedCommands.add(pendingCommand);
+                } catch (Throwable t) {
+                    pendingCommand.future.completeExceptionally(t);
+                }
+            }
+
+            if (logs.isEmpty()) {
+                return;
+            }
+
+            // Store the command execution logs to ZooKeeper.
+            final long[] revisions = storeLogs(logs);
+            logger.debug("logging OK. revisions = {}, logs = {}", revisions, logs);
+        } catch (Throwable t) {
+            commands.forEach(pendingCommand -> pendingCommand.future.completeExceptionally(t));
+            return;
+        }
+
+        executedCommands.forEach(PendingCommand::complete);
+    }
+
+    /**
+     * Finds the revision of the latest log in ZooKeeper, or {@code -1} if there are no logs at all.
+     * Because log revisions always increase by 1, it is enough to look for the logs newer than the latest
+     * known log, rather than listing all retained logs. All logs are listed only when the latest log is
+     * unknown, i.e. on the first command or after reconnection.
+     */
+    @VisibleForTesting
+    long findLatestLogRevision() throws Exception {
+        long revision = latestLogRevision.get();
+        if (revision == UNKNOWN_LOG_REVISION) {
+            final List<String> recentRevisions = curator.getChildren().forPath(absolutePath(LOG_PATH));
+            revision = recentRevisions.stream().mapToLong(Long::parseLong).max().orElse(-1);
+        }
+
+        // Look for the logs appended since then.
+        final String logPathPrefix = absolutePath(LOG_PATH) + '/';
+        while (curator.checkExists().forPath(logPathPrefix + pathFromRevision(revision + 1)) != null) {
+            revision++;
+        }
+
+        updateLatestLogRevision(revision);
+        return revision;
+    }
+
+    @VisibleForTesting
+    void onConnectionStateChanged(ConnectionState newState) {
+        if (newState == ConnectionState.RECONNECTED || newState == ConnectionState.LOST) {
+            // We might have missed some logs while disconnected.
+            latestLogRevision.set(UNKNOWN_LOG_REVISION);
+        }
+    }
+
+    private void updateLatestLogRevision(long revision) {
+        latestLogRevision.accumulateAndGet(revision, Math::max);
+    }
+
+    /**
+     * Writes a consistent snapshot of the data directory into the specified ZIP file. A new replica, or
+     * a replica which is too far behind to catch up by replaying the logs, can start with the data directory
+     * extracted from the snapshot, and then it replays only the logs written after the snapshot.
+     * No command is executed or replayed, no repository is garbage-collected and no removed project or
+     * repository is purged by this replica while the snapshot is being written.
+     *
+     * @return the revision of the last log reflected in the snapshot
+     */
+    public long createSnapshot(File zipFile) throws Exception {
+        return createSnapshot(zipFile, () -> false);
+    }
+
+    /**
+     * Writes a consistent snapshot of the data directory into the specified ZIP file, as
+     * {@link #createSnapshot(File)} does, unless the specified {@code isCancelled} returns {@code true}.
+     *
+     * @return the revision of the last log reflected in the snapshot
+     * @throws CancellationException if the snapshot has been cancelled before it is written completely
+     */
+    public long createSnapshot(File zipFile, BooleanSupplier isCancelled) throws Exception {
+        requireNonNull(zipFile, "zipFile");
+        requireNonNull(isCancelled, "isCancelled");
+
+        // Pause purging before acquiring the snapshot lock, because a purge task waits for the commands
+        // which need the snapshot lock.
+        try (SafeCloseable ignored = pausePurging()) {
+            snapshotLock.writeLock().lock();
+            final List<SafeCloseable> gcLocks = new ArrayList<>();
+            try {
+                final ListenerInfo info = listenerInfo;
+                if (info == null) {
+                    throw new IllegalStateException("replication is not running");
+                }
+                checkCancelled(isCancelled);
+
+                // Replay all logs including the ones written by this replica, so that the snapshot reflects
+                // exactly the logs up to the last replayed revision.
+                createParentNodes();
+                final long lastRevision = findLatestLogRevision();
+                if (lastRevision >= 0) {
+                    replayLogs(lastRevision);
+                }
+                final long snapshotRevision = info.lastReplayedRevision;
+
+                // No repository is created or removed while the snapshot lock is held.
+                for (Project project : projectManager.list().values()) {
+                    for (Repository repo : project.repos().list().values()) {
+                        gcLocks.add(repo.lockGc());
+                    }
+                }
+                checkCancelled(isCancelled);
+
+                logger.info("Writing a snapshot at revision {} into: {}", snapshotRevision, zipFile);
+                try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                    writeSnapshot(out, zipFile.toPath().toAbsolutePath(), isCancelled);
+                    out.putNextEntry(new ZipEntry(revisionFile.getName()));
+                    out.write(revisionFileContent(info).getBytes(StandardCharsets.UTF_8));
+                    out.closeEntry();
+                }
+                logger.info("Wrote a snapshot at revision {} into: {}", snapshotRevision, zipFile);
+                return snapshotRevision;
+            } finally {
+                gcLocks.forEach(SafeCloseable::close);
+                snapshotLock.writeLock().unlock();
+            }
         }
     }
 
+    /**
+     * Occupies the purge worker until the returned {@link SafeCloseable} is closed, after waiting for
+     * the purge task in progress, if any, to finish.
+     */
+    private SafeCloseable pausePurging() throws InterruptedException {
+        final Executor purgeWorker = this.purgeWorker;
+        if (purgeWorker == null) {
+            return () -> {};
+        }
+
+        final CountDownLatch paused = new CountDownLatch(1);
+        final CountDownLatch resumed = new CountDownLatch(1);
+        purgeWorker.execute(() -> {
+            paused.countDown();
+            Uninterruptibles.awaitUninterruptibly(resumed);
+        });
+        try {
+            paused.await();
+        } catch (InterruptedException e) {
+            resumed.countDown();
+            throw e;
+        }
+        return resumed::countDown;
+    }
+
+    private static void checkCancelled(BooleanSupplier isCancelled) {
+        if (isCancelled.getAsBoolean()) {
+            throw new CancellationException("snapshot cancelled");
+        }
+    }
+
+    private void writeSnapshot(ZipOutputStream out, Path zipPath,
+                               BooleanSupplier isCancelled) throws IOException {
+        final Path dataPath = dataDir.toPath().toAbsolutePath();
+        final Path zooKeeperPath = dataPath.resolve(ZOOKEEPER_DIR);
+        final Path mirrorsPath = dataPath.resolve(MIRRORS_DIR);
+        final Path sessionsPath = dataPath.resolve(SESSIONS_DIR);
+        final Path revisionPath = revisionFile.toPath().toAbsolutePath();
+
+        Files.walkFileTree(dataPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(zooKeeperPath) || dir.equals(mirrorsPath)) {
+                    // ZooKeeper data is not a part of the snapshot because it is replicated by ZooKeeper.
+                    // The working copies of the mirrors are not replicated at all.
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                checkCancelled(isCancelled);
+                if (!dir.equals(dataPath)) {
+                    out.putNextEntry(new ZipEntry(entryName(dir) + '/'));
+                    out.closeEntry();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (file.equals(zipPath) || file.equals(revisionPath)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                checkCancelled(isCancelled);
+
+                // Fail rather than leaving out a file, because nothing but an expired session is supposed
+                // to be removed while the snapshot is being written.
+                try (InputStream in = Files.newInputStream(file)) {
+                    out.putNextEntry(new ZipEntry(entryName(file)));
+                    ByteStreams.copy(in, out);
+                    out.closeEntry();
+                } catch (NoSuchFileException e) {
+                    if (!file.startsWith(sessionsPath)) {
+                        throw e;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException && file.startsWith(sessionsPath)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+
+            private String entryName(Path path) {
+                return dataPath.relativize(path).toString().replace(File.separatorChar, '/');
+            }
+        });
+    }
+
     private void createParentNodes() throws Exception {
         if (createdParentNodes) {
             return;
@@ -1127,6 +1876,78 @@ public final class ZooKeeperCommandExecutor
         this.metadataService = metadataService;
     }
 
+    private static final class PendingReplay {
+        private final long revision;
+        @Nullable
+        private final String executionPath;
+        private final CompletableFuture<Void> future;
+
+        PendingReplay(long revision, @Nullable String executionPath, CompletableFuture<Void> future) {
+            this.revision = revision;
+            this.executionPath = executionPath;
+            this.future = future;
+        }
+
+        boolean isReplayed() {
+            return future.isDone() && !future.isCompletedExceptionally();
+        }
+
+        /**
+         * Returns whether the specified execution path is the same with, an ancestor of or a descendant of
+         * the execution path of this replay, i.e. the two commands must be replayed in order.
+         */
+        boolean overlapsWith(String executionPath) {
+            final String thisPath = this.executionPath;
+            if (thisPath == null) {
+                return false;
+            }
+            return isSameOrAncestor(thisPath, executionPath) || isSameOrAncestor(executionPath, thisPath);
+        }
+
+        private static boolean isSameOrAncestor(String path, String otherPath) {
+            if ("/".equals(path) || path.equals(otherPath)) {
+                return true;
+            }
+            return otherPath.length() > path.length() &&
+                   otherPath.startsWith(path) && otherPath.charAt(path.length()) == '/';
+        }
+    }
+
+    private final class PendingCommand<T> {
+        private final Command<T> command;
+        private final CompletableFuture<T> future;
+        private final long submittedTimeNanos = System.nanoTime();
+        @Nullable
+        private T result;
+
+        PendingCommand(Command<T> command, CompletableFuture<T> future) {
+            this.command = command;
+            this.future = future;
+        }
+
+        String executionPath() {
+            return command.executionPath();
+        }
+
+        ReplicationLog<?> execute() throws Exception {
+            final T result = delegate.execute(command).get();
+            this.result = result;
+            return newReplicationLog(command, result);
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+
+        void executeAlone() {
+            try {
+                future.complete(blockingExecute(command));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
     private static final class WriteLock {
         private final InterProcessSemaphoreV2 semaphore;
         private final Lease lease;
@@ -26,13 +26,18 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -66,6 +71,12 @@ public abstract class DirectoryBasedStorageManager<T> implements StorageManager<
     private static final String SUFFIX_REMOVED = ".removed";
     private static final String SUFFIX_PURGED = ".purged";
 
+    /**
+     * The maximum number of children being loaded concurrently by {@link #init()}. Loading a child is mostly
+     * blocked on disk I/O, so we use more threads than the number of the processors.
+     */
+    private static final int INIT_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
     private final String childTypeName;
     private final File rootDir;
     private final StorageRemovalManager storageRemovalManager = new StorageRemovalManager();
@@ -104,7 +115,7 @@ public abstract class DirectoryBasedStorageManager<T> implements StorageManager<
     }
 
     /**
-     * Initializes this {@link StorageManager} by loading all children.
+     * Initializes this {@link StorageManager} by loading all children in parallel.
      */
     protected final void init() {
         checkState(!initialized, "initialized already");
@@ -112,9 +123,7 @@ public abstract class DirectoryBasedStorageManager<T> implements StorageManager<
         try {
             final File[] childFiles = rootDir.listFiles();
             if (childFiles != null) {
-                for (File f : childFiles) {
-                    loadChild(f);
-                }
+                loadChildren(childFiles);
             }
             initialized = true;
         } catch (Throwable t) {
@@ -133,6 +142,79 @@ public abstract class DirectoryBasedStorageManager<T> implements StorageManager<
         }
     }
 
+    /**
+     * Loads the specified children using a {@link ForkJoinPool}. If this method is called while loading
+     * a child of another {@link DirectoryBasedStorageManager}, e.g. the repositories of a project, the children
+     * are loaded by the same {@link ForkJoinPool}, so that the number of the threads is bounded
+     * regardless of the depth.
+     */
+    private void loadChildren(File[] childFiles) throws Throwable {
+        if (childFiles.length <= 1) {
+            for (File f : childFiles) {
+                loadChild(f);
+            }
+            return;
+        }
+
+        if (ForkJoinTask.inForkJoinPool()) {
+            loadChildrenInForkJoinPool(childFiles);
+            return;
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(INIT_PARALLELISM, p -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("storage-loader-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        try {
+            final Throwable cause = pool.submit(() -> {
+                try {
+                    loadChildrenInForkJoinPool(childFiles);
+                    return null;
+                } catch (Throwable t) {
+                    return t;
+                }
+            }).join();
+            if (cause != null) {
+                throw cause;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void loadChildrenInForkJoinPool(File[] childFiles) throws Throwable {
+        final List<ForkJoinTask<Throwable>> tasks = new ArrayList<>(childFiles.length);
+        for (File f : childFiles) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    loadChild(f);
+                    return null;
+                } catch (Throwable t) {
+                    return t;
+                }
+            }).fork());
+        }
+
+        // Wait for all tasks even if some of them failed, so that no child is opened after init() failed.
+        Throwable cause = null;
+        for (ForkJoinTask<Throwable> task : tasks) {
+            final Throwable t = task.join();
+            if (t == null) {
+                continue;
+            }
+            if (cause == null) {
+                cause = t;
+            } else {
+                cause.addSuppressed(t);
+            }
+        }
+
+        if (cause != null) {
+            throw cause;
+        }
+    }
+
     @Nullable
     private T loadChild(File f) {
         final String name = f.getName();
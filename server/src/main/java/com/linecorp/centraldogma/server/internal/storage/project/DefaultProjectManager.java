@@ -20,10 +20,15 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.File;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.linecorp.armeria.common.util.TextFormatter;
 import com.linecorp.centraldogma.common.Author;
 import com.linecorp.centraldogma.common.CentralDogmaException;
 import com.linecorp.centraldogma.common.ProjectExistsException;
@@ -34,12 +39,18 @@ import com.linecorp.centraldogma.server.storage.project.Project;
 import com.linecorp.centraldogma.server.storage.project.ProjectManager;
 
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 
 public class DefaultProjectManager extends DirectoryBasedStorageManager<Project> implements ProjectManager {
 
+    private static final Logger logger = LoggerFactory.getLogger(DefaultProjectManager.class);
+
     private final Executor repositoryWorker;
     @Nullable
     private final RepositoryCache cache;
+    private final Timer openTimer;
+    private final long initTimeNanos;
 
     public DefaultProjectManager(File rootDir, Executor repositoryWorker, Executor purgeWorker,
                                  MeterRegistry meterRegistry, @Nullable String cacheSpec) {
@@ -50,8 +61,18 @@ public class DefaultProjectManager extends DirectoryBasedStorageManager<Project>
 
         this.repositoryWorker = repositoryWorker;
         cache = cacheSpec != null ? new RepositoryCache(cacheSpec, meterRegistry) : null;
+        openTimer = Timer.builder("projects.open.duration")
+                         .description("The time taken to open a project and its repositories")
+                         .register(meterRegistry);
 
+        final long startTimeNanos = System.nanoTime();
         init();
+        initTimeNanos = System.nanoTime() - startTimeNanos;
+
+        TimeGauge.builder("projects.init.duration", this, TimeUnit.NANOSECONDS, self -> self.initTimeNanos)
+                 .description("The time taken to open all projects at startup")
+                 .register(meterRegistry);
+        logger.info("Opened {} project(s) in {}", list().size(), TextFormatter.elapsed(initTimeNanos));
     }
 
     @Override
@@ -64,7 +85,13 @@ public class DefaultProjectManager extends DirectoryBasedStorageManager<Project>
 
     @Override
     protected Project openChild(File childDir) throws Exception {
-        return new DefaultProject(childDir, repositoryWorker, purgeWorker(), cache);
+        final long startTimeNanos = System.nanoTime();
+        final DefaultProject project = new DefaultProject(childDir, repositoryWorker, purgeWorker(), cache);
+        final long elapsedNanos = System.nanoTime() - startTimeNanos;
+        openTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        logger.debug("Opened a project: {} ({} repositories, took {})",
+                     project.name(), project.repos.list().size(), TextFormatter.elapsed(elapsedNanos));
+        return project;
     }
 
     @Override
@@ -19,8 +19,6 @@ package com.linecorp.centraldogma.server.internal.storage.repository;
 import static java.util.Objects.requireNonNull;
 
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.base.MoreObjects;
 
@@ -29,15 +27,6 @@ import com.linecorp.centraldogma.server.storage.repository.Repository;
 // XXX(trustin): Consider using reflection or AOP so that it takes less effort to add more call types.
 public abstract class CacheableCall<T> {
 
-    private static final Lock[] locks;
-
-    static {
-        locks = new Lock[8192];
-        for (int i = 0; i < locks.length; i++) {
-            locks[i] = new ReentrantLock();
-        }
-    }
-
     final Repository repo;
 
     protected CacheableCall(Repository repo) {
@@ -48,10 +37,6 @@ public abstract class CacheableCall<T> {
         return repo;
     }
 
-    public final Lock coarseGrainedLock() {
-        return locks[Math.abs(hashCode() % locks.length)];
-    }
-
     protected abstract int weigh(T value);
 
     public abstract CompletableFuture<T> execute();
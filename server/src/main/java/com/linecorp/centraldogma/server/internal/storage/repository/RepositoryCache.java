@@ -22,10 +22,12 @@ import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.Nullable;
 
+import org.eclipse.jgit.lib.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.CaffeineSpec;
 import com.github.benmanes.caffeine.cache.Weigher;
@@ -39,6 +41,11 @@ public class RepositoryCache {
 
     private static final Logger logger = LoggerFactory.getLogger(RepositoryCache.class);
 
+    /**
+     * The maximum total size of the blobs in {@link #parsedBlobCache}, in bytes.
+     */
+    private static final long MAX_PARSED_BLOB_WEIGHT = 64 * 1024 * 1024;
+
     @Nullable
     public static String validateCacheSpec(@Nullable String cacheSpec) {
         if (cacheSpec == null) {
@@ -57,6 +64,12 @@ public class RepositoryCache {
     private final AsyncLoadingCache<CacheableCall, Object> cache;
     private final String cacheSpec;
 
+    /**
+     * The parsed contents of the Git blobs, shared by all repositories. A blob is immutable and addressed
+     * by its content, so the entries never need to be invalidated.
+     */
+    private final Cache<ObjectId, ParsedBlob> parsedBlobCache;
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
     public RepositoryCache(String cacheSpec, MeterRegistry meterRegistry) {
         this.cacheSpec = requireNonNull(validateCacheSpec(cacheSpec), "cacheSpec");
@@ -73,6 +86,13 @@ public class RepositoryCache {
                        });
 
         CaffeineCacheMetrics.monitor(meterRegistry, cache, "repository");
+
+        parsedBlobCache = Caffeine.newBuilder()
+                                  .maximumWeight(MAX_PARSED_BLOB_WEIGHT)
+                                  .weigher((ObjectId key, ParsedBlob value) -> value.weight)
+                                  .recordStats()
+                                  .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, parsedBlobCache, "repository.blob");
     }
 
     public <T> CompletableFuture<T> get(CacheableCall<T> call) {
@@ -90,18 +110,59 @@ public class RepositoryCache {
         return f;
     }
 
+    /**
+     * Associates the specified {@link CompletableFuture} with the specified {@link CacheableCall} unless
+     * the {@link CacheableCall} is associated with a value already. The value is removed from the cache
+     * if the {@link CompletableFuture} fails.
+     *
+     * @return the existing {@link CompletableFuture} which may not be complete yet, or {@code null} if
+     *         the specified {@link CompletableFuture} has been associated.
+     */
+    @Nullable
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public <T> CompletableFuture<T> putIfAbsent(CacheableCall<T> call, CompletableFuture<T> future) {
+        requireNonNull(call, "call");
+        requireNonNull(future, "future");
+        return (CompletableFuture<T>) cache.asMap().putIfAbsent(call, (CompletableFuture) future);
+    }
+
     public <T> void put(CacheableCall<T> call, T value) {
         requireNonNull(call, "call");
         requireNonNull(value, "value");
         cache.put(call, CompletableFuture.completedFuture(value));
     }
 
+    /**
+     * Returns the parsed content of the Git blob with the specified {@link ObjectId}, such as a
+     * {@link com.fasterxml.jackson.databind.JsonNode} or a {@link String}. The returned content is shared
+     * and thus must not be modified.
+     */
+    @Nullable
+    public Object getParsedBlob(ObjectId blobId) {
+        requireNonNull(blobId, "blobId");
+        final ParsedBlob parsedBlob = parsedBlobCache.getIfPresent(blobId);
+        return parsedBlob != null ? parsedBlob.content : null;
+    }
+
+    /**
+     * Caches the parsed content of the Git blob with the specified {@link ObjectId}.
+     *
+     * @param size the size of the blob in bytes
+     */
+    public void putParsedBlob(ObjectId blobId, Object content, int size) {
+        requireNonNull(blobId, "blobId");
+        requireNonNull(content, "content");
+        // Copy the ID because it might be a MutableObjectId.
+        parsedBlobCache.put(blobId.copy(), new ParsedBlob(content, size));
+    }
+
     public CacheStats stats() {
         return cache.synchronous().stats();
     }
 
     public void clear() {
         cache.synchronous().invalidateAll();
+        parsedBlobCache.invalidateAll();
     }
 
     @Override
@@ -111,4 +172,14 @@ public class RepositoryCache {
                           .add("stats", stats())
                           .toString();
     }
+
+    private static final class ParsedBlob {
+        final Object content;
+        final int weight;
+
+        ParsedBlob(Object content, int weight) {
+            this.content = content;
+            this.weight = weight;
+        }
+    }
 }
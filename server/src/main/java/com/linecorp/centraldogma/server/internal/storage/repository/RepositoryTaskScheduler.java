@@ -0,0 +1,381 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.storage.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * An {@link Executor} which runs the blocking tasks of many repositories on a shared worker pool fairly.
+ *
+ * <p>A repository submits its tasks to the queues of its own {@link Tenant}, one queue per {@link Lane}.
+ * Whenever a worker becomes available, a {@link Lane} is chosen by weighted round-robin, and then
+ * the {@link Tenant}s with pending tasks in the {@link Lane} take turns. Therefore, a burst of expensive
+ * tasks against one repository does not starve the tasks of other repositories, and bulk reads do not
+ * delay commits and watch checks. Optionally, the number of the running tasks of a {@link Tenant} can be
+ * limited, which is useful when the workers are cheap, e.g. virtual threads, and thus the maximum number of
+ * the workers is large.
+ */
+public final class RepositoryTaskScheduler implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryTaskScheduler.class);
+
+    /**
+     * The kind of a task, which determines its share of the workers when the workers are busy.
+     */
+    public enum Lane {
+        COMMIT(4),
+        WATCH(2),
+        READ(1);
+
+        private final int weight;
+
+        Lane(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final Lane[] LANES = Lane.values();
+
+    private final Executor delegate;
+    private final int maxWorkers;
+    private final int maxWorkersPerTenant;
+    private final Tenant defaultTenant;
+    private final Timer[] waitTimers = new Timer[LANES.length];
+
+    // The fields below are guarded by 'lock'.
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * The {@link TaskQueue}s with pending tasks whose {@link Tenant} can run more tasks, per {@link Lane}.
+     */
+    private final ArrayDeque<TaskQueue>[] readyQueues;
+    private final int[] numPendingTasks = new int[LANES.length];
+    private final int[] credits = new int[LANES.length];
+    private int numWorkers;
+
+    /**
+     * Creates a new instance whose {@link Tenant}s can use all workers.
+     *
+     * @param delegate the {@link Executor} which runs the workers
+     * @param maxWorkers the maximum number of the tasks running concurrently, which must not be greater than
+     *                   the number of the threads of {@code delegate}
+     */
+    public RepositoryTaskScheduler(Executor delegate, int maxWorkers, MeterRegistry meterRegistry) {
+        this(delegate, maxWorkers, maxWorkers, meterRegistry);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param delegate the {@link Executor} which runs the workers
+     * @param maxWorkers the maximum number of the tasks running concurrently, which must not be greater than
+     *                   the number of the threads of {@code delegate}
+     * @param maxWorkersPerTenant the maximum number of the tasks of a {@link Tenant} running concurrently
+     */
+    @SuppressWarnings("unchecked")
+    public RepositoryTaskScheduler(Executor delegate, int maxWorkers, int maxWorkersPerTenant,
+                                   MeterRegistry meterRegistry) {
+        this.delegate = requireNonNull(delegate, "delegate");
+        checkArgument(maxWorkers > 0, "maxWorkers: %s (expected: > 0)", maxWorkers);
+        checkArgument(maxWorkersPerTenant > 0,
+                      "maxWorkersPerTenant: %s (expected: > 0)", maxWorkersPerTenant);
+        this.maxWorkers = maxWorkers;
+        this.maxWorkersPerTenant = maxWorkersPerTenant;
+        requireNonNull(meterRegistry, "meterRegistry");
+
+        readyQueues = new ArrayDeque[LANES.length];
+        for (Lane lane : LANES) {
+            final int i = lane.ordinal();
+            readyQueues[i] = new ArrayDeque<>();
+            credits[i] = lane.weight;
+
+            final String laneName = lane.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("repository.tasks.pending", this, self -> self.numPendingTasks(lane))
+                 .tag("lane", laneName)
+                 .register(meterRegistry);
+            waitTimers[i] = Timer.builder("repository.tasks.wait.duration")
+                                 .tag("lane", laneName)
+                                 .register(meterRegistry);
+        }
+
+        defaultTenant = newTenant();
+    }
+
+    /**
+     * Returns a new {@link Tenant} which has its own task queues.
+     */
+    public Tenant newTenant() {
+        return new Tenant();
+    }
+
+    /**
+     * Runs the specified task in the {@link Lane#READ} lane of the default {@link Tenant}.
+     */
+    @Override
+    public void execute(Runnable command) {
+        defaultTenant.executor(Lane.READ).execute(command);
+    }
+
+    @VisibleForTesting
+    int numPendingTasks(Lane lane) {
+        lock.lock();
+        try {
+            return numPendingTasks[lane.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(TaskQueue queue, Runnable command) {
+        requireNonNull(command, "command");
+        final Task task = new Task(command, queue);
+        final int laneIdx = queue.lane.ordinal();
+        final boolean startWorker;
+        lock.lock();
+        try {
+            queue.tasks.add(task);
+            if (!queue.ready && !queue.tenant.isSaturated()) {
+                queue.ready = true;
+                readyQueues[laneIdx].add(queue);
+            }
+            numPendingTasks[laneIdx]++;
+
+            startWorker = numWorkers < maxWorkers;
+            if (startWorker) {
+                numWorkers++;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (!startWorker) {
+            // One of the running workers will run the task.
+            return;
+        }
+
+        try {
+            delegate.execute(this::runTasks);
+        } catch (RuntimeException e) {
+            // Rejected, e.g. the delegate has been shut down.
+            lock.lock();
+            try {
+                numWorkers--;
+                if (queue.tasks.remove(task)) {
+                    numPendingTasks[laneIdx]--;
+                    if (queue.tasks.isEmpty() && queue.ready) {
+                        queue.ready = false;
+                        readyQueues[laneIdx].remove(queue);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the pending tasks until there are no more pending tasks.
+     */
+    private void runTasks() {
+        for (;;) {
+            final Task task;
+            lock.lock();
+            try {
+                task = poll();
+                if (task == null) {
+                    numWorkers--;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            waitTimers[task.queue.lane.ordinal()].record(System.nanoTime() - task.enqueuedNanos,
+                                                         TimeUnit.NANOSECONDS);
+            try {
+                task.command.run();
+            } catch (Throwable t) {
+                logger.warn("Unexpected exception while running a repository task:", t);
+            }
+
+            lock.lock();
+            try {
+                task.queue.tenant.onTaskDone();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Nullable
+    private Task poll() {
+        final Lane lane = nextLane();
+        if (lane == null) {
+            return null;
+        }
+
+        final int laneIdx = lane.ordinal();
+        final ArrayDeque<TaskQueue> readyQueue = readyQueues[laneIdx];
+        final TaskQueue queue = readyQueue.poll();
+        assert queue != null;
+        final Task task = queue.tasks.poll();
+        assert task != null;
+        numPendingTasks[laneIdx]--;
+
+        final Tenant tenant = queue.tenant;
+        tenant.numRunningTasks++;
+        if (tenant.isSaturated()) {
+            // Do not run more tasks of the tenant until one of its tasks is done.
+            queue.ready = false;
+            tenant.park();
+        } else if (queue.tasks.isEmpty()) {
+            queue.ready = false;
+        } else {
+            // Let the other tenants go first.
+            readyQueue.add(queue);
+        }
+        return task;
+    }
+
+    /**
+     * Returns the {@link Lane} with pending tasks which has not used up its weight in the current round,
+     * or {@code null} if there are no tasks which can run now.
+     */
+    @Nullable
+    private Lane nextLane() {
+        for (int round = 0; round < 2; round++) {
+            for (Lane lane : LANES) {
+                final int i = lane.ordinal();
+                if (!readyQueues[i].isEmpty() && credits[i] > 0) {
+                    credits[i]--;
+                    return lane;
+                }
+            }
+
+            // Start a new round because the lanes with runnable tasks have used up their weights.
+            for (Lane lane : LANES) {
+                credits[lane.ordinal()] = lane.weight;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A set of task queues, usually owned by a repository.
+     */
+    public final class Tenant {
+
+        private final TaskQueue[] queues = new TaskQueue[LANES.length];
+        // Guarded by 'lock'.
+        private int numRunningTasks;
+
+        private Tenant() {
+            for (Lane lane : LANES) {
+                queues[lane.ordinal()] = new TaskQueue(this, lane);
+            }
+        }
+
+        /**
+         * Returns the {@link Executor} which runs the tasks in the specified {@link Lane} of this
+         * {@link Tenant}.
+         */
+        public Executor executor(Lane lane) {
+            return queues[requireNonNull(lane, "lane").ordinal()];
+        }
+
+        private boolean isSaturated() {
+            return numRunningTasks >= maxWorkersPerTenant;
+        }
+
+        /**
+         * Removes the queues of this tenant from the ready queues.
+         */
+        private void park() {
+            for (TaskQueue q : queues) {
+                if (q.ready) {
+                    q.ready = false;
+                    readyQueues[q.lane.ordinal()].remove(q);
+                }
+            }
+        }
+
+        private void onTaskDone() {
+            numRunningTasks--;
+            if (isSaturated()) {
+                return;
+            }
+
+            // Put back the queues with pending tasks, which might have been parked.
+            for (TaskQueue q : queues) {
+                if (!q.ready && !q.tasks.isEmpty()) {
+                    q.ready = true;
+                    readyQueues[q.lane.ordinal()].add(q);
+                }
+            }
+        }
+    }
+
+    private final class TaskQueue implements Executor {
+
+        final Tenant tenant;
+        final Lane lane;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        /**
+         * Whether this queue is in the ready queue of its {@link Lane}.
+         */
+        boolean ready;
+
+        TaskQueue(Tenant tenant, Lane lane) {
+            this.tenant = tenant;
+            this.lane = lane;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            enqueue(this, command);
+        }
+    }
+
+    private static final class Task {
+        final Runnable command;
+        final TaskQueue queue;
+        final long enqueuedNanos;
+
+        Task(Runnable command, TaskQueue queue) {
+            this.command = command;
+            this.queue = queue;
+            enqueuedNanos = System.nanoTime();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
+import com.linecorp.armeria.common.util.SafeCloseable;
 import com.linecorp.centraldogma.common.Author;
 import com.linecorp.centraldogma.common.Change;
 import com.linecorp.centraldogma.common.Commit;
@@ -206,6 +207,11 @@ public class RepositoryWrapper implements Repository {
         return unwrap().lastGcRevision();
     }
 
+    @Override
+    public SafeCloseable lockGc() {
+        return unwrap().lockGc();
+    }
+
     @Override
     public String toString() {
         return Util.simpleTypeName(this) + '(' + unwrap() + ')';
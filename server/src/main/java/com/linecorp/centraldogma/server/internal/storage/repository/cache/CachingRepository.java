@@ -34,6 +34,7 @@ import com.google.common.base.Throwables;
 import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.RequestContext;
 import com.linecorp.armeria.common.util.Exceptions;
+import com.linecorp.armeria.common.util.SafeCloseable;
 import com.linecorp.centraldogma.common.Author;
 import com.linecorp.centraldogma.common.Change;
 import com.linecorp.centraldogma.common.Commit;
@@ -320,6 +321,11 @@ final class CachingRepository implements Repository {
         return repo.lastGcRevision();
     }
 
+    @Override
+    public SafeCloseable lockGc() {
+        return repo.lockGc();
+    }
+
     @Override
     public String toString() {
         return toStringHelper(this)
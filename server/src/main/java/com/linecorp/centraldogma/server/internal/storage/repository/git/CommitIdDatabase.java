@@ -24,9 +24,11 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import javax.annotation.Nullable;
 
@@ -61,13 +63,21 @@ import com.linecorp.centraldogma.server.storage.StorageException;
  *   <li>A record has fixed length of 24 bytes.</li>
  * </ul>
  * Therefore, {@link #put(Revision, ObjectId)} is always appending at the end of the database file and
- * {@link #get(Revision)} is always reading a record at the offset {@code (revision - 1) * 24}.
+ * a record of a {@link Revision} is always located at the offset {@code (revision - 1) * 24}.
+ *
+ * <p>All records are also kept in the heap as a primitive array with the same layout, which is loaded when
+ * the database is opened and updated on every {@link #put(Revision, ObjectId)}, so that {@link #get(Revision)}
+ * does not need to read the file. The memory footprint is the same as the file size, i.e. 24 bytes per
+ * {@link Revision}.
  */
 final class CommitIdDatabase implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(CommitIdDatabase.class);
 
     private static final int RECORD_LEN = 4 + 20; // 32-bit integer + 160-bit SHA1 hash
+    private static final int RECORD_INTS = RECORD_LEN / Integer.BYTES;
+    private static final int MIN_CAPACITY = 64; // in records
+    private static final int READ_BUFFER_LEN = RECORD_LEN * 1024;
 
     private static final ThreadLocal<ByteBuffer> threadLocalBuffer =
             ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(RECORD_LEN));
@@ -75,6 +85,12 @@ final class CommitIdDatabase implements AutoCloseable {
     private final Path path;
     private final FileChannel channel;
     private final boolean fsync;
+    /**
+     * The in-heap copy of the records. Replaced with a larger copy when a new record does not fit.
+     * Always updated before {@link #headRevision}, so that a reader who sees a {@link #headRevision} also
+     * sees the records up to the {@link #headRevision}.
+     */
+    private volatile int[] records;
     private volatile Revision headRevision;
 
     CommitIdDatabase(Repository repo) {
@@ -115,6 +131,7 @@ final class CommitIdDatabase implements AutoCloseable {
             }
 
             final int numRecords = (int) (size / RECORD_LEN);
+            records = loadRecords(numRecords);
             headRevision = numRecords > 0 ? new Revision(numRecords) : null;
             success = true;
         } finally {
@@ -124,6 +141,37 @@ final class CommitIdDatabase implements AutoCloseable {
         }
     }
 
+    private int[] loadRecords(int numRecords) {
+        final int[] records = new int[Math.max(numRecords, MIN_CAPACITY) * RECORD_INTS];
+        final long size = (long) numRecords * RECORD_LEN;
+        final ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_LEN);
+        long pos = 0;
+        int offset = 0;
+        try {
+            while (pos < size) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), size - pos));
+                do {
+                    final int readBytes = channel.read(buf, pos + buf.position());
+                    if (readBytes < 0) {
+                        throw new EOFException();
+                    }
+                } while (buf.hasRemaining());
+
+                buf.flip();
+                final IntBuffer intBuf = buf.asIntBuffer();
+                final int numInts = intBuf.remaining();
+                intBuf.get(records, offset, numInts);
+                offset += numInts;
+                pos += buf.limit();
+            }
+        } catch (IOException e) {
+            throw new StorageException("failed to read the commit ID database: " + path, e);
+        }
+
+        return records;
+    }
+
     @Nullable Revision headRevision() {
         return headRevision;
     }
@@ -136,30 +184,16 @@ final class CommitIdDatabase implements AutoCloseable {
             throw new RevisionNotFoundException(revision);
         }
 
-        final ByteBuffer buf = threadLocalBuffer.get();
-        buf.clear();
-        long pos = (long) (revision.major() - 1) * RECORD_LEN;
-        try {
-            do {
-                final int readBytes = channel.read(buf, pos);
-                if (readBytes < 0) {
-                    throw new EOFException();
-                }
-                pos += readBytes;
-            } while (buf.hasRemaining());
-        } catch (IOException e) {
-            throw new StorageException("failed to read the commit ID database: " + path, e);
-        }
-
-        buf.flip();
-
-        final int actualRevision = buf.getInt();
+        final int[] records = this.records;
+        final int offset = (revision.major() - 1) * RECORD_INTS;
+        final int actualRevision = records[offset];
         if (actualRevision != revision.major()) {
             throw new StorageException("incorrect revision number in the commit ID database: " + path +
                                        "(actual: " + actualRevision + ", expected: " + revision.major() + ')');
         }
 
-        return new ObjectId(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+        return new ObjectId(records[offset + 1], records[offset + 2], records[offset + 3],
+                            records[offset + 4], records[offset + 5]);
     }
 
     void put(Revision revision, ObjectId commitId) {
@@ -198,6 +232,18 @@ final class CommitIdDatabase implements AutoCloseable {
             throw new StorageException("failed to update the commit ID database: " + path, e);
         }
 
+        // Update the in-heap copy of the records.
+        final int offset = (revision.major() - 1) * RECORD_INTS;
+        int[] records = this.records;
+        if (offset + RECORD_INTS > records.length) {
+            records = Arrays.copyOf(records, Math.max(records.length * 2, offset + RECORD_INTS));
+        }
+        buf.rewind();
+        for (int i = 0; i < RECORD_INTS; i++) {
+            records[offset + i] = buf.getInt();
+        }
+        this.records = records;
+
         if (safeMode ||
             headRevision == null ||
             headRevision.major() < revision.major()) {
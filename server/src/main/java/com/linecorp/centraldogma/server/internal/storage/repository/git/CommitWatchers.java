@@ -16,16 +16,19 @@
 
 package com.linecorp.centraldogma.server.internal.storage.repository.git;
 
+import static java.util.Objects.requireNonNull;
+
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.IdentityHashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
@@ -43,19 +46,45 @@ final class CommitWatchers {
     private static final Logger logger = LoggerFactory.getLogger(CommitWatchers.class);
 
     @VisibleForTesting
-    final Map<PathPatternFilter, Set<Watch>> watchesMap = new WatcherMap(8192);
+    final Map<PathPatternFilter, Set<Watch>> watchesMap = new ConcurrentHashMap<>();
+
+    /**
+     * The index of the keys of {@link #watchesMap}, which is updated only while the corresponding
+     * {@link PathPatternFilter} is being added to or removed from {@link #watchesMap}.
+     */
+    private final PathPatternIndex index = new PathPatternIndex();
+
+    /**
+     * The {@link Executor} which completes the futures of the notified watches, so that the callbacks
+     * attached to the futures do not delay the commit which triggered the notification.
+     */
+    private final Executor notificationExecutor;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param notificationExecutor the {@link Executor} which completes the futures of the notified watches,
+     *                             usually the watch lane of the repository
+     */
+    CommitWatchers(Executor notificationExecutor) {
+        this.notificationExecutor = requireNonNull(notificationExecutor, "notificationExecutor");
+    }
 
     void add(Revision lastKnownRev, String pathPattern, CompletableFuture<Revision> future) {
         add0(PathPatternFilter.of(pathPattern), new Watch(lastKnownRev, future));
     }
 
     private void add0(final PathPatternFilter pathPattern, Watch watch) {
-        synchronized (watchesMap) {
-            final Set<Watch> watches =
-                    watchesMap.computeIfAbsent(pathPattern,
-                                               k -> Collections.newSetFromMap(new IdentityHashMap<>()));
+        // Note that ConcurrentHashMap.compute() locks only the bin of the specified key, so that
+        // registering the watches of different path patterns does not contend on a single lock.
+        watchesMap.compute(pathPattern, (key, watches) -> {
+            if (watches == null) {
+                watches = ConcurrentHashMap.newKeySet();
+                index.add(key);
+            }
             watches.add(watch);
-        }
+            return watches;
+        });
 
         watch.future.whenComplete((revision, cause) -> {
             if (watch.removed) {
@@ -64,46 +93,64 @@ final class CommitWatchers {
 
             // Remove manually only when the watch was not removed from the set successfully.
             // This usually happens when a user cancels the promise.
-            synchronized (watchesMap) {
-                final Set<Watch> watches = watchesMap.get(pathPattern);
+            watchesMap.computeIfPresent(pathPattern, (key, watches) -> {
                 watches.remove(watch);
-                if (watches.isEmpty()) {
-                    watchesMap.remove(pathPattern);
-                }
-            }
+                return removeIfEmpty(key, watches);
+            });
         });
     }
 
+    @Nullable
+    private Set<Watch> removeIfEmpty(PathPatternFilter pathPattern, Set<Watch> watches) {
+        if (!watches.isEmpty()) {
+            return watches;
+        }
+
+        index.remove(pathPattern);
+        // Returning null removes the mapping.
+        return null;
+    }
+
     void notify(Revision revision, String path) {
-        List<Watch> eligibleWatches = null;
-        synchronized (watchesMap) {
-            if (watchesMap.isEmpty()) {
-                return;
-            }
+        notify(revision, Collections.singletonList(path));
+    }
 
-            for (final Iterator<Entry<PathPatternFilter, Set<Watch>>> mapIt = watchesMap.entrySet().iterator();
-                 mapIt.hasNext();) {
+    /**
+     * Notifies the watches whose path pattern matches any of the specified {@code paths} which were changed
+     * at the specified {@code revision}. A {@link PathPatternFilter} is evaluated at most once per call
+     * regardless of the number of the {@code paths}.
+     *
+     * @param paths the changed paths without the leading {@code '/'}
+     */
+    void notify(Revision revision, Collection<String> paths) {
+        if (watchesMap.isEmpty() || paths.isEmpty()) {
+            return;
+        }
 
-                final Entry<PathPatternFilter, Set<Watch>> entry = mapIt.next();
-                if (!entry.getKey().matches(path)) {
-                    continue;
-                }
+        final Set<PathPatternFilter> pathPatterns = new HashSet<>();
+        for (String path : paths) {
+            index.find(path, pathPatterns);
+        }
 
-                final Set<Watch> watches = entry.getValue();
-                for (final Iterator<Watch> i = watches.iterator(); i.hasNext();) {
-                    final Watch w = i.next();
-                    final Revision lastKnownRevision = w.lastKnownRevision;
-                    if (lastKnownRevision.compareTo(revision) < 0) {
-                        eligibleWatches = move(eligibleWatches, i, w);
-                    } else {
-                        logIneligibleFuture(lastKnownRevision, revision);
-                    }
-                }
+        List<Watch> eligibleWatches = null;
+        for (PathPatternFilter pathPattern : pathPatterns) {
+            final Set<Watch> watches = watchesMap.get(pathPattern);
+            if (watches == null) {
+                continue;
+            }
 
-                if (watches.isEmpty()) {
-                    mapIt.remove();
+            for (Watch w : watches) {
+                final Revision lastKnownRevision = w.lastKnownRevision;
+                if (lastKnownRevision.compareTo(revision) < 0) {
+                    eligibleWatches = move(eligibleWatches, watches, w);
+                } else {
+                    logIneligibleFuture(lastKnownRevision, revision);
                 }
             }
+
+            if (watches.isEmpty()) {
+                watchesMap.computeIfPresent(pathPattern, this::removeIfEmpty);
+            }
         }
 
         if (eligibleWatches == null) {
@@ -111,21 +158,29 @@ final class CommitWatchers {
         }
 
         // Notify the matching promises found above.
-        final int numEligiblePromises = eligibleWatches.size();
-        for (int i = 0; i < numEligiblePromises; i++) {
-            eligibleWatches.get(i).future.complete(revision);
+        final List<Watch> watchesToNotify = eligibleWatches;
+        final Runnable task = () -> {
+            final int numEligiblePromises = watchesToNotify.size();
+            for (int i = 0; i < numEligiblePromises; i++) {
+                watchesToNotify.get(i).future.complete(revision);
+            }
+        };
+        try {
+            notificationExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The workers are shutting down. Notify the watches here so that they are not left incomplete.
+            task.run();
         }
     }
 
     void close(Supplier<CentralDogmaException> causeSupplier) {
         List<Watch> eligibleWatches = null;
-        synchronized (watchesMap) {
-            for (final Set<Watch> watches : watchesMap.values()) {
-                for (final Iterator<Watch> i = watches.iterator(); i.hasNext();) {
-                    final Watch w = i.next();
-                    eligibleWatches = move(eligibleWatches, i, w);
-                }
+        for (final Map.Entry<PathPatternFilter, Set<Watch>> entry : watchesMap.entrySet()) {
+            final Set<Watch> watches = entry.getValue();
+            for (Watch w : watches) {
+                eligibleWatches = move(eligibleWatches, watches, w);
             }
+            watchesMap.computeIfPresent(entry.getKey(), this::removeIfEmpty);
         }
 
         if (eligibleWatches == null) {
@@ -140,8 +195,16 @@ final class CommitWatchers {
         }
     }
 
-    private static List<Watch> move(@Nullable List<Watch> watches, Iterator<Watch> i, Watch w) {
-        i.remove();
+    /**
+     * Removes the specified {@link Watch} from the {@link Set} and adds it to the {@link List} of
+     * the {@link Watch}es to notify. Nothing is added if other thread removed the {@link Watch} first,
+     * so that a {@link Watch} is never notified more than once.
+     */
+    @Nullable
+    private static List<Watch> move(@Nullable List<Watch> watches, Set<Watch> set, Watch w) {
+        if (!set.remove(w)) {
+            return watches;
+        }
         w.removed = true;
 
         if (watches == null) {
@@ -157,22 +220,120 @@ final class CommitWatchers {
                      lastKnownRevision, newRevision);
     }
 
-    private static final class WatcherMap
-            extends LinkedHashMap<PathPatternFilter, Set<Watch>> {
+    /**
+     * An index of {@link PathPatternFilter}s which finds the filters that may match a path without
+     * evaluating every filter's regular expressions:
+     * <ul>
+     *   <li>a pattern without a wildcard, e.g. {@code /foo/bar.json}, is looked up by the exact path,</li>
+     *   <li>a pattern that ends with {@code /**} and has no other wildcards, e.g. {@code /foo/**},
+     *       is looked up by each parent directory of the path,</li>
+     *   <li>and only the other patterns are matched against the path one by one.</li>
+     * </ul>
+     */
+    private static final class PathPatternIndex {
+
+        private static final String ALL_SUFFIX = "/**";
+
+        private final Set<PathPatternFilter> matchAll = ConcurrentHashMap.newKeySet();
+        private final Map<String, Set<PathPatternFilter>> exactPaths = new ConcurrentHashMap<>();
+        private final Map<String, Set<PathPatternFilter>> directories = new ConcurrentHashMap<>();
+        private final Set<PathPatternFilter> wildcards = ConcurrentHashMap.newKeySet();
+
+        void add(PathPatternFilter filter) {
+            if (filter.matchesAll()) {
+                matchAll.add(filter);
+                return;
+            }
+
+            for (String p : filter.pathPatterns()) {
+                final String directory = directory(p);
+                if (directory != null) {
+                    add(directories, directory, filter);
+                } else if (p.indexOf('*') < 0) {
+                    add(exactPaths, p.substring(1), filter);
+                } else {
+                    wildcards.add(filter);
+                }
+            }
+        }
 
-        private static final long serialVersionUID = 6793455658134063005L;
+        private static void add(Map<String, Set<PathPatternFilter>> map, String key, PathPatternFilter filter) {
+            map.compute(key, (unused, filters) -> {
+                if (filters == null) {
+                    filters = ConcurrentHashMap.newKeySet();
+                }
+                filters.add(filter);
+                return filters;
+            });
+        }
 
-        private final int maxEntries;
+        void remove(PathPatternFilter filter) {
+            if (filter.matchesAll()) {
+                matchAll.remove(filter);
+                return;
+            }
 
-        WatcherMap(int maxEntries) {
-            super(maxEntries, 0.75f, true);
-            this.maxEntries = maxEntries;
+            for (String p : filter.pathPatterns()) {
+                final String directory = directory(p);
+                if (directory != null) {
+                    remove(directories, directory, filter);
+                } else if (p.indexOf('*') < 0) {
+                    remove(exactPaths, p.substring(1), filter);
+                } else {
+                    wildcards.remove(filter);
+                }
+            }
         }
 
-        @Override
-        protected boolean removeEldestEntry(Entry<PathPatternFilter, Set<Watch>> eldest) {
-            // Remove only the entries with empty watchers.
-            return size() > maxEntries && eldest.getValue().isEmpty();
+        private static void remove(Map<String, Set<PathPatternFilter>> map, String key,
+                                   PathPatternFilter filter) {
+            map.computeIfPresent(key, (unused, filters) -> {
+                filters.remove(filter);
+                return filters.isEmpty() ? null : filters;
+            });
+        }
+
+        /**
+         * Adds the {@link PathPatternFilter}s which match the specified {@code path} to {@code result}.
+         *
+         * @param path the path without the leading {@code '/'}, as yielded by a tree walk
+         */
+        void find(String path, Set<PathPatternFilter> result) {
+            result.addAll(matchAll);
+            addAll(result, exactPaths.get(path));
+            for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) {
+                addAll(result, directories.get(path.substring(0, i + 1)));
+            }
+            for (PathPatternFilter filter : wildcards) {
+                if (!result.contains(filter) && filter.matches(path)) {
+                    result.add(filter);
+                }
+            }
+        }
+
+        private static void addAll(Set<PathPatternFilter> result, @Nullable Set<PathPatternFilter> filters) {
+            if (filters != null) {
+                result.addAll(filters);
+            }
+        }
+
+        /**
+         * Returns the directory prefix with a trailing {@code '/'} and without the leading {@code '/'}
+         * if the specified normalized path pattern matches everything under a directory,
+         * e.g. {@code "foo/bar/"} for {@code "/foo/bar/**"}. {@code null} otherwise.
+         */
+        @Nullable
+        private static String directory(String normalizedPathPattern) {
+            if (!normalizedPathPattern.endsWith(ALL_SUFFIX)) {
+                return null;
+            }
+
+            final int end = normalizedPathPattern.length() - 2; // Strip the trailing '**'.
+            if (end <= 1 || normalizedPathPattern.lastIndexOf('*', end - 1) >= 0) {
+                return null;
+            }
+
+            return normalizedPathPattern.substring(1, end);
         }
     }
 
@@ -35,7 +35,6 @@ import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_SYMLINKS;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -45,10 +44,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.StringJoiner;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -60,23 +59,13 @@ import javax.annotation.Nullable;
 
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.dircache.DirCache;
-import org.eclipse.jgit.dircache.DirCacheBuilder;
-import org.eclipse.jgit.dircache.DirCacheEditor;
-import org.eclipse.jgit.dircache.DirCacheEditor.DeletePath;
-import org.eclipse.jgit.dircache.DirCacheEditor.DeleteTree;
-import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
-import org.eclipse.jgit.dircache.DirCacheEntry;
-import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.internal.storage.file.GC;
 import org.eclipse.jgit.internal.storage.file.RefDirectory;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.CoreConfig.HideDotFiles;
-import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.ObjectIdOwnerMap;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -88,10 +77,7 @@ import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.revwalk.TreeRevFilter;
-import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
-import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
@@ -102,8 +88,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 
+import com.linecorp.armeria.common.util.SafeCloseable;
 import com.linecorp.armeria.server.ServiceRequestContext;
 import com.linecorp.centraldogma.common.Author;
 import com.linecorp.centraldogma.common.CentralDogmaException;
@@ -124,6 +112,9 @@ import com.linecorp.centraldogma.internal.jsonpatch.JsonPatch;
 import com.linecorp.centraldogma.internal.jsonpatch.ReplaceMode;
 import com.linecorp.centraldogma.server.command.CommitResult;
 import com.linecorp.centraldogma.server.internal.storage.repository.RepositoryCache;
+import com.linecorp.centraldogma.server.internal.storage.repository.RepositoryTaskScheduler;
+import com.linecorp.centraldogma.server.internal.storage.repository.RepositoryTaskScheduler.Lane;
+import com.linecorp.centraldogma.server.internal.storage.repository.RepositoryTaskScheduler.Tenant;
 import com.linecorp.centraldogma.server.storage.StorageException;
 import com.linecorp.centraldogma.server.storage.project.Project;
 import com.linecorp.centraldogma.server.storage.repository.FindOption;
@@ -142,42 +133,36 @@ class GitRepository implements Repository {
 
     static final String R_HEADS_MASTER = Constants.R_HEADS + Constants.MASTER;
 
-    private static final byte[] EMPTY_BYTE = new byte[0];
     private static final Pattern CR = Pattern.compile("\r", Pattern.LITERAL);
 
-    private static final Field revWalkObjectsField;
-
-    static {
-        Field field = null;
-        try {
-            field = RevWalk.class.getDeclaredField("objects");
-            if (field.getType() != ObjectIdOwnerMap.class) {
-                throw new IllegalStateException(
-                        RevWalk.class.getSimpleName() + ".objects is not an " +
-                        ObjectIdOwnerMap.class.getSimpleName() + '.');
-            }
-            field.setAccessible(true);
-        } catch (NoSuchFieldException e) {
-            throw new IllegalStateException(
-                    RevWalk.class.getSimpleName() + ".objects does not exist.");
-        }
-
-        revWalkObjectsField = field;
-    }
-
+    /**
+     * Serializes the updates of the head revision. Reading does not acquire this lock because Git objects,
+     * {@link CommitIdDatabase} and {@link PathHistoryDatabase} are append-only and the revisions up to
+     * {@link #headRevision} are never modified.
+     */
     private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+    /**
+     * Prevents this repository from being closed while reading. Acquired exclusively only by
+     * {@link #close(Supplier)}, so that a pending commit does not block the readers.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
     @VisibleForTesting
     final ReentrantLock gcLock = new ReentrantLock();
     private final Project parent;
     private final Executor repositoryWorker;
+    private final Executor readWorker;
+    private final Executor watchWorker;
+    private final Executor commitWorker;
     @VisibleForTesting
     final RepositoryCache cache;
     private final String name;
     private final org.eclipse.jgit.lib.Repository jGitRepository;
     private final GitRepositoryFormat format;
     private final CommitIdDatabase commitIdDatabase;
+    private final PathHistoryDatabase pathHistoryDatabase;
     @VisibleForTesting
-    final CommitWatchers commitWatchers = new CommitWatchers();
+    final CommitWatchers commitWatchers;
+    private final LastChangeIndex lastChangeIndex = new LastChangeIndex();
     private final AtomicReference<Supplier<CentralDogmaException>> closePending = new AtomicReference<>();
     private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
 
@@ -222,6 +207,11 @@ class GitRepository implements Repository {
         this.parent = requireNonNull(parent, "parent");
         name = requireNonNull(repoDir, "repoDir").getName();
         this.repositoryWorker = requireNonNull(repositoryWorker, "repositoryWorker");
+        final Tenant tenant = newTenant(repositoryWorker);
+        readWorker = laneWorker(repositoryWorker, tenant, Lane.READ);
+        watchWorker = laneWorker(repositoryWorker, tenant, Lane.WATCH);
+        commitWorker = laneWorker(repositoryWorker, tenant, Lane.COMMIT);
+        commitWatchers = new CommitWatchers(watchWorker);
         this.format = requireNonNull(format, "format");
         this.cache = cache;
 
@@ -281,7 +271,12 @@ class GitRepository implements Repository {
                     "Create a new repository", "", Markup.PLAINTEXT,
                     Collections.emptyList(), true);
 
+            // Initialize the path history database.
+            pathHistoryDatabase = new PathHistoryDatabase(jGitRepository);
+            pathHistoryDatabase.update(jGitRepository, commitIdDatabase);
+
             headRevision = Revision.INIT;
+            lastChangeIndex.init(Revision.INIT.major());
             success = true;
         } catch (IOException e) {
             throw new StorageException("failed to create a repository at: " + repoDir, e);
@@ -306,6 +301,11 @@ class GitRepository implements Repository {
         this.parent = requireNonNull(parent, "parent");
         name = requireNonNull(repoDir, "repoDir").getName();
         this.repositoryWorker = requireNonNull(repositoryWorker, "repositoryWorker");
+        final Tenant tenant = newTenant(repositoryWorker);
+        readWorker = laneWorker(repositoryWorker, tenant, Lane.READ);
+        watchWorker = laneWorker(repositoryWorker, tenant, Lane.WATCH);
+        commitWorker = laneWorker(repositoryWorker, tenant, Lane.COMMIT);
+        commitWatchers = new CommitWatchers(watchWorker);
         this.cache = cache;
 
         final RepositoryBuilder repositoryBuilder = new RepositoryBuilder().setGitDir(repoDir).setBare();
@@ -344,6 +344,10 @@ class GitRepository implements Repository {
                 commitIdDatabase.rebuild(jGitRepository);
                 assert headRevision.equals(commitIdDatabase.headRevision());
             }
+            pathHistoryDatabase = new PathHistoryDatabase(jGitRepository);
+            pathHistoryDatabase.update(jGitRepository, commitIdDatabase);
+            assert headRevision.equals(pathHistoryDatabase.headRevision());
+            lastChangeIndex.init(headRevision.major());
             success = true;
         } finally {
             if (!success) {
@@ -352,6 +356,23 @@ class GitRepository implements Repository {
         }
     }
 
+    /**
+     * Returns a new {@link Tenant} of the specified {@code repositoryWorker} so that the tasks of this
+     * repository are scheduled fairly with the tasks of other repositories, or {@code null} if
+     * the {@code repositoryWorker} is not a {@link RepositoryTaskScheduler}.
+     */
+    @Nullable
+    private static Tenant newTenant(Executor repositoryWorker) {
+        if (repositoryWorker instanceof RepositoryTaskScheduler) {
+            return ((RepositoryTaskScheduler) repositoryWorker).newTenant();
+        }
+        return null;
+    }
+
+    private static Executor laneWorker(Executor repositoryWorker, @Nullable Tenant tenant, Lane lane) {
+        return tenant != null ? tenant.executor(lane) : repositoryWorker;
+    }
+
     private static boolean exist(File repoDir) {
         try {
             final RepositoryBuilder repositoryBuilder = new RepositoryBuilder().setGitDir(repoDir);
@@ -374,10 +395,11 @@ class GitRepository implements Repository {
     void close(Supplier<CentralDogmaException> failureCauseSupplier) {
         requireNonNull(failureCauseSupplier, "failureCauseSupplier");
         if (closePending.compareAndSet(null, failureCauseSupplier)) {
-            repositoryWorker.execute(() -> {
+            commitWorker.execute(() -> {
                 // MUST acquire gcLock first to prevent a dead lock
                 gcLock.lock();
                 rwLock.writeLock().lock();
+                closeLock.writeLock().lock();
                 try {
                     if (commitIdDatabase != null) {
                         try {
@@ -387,6 +409,14 @@ class GitRepository implements Repository {
                         }
                     }
 
+                    if (pathHistoryDatabase != null) {
+                        try {
+                            pathHistoryDatabase.close();
+                        } catch (Exception e) {
+                            logger.warn("Failed to close a path history database:", e);
+                        }
+                    }
+
                     if (gcRevision != null) {
                         try {
                             gcRevision.close();
@@ -405,6 +435,7 @@ class GitRepository implements Repository {
                     }
                 } finally {
                     try {
+                        closeLock.writeLock().unlock();
                         rwLock.writeLock().unlock();
                     } finally {
                         try {
@@ -500,7 +531,7 @@ class GitRepository implements Repository {
         return CompletableFuture.supplyAsync(() -> {
             failFastIfTimedOut(this, logger, ctx, "find", revision, pathPattern, options);
             return blockingFind(revision, pathPattern, options);
-        }, repositoryWorker);
+        }, readWorker);
     }
 
     private Map<String, Entry<?>> blockingFind(
@@ -547,7 +578,9 @@ class GitRepository implements Repository {
                         result.put(path, Entry.ofDirectory(normRevision, path));
                     }
 
-                    treeWalk.enterSubtree();
+                    if (filter.mayContainMatches(treeWalk)) {
+                        treeWalk.enterSubtree();
+                    }
                     continue;
                 }
 
@@ -559,15 +592,13 @@ class GitRepository implements Repository {
                 final Entry<?> entry;
                 final EntryType entryType = EntryType.guessFromPath(path);
                 if (fetchContent) {
-                    final byte[] content = reader.open(treeWalk.getObjectId(0)).getBytes();
+                    final ObjectId blobId = treeWalk.getObjectId(0);
                     switch (entryType) {
                         case JSON:
-                            final JsonNode jsonNode = Jackson.readTree(content);
-                            entry = Entry.ofJson(normRevision, path, jsonNode);
+                            entry = Entry.ofJson(normRevision, path, readJson(reader, blobId));
                             break;
                         case TEXT:
-                            final String strVal = sanitizeText(new String(content, UTF_8));
-                            entry = Entry.ofText(normRevision, path, strVal);
+                            entry = Entry.ofText(normRevision, path, readText(reader, blobId));
                             break;
                         default:
                             throw new Error("unexpected entry type: " + entryType);
@@ -608,7 +639,7 @@ class GitRepository implements Repository {
         return CompletableFuture.supplyAsync(() -> {
             failFastIfTimedOut(this, logger, ctx, "history", from, to, pathPattern, maxCommits);
             return blockingHistory(from, to, pathPattern, maxCommits);
-        }, repositoryWorker);
+        }, readWorker);
     }
 
     private List<Commit> blockingHistory(Revision from, Revision to, String pathPattern, int maxCommits) {
@@ -627,50 +658,15 @@ class GitRepository implements Repository {
         // At this point, we are sure: from.major >= to.major
         readLock();
         try (RevWalk revWalk = newRevWalk()) {
-            final ObjectIdOwnerMap<?> revWalkInternalMap =
-                    (ObjectIdOwnerMap<?>) revWalkObjectsField.get(revWalk);
-
-            final ObjectId fromCommitId = commitIdDatabase.get(descendingRange.from());
-            final ObjectId toCommitId = commitIdDatabase.get(descendingRange.to());
-
-            revWalk.markStart(revWalk.parseCommit(fromCommitId));
-            revWalk.setRetainBody(false);
-
-            // Instead of relying on RevWalk to filter the commits,
-            // we let RevWalk yield all commits so we can:
-            // - Have more control on when iteration should be stopped.
-            //   (A single Iterator.next() doesn't take long.)
-            // - Clean up the internal map as early as possible.
-            final RevFilter filter = new TreeRevFilter(revWalk, AndTreeFilter.create(
-                    TreeFilter.ANY_DIFF, PathPatternFilter.of(pathPattern)));
-
-            // Search up to 1000 commits when maxCommits <= 100.
-            // Search up to (maxCommits * 10) commits when 100 < maxCommits <= 1000.
-            final int maxNumProcessedCommits = Math.max(maxCommits * 10, MAX_MAX_COMMITS);
-
-            final List<Commit> commitList = new ArrayList<>();
-            int numProcessedCommits = 0;
-            for (RevCommit revCommit : revWalk) {
-                numProcessedCommits++;
-
-                if (filter.include(revWalk, revCommit)) {
-                    revWalk.parseBody(revCommit);
-                    commitList.add(toCommit(revCommit));
-                    revCommit.disposeBody();
-                }
-
-                if (revCommit.getId().equals(toCommitId) ||
-                    commitList.size() >= maxCommits ||
-                    // Prevent from iterating for too long.
-                    numProcessedCommits >= maxNumProcessedCommits) {
-                    break;
-                }
-
-                // Clear the internal lookup table of RevWalk to reduce the memory usage.
-                // This is safe because we have linear history and traverse in one direction.
-                if (numProcessedCommits % 16 == 0) {
-                    revWalkInternalMap.clear();
-                }
+            // Find the revisions which changed the matching files from the index,
+            // instead of comparing the trees of all commits in the range.
+            final int[] revisions = pathHistoryDatabase.find(descendingRange.from(), descendingRange.to(),
+                                                             PathPatternFilter.of(pathPattern), maxCommits);
+
+            final List<Commit> commitList = new ArrayList<>(revisions.length + 1);
+            for (int revision : revisions) {
+                final RevCommit revCommit = revWalk.parseCommit(commitIdDatabase.get(new Revision(revision)));
+                commitList.add(toCommit(revCommit));
             }
 
             // Include the initial empty commit only when the caller specified
@@ -678,10 +674,8 @@ class GitRepository implements Repository {
             if (commitList.size() < maxCommits &&
                 descendingRange.to().major() == 1 &&
                 pathPattern.contains(ALL_PATH)) {
-                try (RevWalk tmpRevWalk = newRevWalk()) {
-                    final RevCommit lastRevCommit = tmpRevWalk.parseCommit(toCommitId);
-                    commitList.add(toCommit(lastRevCommit));
-                }
+                final RevCommit lastRevCommit = revWalk.parseCommit(commitIdDatabase.get(Revision.INIT));
+                commitList.add(toCommit(lastRevCommit));
             }
 
             if (!descendingRange.equals(range)) { // from and to is swapped so reverse the list.
@@ -755,7 +749,7 @@ class GitRepository implements Repository {
             } finally {
                 readUnlock();
             }
-        }, repositoryWorker);
+        }, readWorker);
     }
 
     private static TreeFilter pathPatternFilterOrTreeFilter(@Nullable String pathPattern) {
@@ -774,7 +768,7 @@ class GitRepository implements Repository {
         return CompletableFuture.supplyAsync(() -> {
             failFastIfTimedOut(this, logger, ctx, "previewDiff", baseRevision);
             return blockingPreviewDiff(baseRevision, changes);
-        }, repositoryWorker);
+        }, readWorker);
     }
 
     private Map<String, Change<?>> blockingPreviewDiff(Revision baseRevision, Iterable<Change<?>> changes) {
@@ -783,22 +777,20 @@ class GitRepository implements Repository {
         baseRevision = normalizeNow(baseRevision);
 
         readLock();
-        try (ObjectReader reader = jGitRepository.newObjectReader();
-             RevWalk revWalk = newRevWalk(reader);
-             DiffFormatter diffFormatter = new DiffFormatter(null)) {
+        try (ObjectInserter inserter = jGitRepository.newObjectInserter();
+             ObjectReader reader = inserter.newReader();
+             RevWalk revWalk = newRevWalk(reader)) {
 
             final ObjectId baseTreeId = toTree(revWalk, baseRevision);
-            final DirCache dirCache = DirCache.newInCore();
-            final int numEdits = applyChanges(baseRevision, baseTreeId, dirCache, changes);
+            final TreeEditor treeEditor = new TreeEditor(reader, baseTreeId);
+            final int numEdits = applyChanges(baseRevision, treeEditor, inserter, reader, changes);
             if (numEdits == 0) {
                 return Collections.emptyMap();
             }
 
-            final CanonicalTreeParser p = new CanonicalTreeParser();
-            p.reset(reader, baseTreeId);
-            diffFormatter.setRepository(jGitRepository);
-            final List<DiffEntry> result = diffFormatter.scan(p, new DirCacheIterator(dirCache));
-            return toChangeMap(result);
+            // Make sure the new blobs are visible to toChangeMap().
+            inserter.flush();
+            return toChangeMap(treeEditor.diffEntries());
         } catch (IOException e) {
             throw new StorageException("failed to perform a dry-run diff", e);
         } finally {
@@ -824,11 +816,9 @@ class GitRepository implements Repository {
                                 }
 
                                 final JsonNode oldJsonNode =
-                                        Jackson.readTree(
-                                                reader.open(diffEntry.getOldId().toObjectId()).getBytes());
+                                        readJson(reader, diffEntry.getOldId().toObjectId());
                                 final JsonNode newJsonNode =
-                                        Jackson.readTree(
-                                                reader.open(diffEntry.getNewId().toObjectId()).getBytes());
+                                        readJson(reader, diffEntry.getNewId().toObjectId());
                                 final JsonPatch patch =
                                         JsonPatch.generate(oldJsonNode, newJsonNode, ReplaceMode.SAFE);
 
@@ -838,11 +828,8 @@ class GitRepository implements Repository {
                                 }
                                 break;
                             case TEXT:
-                                final String oldText = sanitizeText(new String(
-                                        reader.open(diffEntry.getOldId().toObjectId()).getBytes(), UTF_8));
-
-                                final String newText = sanitizeText(new String(
-                                        reader.open(diffEntry.getNewId().toObjectId()).getBytes(), UTF_8));
+                                final String oldText = readText(reader, diffEntry.getOldId().toObjectId());
+                                final String newText = readText(reader, diffEntry.getNewId().toObjectId());
 
                                 if (!oldPath.equals(newPath)) {
                                     putChange(changeMap, oldPath, Change.ofRename(oldPath, newPath));
@@ -861,15 +848,13 @@ class GitRepository implements Repository {
                         final EntryType newEntryType = EntryType.guessFromPath(newPath);
                         switch (newEntryType) {
                             case JSON: {
-                                final JsonNode jsonNode = Jackson.readTree(
-                                        reader.open(diffEntry.getNewId().toObjectId()).getBytes());
+                                final JsonNode jsonNode = readJson(reader, diffEntry.getNewId().toObjectId());
 
                                 putChange(changeMap, newPath, Change.ofJsonUpsert(newPath, jsonNode));
                                 break;
                             }
                             case TEXT: {
-                                final String text = sanitizeText(new String(
-                                        reader.open(diffEntry.getNewId().toObjectId()).getBytes(), UTF_8));
+                                final String text = readText(reader, diffEntry.getNewId().toObjectId());
 
                                 putChange(changeMap, newPath, Change.ofTextUpsert(newPath, text));
                                 break;
@@ -912,7 +897,7 @@ class GitRepository implements Repository {
             failFastIfTimedOut(this, logger, ctx, "commit", baseRevision, author, summary);
             return blockingCommit(baseRevision, commitTimeMillis,
                                   author, summary, detail, markup, changes, false, directExecution);
-        }, repositoryWorker);
+        }, commitWorker);
     }
 
     private CommitResult blockingCommit(
@@ -924,6 +909,7 @@ class GitRepository implements Repository {
 
         final RevisionAndEntries res;
         final Iterable<Change<?>> applyingChanges;
+        final List<String> changedPaths;
         boolean hasLock = false;
         try {
             hasLock = writeLock(directExecution);
@@ -948,6 +934,10 @@ class GitRepository implements Repository {
             res = commit0(headRevision, headRevision.forward(1), commitTimeMillis,
                           author, summary, detail, markup, applyingChanges, allowEmptyCommit);
 
+            // Update the index before the new revision becomes visible.
+            changedPaths = changedPaths(res.diffEntries);
+            pathHistoryDatabase.put(res.revision, changedPaths);
+            lastChangeIndex.add(res.revision.major(), changedPaths);
             this.headRevision = res.revision;
         } finally {
             if (hasLock) {
@@ -956,7 +946,7 @@ class GitRepository implements Repository {
         }
 
         // Note that the notification is made while no lock is held to avoid the risk of a dead lock.
-        notifyWatchers(res.revision, res.diffEntries);
+        commitWatchers.notify(res.revision, changedPaths);
         return CommitResult.of(res.revision, applyingChanges);
     }
 
@@ -975,30 +965,25 @@ class GitRepository implements Repository {
         assert nextRevision.major() > 0;
 
         try (ObjectInserter inserter = jGitRepository.newObjectInserter();
-             ObjectReader reader = jGitRepository.newObjectReader();
+             ObjectReader reader = inserter.newReader();
              RevWalk revWalk = newRevWalk(reader)) {
 
             final ObjectId prevTreeId = prevRevision != null ? toTree(revWalk, prevRevision) : null;
 
-            // The staging area that keeps the entries of the new tree.
-            // It starts with the entries of the tree at the prevRevision (or with no entries if the
-            // prevRevision is the initial commit), and then this method will apply the requested changes
-            // to build the new tree.
-            final DirCache dirCache = DirCache.newInCore();
+            // The editor that builds the new tree on top of the tree at the prevRevision (or on top of
+            // an empty tree if the prevRevision is the initial commit). Only the tree objects along
+            // the changed paths are loaded and rewritten; the other subtrees are reused as they are.
+            final TreeEditor treeEditor = new TreeEditor(reader, prevTreeId);
 
             // Apply the changes and retrieve the list of the affected files.
-            final int numEdits = applyChanges(prevRevision, prevTreeId, dirCache, changes);
+            final int numEdits = applyChanges(prevRevision, treeEditor, inserter, reader, changes);
 
             // Reject empty commit if necessary.
             final List<DiffEntry> diffEntries;
             boolean isEmpty = numEdits == 0;
             if (!isEmpty) {
                 // Even if there are edits, the resulting tree might be identical with the previous tree.
-                final CanonicalTreeParser p = new CanonicalTreeParser();
-                p.reset(reader, prevTreeId);
-                final DiffFormatter diffFormatter = new DiffFormatter(null);
-                diffFormatter.setRepository(jGitRepository);
-                diffEntries = diffFormatter.scan(p, new DirCacheIterator(dirCache));
+                diffEntries = treeEditor.diffEntries();
                 isEmpty = diffEntries.isEmpty();
             } else {
                 diffEntries = ImmutableList.of();
@@ -1011,8 +996,8 @@ class GitRepository implements Repository {
                         ": " + changes);
             }
 
-            // flush the current index to repository and get the result tree object id.
-            final ObjectId nextTreeId = dirCache.writeTree(inserter);
+            // Write the modified tree objects to the repository and get the result tree object id.
+            final ObjectId nextTreeId = treeEditor.writeTree(inserter);
 
             // build a commit object
             final PersonIdent personIdent = new PersonIdent(author.name(), author.email(),
@@ -1048,69 +1033,51 @@ class GitRepository implements Repository {
         }
     }
 
-    private int applyChanges(@Nullable Revision baseRevision, @Nullable ObjectId baseTreeId, DirCache dirCache,
-                             Iterable<Change<?>> changes) {
+    private int applyChanges(@Nullable Revision baseRevision, TreeEditor treeEditor,
+                             ObjectInserter inserter, ObjectReader reader, Iterable<Change<?>> changes) {
 
         int numEdits = 0;
 
-        try (ObjectInserter inserter = jGitRepository.newObjectInserter();
-             ObjectReader reader = jGitRepository.newObjectReader()) {
-
-            if (baseTreeId != null) {
-                // the DirCacheBuilder is to used for doing update operations on the given DirCache object
-                final DirCacheBuilder builder = dirCache.builder();
-
-                // Add the tree object indicated by the prevRevision to the temporary DirCache object.
-                builder.addTree(EMPTY_BYTE, 0, reader, baseTreeId);
-                builder.finish();
-            }
-
+        try {
             // loop over the specified changes.
             for (Change<?> change : changes) {
                 final String changePath = change.path().substring(1); // Strip the leading '/'.
-                final DirCacheEntry oldEntry = dirCache.getEntry(changePath);
-                final byte[] oldContent = oldEntry != null ? reader.open(oldEntry.getObjectId()).getBytes()
-                                                           : null;
+                final ObjectId oldId = treeEditor.get(changePath);
 
                 switch (change.type()) {
                     case UPSERT_JSON: {
-                        final JsonNode oldJsonNode = oldContent != null ? Jackson.readTree(oldContent) : null;
+                        final JsonNode oldJsonNode = oldId != null ? readJson(reader, oldId) : null;
                         final JsonNode newJsonNode = firstNonNull((JsonNode) change.content(),
                                                                   JsonNodeFactory.instance.nullNode());
 
                         // Upsert only when the contents are really different.
                         if (!Objects.equals(newJsonNode, oldJsonNode)) {
-                            applyPathEdit(dirCache, new InsertJson(changePath, inserter, newJsonNode));
+                            treeEditor.put(changePath, insertJson(inserter, newJsonNode));
                             numEdits++;
                         }
                         break;
                     }
                     case UPSERT_TEXT: {
-                        final String sanitizedOldText;
-                        if (oldContent != null) {
-                            sanitizedOldText = sanitizeText(new String(oldContent, UTF_8));
-                        } else {
-                            sanitizedOldText = null;
-                        }
+                        final String sanitizedOldText = oldId != null ? readText(reader, oldId) : null;
 
                         final String sanitizedNewText = sanitizeText(change.contentAsText());
 
                         // Upsert only when the contents are really different.
                         if (!sanitizedNewText.equals(sanitizedOldText)) {
-                            applyPathEdit(dirCache, new InsertText(changePath, inserter, sanitizedNewText));
+                            treeEditor.put(changePath, insertText(inserter, sanitizedNewText));
                             numEdits++;
                         }
                         break;
                     }
                     case REMOVE:
-                        if (oldEntry != null) {
-                            applyPathEdit(dirCache, new DeletePath(changePath));
+                        if (oldId != null) {
+                            treeEditor.remove(changePath);
                             numEdits++;
                             break;
                         }
 
                         // The path might be a directory.
-                        if (applyDirectoryEdits(dirCache, changePath, null, change)) {
+                        if (treeEditor.removeDirectory(changePath)) {
                             numEdits++;
                         } else {
                             // Was not a directory either; conflict.
@@ -1122,26 +1089,26 @@ class GitRepository implements Repository {
                         final String newPath =
                                 ((String) change.content()).substring(1); // Strip the leading '/'.
 
-                        if (dirCache.getEntry(newPath) != null) {
+                        if (treeEditor.get(newPath) != null) {
                             throw new ChangeConflictException("a file exists at the target path: " + change);
                         }
 
-                        if (oldEntry != null) {
+                        if (oldId != null) {
                             if (changePath.equals(newPath)) {
                                 // Redundant rename request - old path and new path are same.
                                 break;
                             }
 
-                            final DirCacheEditor editor = dirCache.editor();
-                            editor.add(new DeletePath(changePath));
-                            editor.add(new CopyOldEntry(newPath, oldEntry));
-                            editor.finish();
+                            treeEditor.move(changePath, newPath);
                             numEdits++;
                             break;
                         }
 
                         // The path might be a directory.
-                        if (applyDirectoryEdits(dirCache, changePath, newPath, change)) {
+                        if (treeEditor.isDirectory(newPath)) {
+                            throw new ChangeConflictException("target directory exists already: " + change);
+                        }
+                        if (treeEditor.moveDirectory(changePath, newPath)) {
                             numEdits++;
                         } else {
                             // Was not a directory either; conflict.
@@ -1151,8 +1118,8 @@ class GitRepository implements Repository {
                     }
                     case APPLY_JSON_PATCH: {
                         final JsonNode oldJsonNode;
-                        if (oldContent != null) {
-                            oldJsonNode = Jackson.readTree(oldContent);
+                        if (oldId != null) {
+                            oldJsonNode = readJson(reader, oldId);
                         } else {
                             oldJsonNode = Jackson.nullNode;
                         }
@@ -1166,7 +1133,7 @@ class GitRepository implements Repository {
 
                         // Apply only when the contents are really different.
                         if (!newJsonNode.equals(oldJsonNode)) {
-                            applyPathEdit(dirCache, new InsertJson(changePath, inserter, newJsonNode));
+                            treeEditor.put(changePath, insertJson(inserter, newJsonNode));
                             numEdits++;
                         }
                         break;
@@ -1177,8 +1144,8 @@ class GitRepository implements Repository {
 
                         final String sanitizedOldText;
                         final List<String> sanitizedOldTextLines;
-                        if (oldContent != null) {
-                            sanitizedOldText = sanitizeText(new String(oldContent, UTF_8));
+                        if (oldId != null) {
+                            sanitizedOldText = readText(reader, oldId);
                             sanitizedOldTextLines = Util.stringToLines(sanitizedOldText);
                         } else {
                             sanitizedOldText = null;
@@ -1203,7 +1170,7 @@ class GitRepository implements Repository {
 
                         // Apply only when the contents are really different.
                         if (!newText.equals(sanitizedOldText)) {
-                            applyPathEdit(dirCache, new InsertText(changePath, inserter, newText));
+                            treeEditor.put(changePath, insertText(inserter, newText));
                             numEdits++;
                         }
                         break;
@@ -1218,118 +1185,63 @@ class GitRepository implements Repository {
     }
 
     /**
-     * Removes {@code \r} and appends {@code \n} on the last line if it does not end with {@code \n}.
+     * Reads the JSON blob with the specified {@link ObjectId}. The returned {@link JsonNode} might be
+     * shared, so it must not be modified.
      */
-    private static String sanitizeText(String text) {
-        if (text.indexOf('\r') >= 0) {
-            text = CR.matcher(text).replaceAll("");
+    private JsonNode readJson(ObjectReader reader, ObjectId blobId) throws IOException {
+        final Object cached = cache != null ? cache.getParsedBlob(blobId) : null;
+        if (cached instanceof JsonNode) {
+            return (JsonNode) cached;
         }
-        if (!text.isEmpty() && !text.endsWith("\n")) {
-            text += "\n";
+
+        final byte[] content = reader.open(blobId).getBytes();
+        final JsonNode jsonNode = Jackson.readTree(content);
+        if (cache != null && cached == null) {
+            cache.putParsedBlob(blobId, jsonNode, content.length);
+        }
+        return jsonNode;
+    }
+
+    /**
+     * Reads the text blob with the specified {@link ObjectId} and sanitizes it.
+     */
+    private String readText(ObjectReader reader, ObjectId blobId) throws IOException {
+        final Object cached = cache != null ? cache.getParsedBlob(blobId) : null;
+        if (cached instanceof String) {
+            return (String) cached;
+        }
+
+        final byte[] content = reader.open(blobId).getBytes();
+        final String text = sanitizeText(new String(content, UTF_8));
+        if (cache != null && cached == null) {
+            cache.putParsedBlob(blobId, text, content.length);
         }
         return text;
     }
 
-    private static void reportNonExistentEntry(Change<?> change) {
-        throw new ChangeConflictException("non-existent file/directory: " + change);
+    private static ObjectId insertText(ObjectInserter inserter, String text) throws IOException {
+        return inserter.insert(Constants.OBJ_BLOB, text.getBytes(UTF_8));
     }
 
-    private static void applyPathEdit(DirCache dirCache, PathEdit edit) {
-        final DirCacheEditor e = dirCache.editor();
-        e.add(edit);
-        e.finish();
+    private static ObjectId insertJson(ObjectInserter inserter, JsonNode jsonNode) throws IOException {
+        return inserter.insert(Constants.OBJ_BLOB, Jackson.writeValueAsBytes(jsonNode));
     }
 
     /**
-     * Applies recursive directory edits.
-     *
-     * @param oldDir the path to the directory to make a recursive change
-     * @param newDir the path to the renamed directory, or {@code null} to remove the directory.
-     *
-     * @return {@code true} if any edits were made to {@code dirCache}, {@code false} otherwise
+     * Removes {@code \r} and appends {@code \n} on the last line if it does not end with {@code \n}.
      */
-    private static boolean applyDirectoryEdits(DirCache dirCache,
-                                               String oldDir, @Nullable String newDir, Change<?> change) {
-
-        if (!oldDir.endsWith("/")) {
-            oldDir += '/';
-        }
-        if (newDir != null && !newDir.endsWith("/")) {
-            newDir += '/';
+    private static String sanitizeText(String text) {
+        if (text.indexOf('\r') >= 0) {
+            text = CR.matcher(text).replaceAll("");
         }
-
-        final byte[] rawOldDir = Constants.encode(oldDir);
-        final byte[] rawNewDir = newDir != null ? Constants.encode(newDir) : null;
-        final int numEntries = dirCache.getEntryCount();
-        DirCacheEditor editor = null;
-
-        loop:
-        for (int i = 0; i < numEntries; i++) {
-            final DirCacheEntry e = dirCache.getEntry(i);
-            final byte[] rawPath = e.getRawPath();
-
-            // Ensure that there are no entries under the newDir; we have a conflict otherwise.
-            if (rawNewDir != null) {
-                boolean conflict = true;
-                if (rawPath.length > rawNewDir.length) {
-                    // Check if there is a file whose path starts with 'newDir'.
-                    for (int j = 0; j < rawNewDir.length; j++) {
-                        if (rawNewDir[j] != rawPath[j]) {
-                            conflict = false;
-                            break;
-                        }
-                    }
-                } else if (rawPath.length == rawNewDir.length - 1) {
-                    // Check if there is a file whose path is exactly same with newDir without trailing '/'.
-                    for (int j = 0; j < rawNewDir.length - 1; j++) {
-                        if (rawNewDir[j] != rawPath[j]) {
-                            conflict = false;
-                            break;
-                        }
-                    }
-                } else {
-                    conflict = false;
-                }
-
-                if (conflict) {
-                    throw new ChangeConflictException("target directory exists already: " + change);
-                }
-            }
-
-            // Skip the entries that do not belong to the oldDir.
-            if (rawPath.length <= rawOldDir.length) {
-                continue;
-            }
-            for (int j = 0; j < rawOldDir.length; j++) {
-                if (rawOldDir[j] != rawPath[j]) {
-                    continue loop;
-                }
-            }
-
-            // Do not create an editor until we find an entry to rename/remove.
-            // We can tell if there was any matching entries or not from the nullness of editor later.
-            if (editor == null) {
-                editor = dirCache.editor();
-                editor.add(new DeleteTree(oldDir));
-                if (newDir == null) {
-                    // Recursive removal
-                    break;
-                }
-            }
-
-            assert newDir != null; // We should get here only when it's a recursive rename.
-
-            final String oldPath = e.getPathString();
-            final String newPath = newDir + oldPath.substring(oldDir.length());
-            editor.add(new CopyOldEntry(newPath, e));
+        if (!text.isEmpty() && !text.endsWith("\n")) {
+            text += "\n";
         }
+        return text;
+    }
 
-        if (editor != null) {
-            editor.finish();
-            return true;
-        } else {
-            return false;
-        }
+    private static void reportNonExistentEntry(Change<?> change) {
+        throw new ChangeConflictException("non-existent file/directory: " + change);
     }
 
     private void doRefUpdate(RevWalk revWalk, String ref, ObjectId commitId) throws IOException {
@@ -1370,7 +1282,7 @@ class GitRepository implements Repository {
         return CompletableFuture.supplyAsync(() -> {
             failFastIfTimedOut(this, logger, ctx, "findLatestRevision", lastKnownRevision, pathPattern);
             return blockingFindLatestRevision(lastKnownRevision, pathPattern);
-        }, repositoryWorker);
+        }, watchWorker);
     }
 
     @Nullable
@@ -1388,15 +1300,34 @@ class GitRepository implements Repository {
             return !entries.isEmpty() ? range.to() : null;
         }
 
-        // Slow path: compare the two trees.
         final PathPatternFilter filter = PathPatternFilter.of(pathPattern);
+        switch (lastChangeIndex.find(range.from().major(), range.to().major(), filter)) {
+            case LastChangeIndex.UNKNOWN:
+                // The index does not cover the revision range.
+                break;
+            case LastChangeIndex.NO_CHANGE:
+                return null;
+            default:
+                return range.to();
+        }
+
+        // Slow path: compare the two trees.
         // Convert the revisions to Git trees.
         final List<DiffEntry> diffEntries;
         readLock();
         try (RevWalk revWalk = newRevWalk()) {
             final RevTree treeA = toTree(revWalk, range.from());
             final RevTree treeB = toTree(revWalk, range.to());
-            diffEntries = blockingCompareTrees(treeA, treeB);
+            final List<DiffEntry> cachedDiffEntries = cachedCompareTrees(treeA, treeB);
+            if (cachedDiffEntries != null) {
+                diffEntries = cachedDiffEntries;
+            } else if (!filter.matchesAll() && filter.hasDirectoryPrefixes()) {
+                // Visit only the subtrees which may contain the matching files and stop at the first match,
+                // because the full diff will not be shared with the watchers of other directories.
+                return blockingHasChanges(treeA, treeB, filter) ? range.to() : null;
+            } else {
+                diffEntries = blockingCompareTrees(treeA, treeB);
+            }
         } finally {
             readUnlock();
         }
@@ -1425,7 +1356,22 @@ class GitRepository implements Repository {
     }
 
     /**
-     * Compares the two Git trees (with caching).
+     * Returns the cached result of comparing the two Git trees, or {@code null} if not cached yet.
+     */
+    @Nullable
+    private List<DiffEntry> cachedCompareTrees(RevTree treeA, RevTree treeB) {
+        if (cache == null) {
+            return null;
+        }
+
+        final CompletableFuture<List<DiffEntry>> future =
+                cache.getIfPresent(new CacheableCompareTreesCall(this, treeA, treeB));
+        return future != null ? future.getNow(null) : null;
+    }
+
+    /**
+     * Compares the two Git trees (with caching). If other thread is comparing the same trees already,
+     * this method waits for its result rather than comparing them again.
      */
     private List<DiffEntry> blockingCompareTrees(RevTree treeA, RevTree treeB) {
         if (cache == null) {
@@ -1433,37 +1379,49 @@ class GitRepository implements Repository {
         }
 
         final CacheableCompareTreesCall key = new CacheableCompareTreesCall(this, treeA, treeB);
-        CompletableFuture<List<DiffEntry>> existingFuture = cache.getIfPresent(key);
+        final CompletableFuture<List<DiffEntry>> newFuture = new CompletableFuture<>();
+        final CompletableFuture<List<DiffEntry>> existingFuture = cache.putIfAbsent(key, newFuture);
         if (existingFuture != null) {
-            final List<DiffEntry> existingDiffEntries = existingFuture.getNow(null);
-            if (existingDiffEntries != null) {
-                // Cached already.
-                return existingDiffEntries;
+            // Cached already or being compared by other thread.
+            try {
+                return existingFuture.join();
+            } catch (CompletionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new StorageException("failed to compare two trees: " + treeA + " vs. " + treeB,
+                                           e.getCause());
             }
         }
 
-        // Not cached yet. Acquire a lock so that we do not compare the same tree pairs simultaneously.
-        final List<DiffEntry> newDiffEntries;
-        final Lock lock = key.coarseGrainedLock();
-        lock.lock();
+        logger.debug("Cache miss: {}", key);
         try {
-            existingFuture = cache.getIfPresent(key);
-            if (existingFuture != null) {
-                final List<DiffEntry> existingDiffEntries = existingFuture.getNow(null);
-                if (existingDiffEntries != null) {
-                    // Other thread already put the entries to the cache before we acquire the lock.
-                    return existingDiffEntries;
-                }
-            }
+            final List<DiffEntry> newDiffEntries = blockingCompareTreesUncached(treeA, treeB, TreeFilter.ALL);
+            newFuture.complete(newDiffEntries);
+            return newDiffEntries;
+        } catch (Throwable t) {
+            // The failed future is removed from the cache automatically.
+            newFuture.completeExceptionally(t);
+            throw t;
+        }
+    }
 
-            newDiffEntries = blockingCompareTreesUncached(treeA, treeB, TreeFilter.ALL);
-            cache.put(key, newDiffEntries);
+    /**
+     * Returns whether any files matching the specified {@link PathPatternFilter} differ between the two
+     * Git trees. Unlike {@link #blockingCompareTreesUncached(RevTree, RevTree, TreeFilter)}, this method
+     * returns as soon as a difference is found.
+     */
+    private boolean blockingHasChanges(RevTree treeA, RevTree treeB, PathPatternFilter filter) {
+        readLock();
+        try (TreeWalk treeWalk = new TreeWalk(jGitRepository)) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(AndTreeFilter.create(filter, TreeFilter.ANY_DIFF));
+            treeWalk.addTree(treeA);
+            treeWalk.addTree(treeB);
+            return treeWalk.next();
+        } catch (IOException e) {
+            throw new StorageException("failed to compare two trees: " + treeA + " vs. " + treeB, e);
         } finally {
-            lock.unlock();
+            readUnlock();
         }
-
-        logger.debug("Cache miss: {}", key);
-        return newDiffEntries;
     }
 
     private List<DiffEntry> blockingCompareTreesUncached(@Nullable RevTree treeA,
@@ -1495,16 +1453,29 @@ class GitRepository implements Repository {
             try {
                 // If lastKnownRevision is outdated already and the recent changes match,
                 // there's no need to watch.
-                final Revision latestRevision = blockingFindLatestRevision(normLastKnownRevision, pathPattern);
+                final Revision headRevision = cachedHeadRevision();
+                Revision latestRevision = blockingFindLatestRevision(normLastKnownRevision, pathPattern);
                 if (latestRevision != null) {
                     future.complete(latestRevision);
-                } else {
-                    commitWatchers.add(normLastKnownRevision, pathPattern, future);
+                    return;
+                }
+
+                commitWatchers.add(normLastKnownRevision, pathPattern, future);
+
+                // A commit could have been made after the check above but before the watch was added,
+                // because a commit does not wait for the readers. Check once more in that case, because
+                // the watch may have missed the notification. Note that a commit updates the head revision
+                // before notifying the watches.
+                if (!headRevision.equals(cachedHeadRevision())) {
+                    latestRevision = blockingFindLatestRevision(normLastKnownRevision, pathPattern);
+                    if (latestRevision != null) {
+                        future.complete(latestRevision);
+                    }
                 }
             } finally {
                 readUnlock();
             }
-        }, repositoryWorker).exceptionally(cause -> {
+        }, watchWorker).exceptionally(cause -> {
             future.completeExceptionally(cause);
             return null;
         });
@@ -1526,25 +1497,33 @@ class GitRepository implements Repository {
         }
     }
 
+    @Override
+    public SafeCloseable lockGc() {
+        gcLock.lock();
+        return gcLock::unlock;
+    }
+
     @Override
     public Revision lastGcRevision() {
         return gcRevision.lastRevision();
     }
 
-    private void notifyWatchers(Revision newRevision, List<DiffEntry> diffEntries) {
+    private static List<String> changedPaths(List<DiffEntry> diffEntries) {
+        final List<String> paths = new ArrayList<>(diffEntries.size());
         for (DiffEntry entry : diffEntries) {
             switch (entry.getChangeType()) {
                 case ADD:
-                    commitWatchers.notify(newRevision, entry.getNewPath());
+                    paths.add(entry.getNewPath());
                     break;
                 case MODIFY:
                 case DELETE:
-                    commitWatchers.notify(newRevision, entry.getOldPath());
+                    paths.add(entry.getOldPath());
                     break;
                 default:
                     throw new Error();
             }
         }
+        return paths;
     }
 
     private Revision cachedHeadRevision() {
@@ -1596,16 +1575,21 @@ class GitRepository implements Repository {
         revWalk.setRewriteParents(false);
     }
 
+    /**
+     * Prevents this repository from being closed until {@link #readUnlock()} is called. Note that this method
+     * does not wait for a pending commit. A reader must not access the revisions newer than the head revision
+     * it normalized its revisions against, which is guaranteed by {@link #normalizeNow(Revision)}.
+     */
     private void readLock() {
-        rwLock.readLock().lock();
+        closeLock.readLock().lock();
         if (closePending.get() != null) {
-            rwLock.readLock().unlock();
+            closeLock.readLock().unlock();
             throw closePending.get().get();
         }
     }
 
     private void readUnlock() {
-        rwLock.readLock().unlock();
+        closeLock.readLock().unlock();
     }
 
     @VisibleForTesting
@@ -1640,7 +1624,8 @@ class GitRepository implements Repository {
         return false;
     }
 
-    private void writeUnLock() {
+    @VisibleForTesting
+    void writeUnLock() {
         try {
             rwLock.writeLock().unlock();
         } finally {
@@ -1764,63 +1749,4 @@ class GitRepository implements Repository {
             this.diffEntries = diffEntries;
         }
     }
-
-    // PathEdit implementations which is used when applying changes.
-
-    private static final class InsertText extends PathEdit {
-        private final ObjectInserter inserter;
-        private final String text;
-
-        InsertText(String entryPath, ObjectInserter inserter, String text) {
-            super(entryPath);
-            this.inserter = inserter;
-            this.text = text;
-        }
-
-        @Override
-        public void apply(DirCacheEntry ent) {
-            try {
-                ent.setObjectId(inserter.insert(Constants.OBJ_BLOB, text.getBytes(UTF_8)));
-                ent.setFileMode(FileMode.REGULAR_FILE);
-            } catch (IOException e) {
-                throw new StorageException("failed to create a new text blob", e);
-            }
-        }
-    }
-
-    private static final class InsertJson extends PathEdit {
-        private final ObjectInserter inserter;
-        private final JsonNode jsonNode;
-
-        InsertJson(String entryPath, ObjectInserter inserter, JsonNode jsonNode) {
-            super(entryPath);
-            this.inserter = inserter;
-            this.jsonNode = jsonNode;
-        }
-
-        @Override
-        public void apply(DirCacheEntry ent) {
-            try {
-                ent.setObjectId(inserter.insert(Constants.OBJ_BLOB, Jackson.writeValueAsBytes(jsonNode)));
-                ent.setFileMode(FileMode.REGULAR_FILE);
-            } catch (IOException e) {
-                throw new StorageException("failed to create a new JSON blob", e);
-            }
-        }
-    }
-
-    private static final class CopyOldEntry extends PathEdit {
-        private final DirCacheEntry oldEntry;
-
-        CopyOldEntry(String entryPath, DirCacheEntry oldEntry) {
-            super(entryPath);
-            this.oldEntry = oldEntry;
-        }
-
-        @Override
-        public void apply(DirCacheEntry ent) {
-            ent.setFileMode(oldEntry.getFileMode());
-            ent.setObjectId(oldEntry.getObjectId());
-        }
-    }
 }
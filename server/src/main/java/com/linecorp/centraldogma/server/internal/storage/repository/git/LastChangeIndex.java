@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.storage.repository.git;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An in-memory index of the revisions at which the files and their parent directories were changed
+ * most recently. It allows {@link GitRepository} to tell whether any file matching a path pattern was
+ * changed since a certain revision without comparing two trees.
+ *
+ * <p>The index covers only the commits made after the repository was opened, and it remembers the
+ * changed paths of the last {@value #MAX_REVISIONS} revisions at most. A query about an older revision
+ * is answered with {@link #UNKNOWN}, so that the caller can fall back to a tree comparison.
+ *
+ * <p>{@link #add(int, Collection)} must be called by a single writer before the new revision becomes
+ * visible to the readers.
+ */
+final class LastChangeIndex {
+
+    /**
+     * Returned by {@link #find(int, int, PathPatternFilter)} when this index does not cover the revision.
+     */
+    static final int UNKNOWN = -1;
+
+    /**
+     * Returned by {@link #find(int, int, PathPatternFilter)} when there were no matching changes.
+     */
+    static final int NO_CHANGE = 0;
+
+    static final int MAX_REVISIONS = 4096;
+
+    /**
+     * The revision at which a path was changed most recently, keyed by a file path (e.g. {@code "a/b.json"})
+     * or a directory path (e.g. {@code "a/"}). The root directory is denoted by an empty string.
+     */
+    private final Map<String, Integer> lastChanges = new ConcurrentHashMap<>();
+
+    /**
+     * The paths changed at each revision.
+     */
+    private final ConcurrentSkipListMap<Integer, String[]> changedPaths = new ConcurrentSkipListMap<>();
+
+    /**
+     * The revision since which this index knows all changes. {@link Integer#MAX_VALUE} if not initialized.
+     */
+    private volatile int baseRevision = Integer.MAX_VALUE;
+
+    void init(int headRevision) {
+        baseRevision = headRevision;
+    }
+
+    void add(int revision, Collection<String> paths) {
+        if (revision <= baseRevision) {
+            // Not initialized yet.
+            return;
+        }
+
+        final Integer boxedRevision = revision;
+        for (String path : paths) {
+            lastChanges.put(path, boxedRevision);
+            for (int i = path.lastIndexOf('/'); i >= 0; i = path.lastIndexOf('/', i - 1)) {
+                lastChanges.put(path.substring(0, i + 1), boxedRevision);
+            }
+        }
+        lastChanges.put("", boxedRevision);
+        changedPaths.put(boxedRevision, paths.toArray(new String[0]));
+
+        final int oldestRevision = changedPaths.firstKey();
+        if (revision - oldestRevision >= MAX_REVISIONS) {
+            // Update the base revision before removing the entry, so that a concurrent find() notices
+            // that the entry it may have missed is gone.
+            baseRevision = oldestRevision;
+            changedPaths.remove(oldestRevision);
+        }
+    }
+
+    /**
+     * Finds the latest revision in {@code (from, to]} which changed the files matching the specified
+     * {@link PathPatternFilter}.
+     *
+     * @return the found revision, {@link #NO_CHANGE} if there were no matching changes, or
+     *         {@link #UNKNOWN} if this index does not cover {@code from}
+     */
+    int find(int from, int to, PathPatternFilter filter) {
+        if (from < baseRevision) {
+            return UNKNOWN;
+        }
+
+        if (!mayHaveChanged(from, filter)) {
+            // The parent directories of the matching files have not been changed since 'from'.
+            return NO_CHANGE;
+        }
+
+        int found = NO_CHANGE;
+        loop:
+        for (Entry<Integer, String[]> e : changedPaths.subMap(from, false, to, true)
+                                                      .descendingMap().entrySet()) {
+            for (String path : e.getValue()) {
+                if (filter.matches(path)) {
+                    found = e.getKey();
+                    break loop;
+                }
+            }
+        }
+
+        if (from < baseRevision) {
+            // Some revisions were evicted while we were looking up.
+            return UNKNOWN;
+        }
+        return found;
+    }
+
+    /**
+     * Returns {@code false} if none of the longest directory prefixes (or file paths, if a pattern has
+     * no wildcards) of the specified {@link PathPatternFilter} have been changed since {@code from}.
+     */
+    private boolean mayHaveChanged(int from, PathPatternFilter filter) {
+        if (filter.matchesAll()) {
+            return changedSince(from, "");
+        }
+
+        for (String pattern : filter.pathPatterns()) {
+            final int wildcardIdx = pattern.indexOf('*');
+            final String key;
+            if (wildcardIdx < 0) {
+                key = pattern.substring(1);
+            } else {
+                key = pattern.substring(1, pattern.lastIndexOf('/', wildcardIdx) + 1);
+            }
+            if (changedSince(from, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean changedSince(int from, String key) {
+        final Integer lastChange = lastChanges.get(key);
+        return lastChange != null && lastChange > from;
+    }
+}
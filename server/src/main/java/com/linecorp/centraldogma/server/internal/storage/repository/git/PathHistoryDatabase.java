@@ -0,0 +1,486 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.storage.repository.git;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_CORE_SECTION;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.CountingInputStream;
+
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.server.storage.StorageException;
+
+/**
+ * Simple file-based database of the paths changed by each {@link Revision}, which is also kept in the
+ * heap as a path-to-revisions index so that the history of a path pattern can be retrieved without
+ * comparing the trees of every commit.
+ *
+ * <h3>File layout</h3>
+ *
+ * <pre>{@code
+ * database = record*
+ * record = revision numPaths path*
+ * revision = 32-bit signed big-endian integer (4 bytes)
+ * numPaths = 32-bit signed big-endian integer (4 bytes)
+ * path = the path of a changed file without the leading '/', as written by DataOutput.writeUTF()
+ * }</pre>
+ *
+ * <p>Records are appended in the order of {@link Revision}, starting from 1. A trailing record which does
+ * not follow this order or which was written partially is discarded when the database is opened, and
+ * the missing records are rebuilt from the Git repository by {@link #update(Repository, CommitIdDatabase)}.
+ *
+ * <p>{@link #put(Revision, Collection)} must be called by a single writer.
+ */
+final class PathHistoryDatabase implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PathHistoryDatabase.class);
+
+    private static final int MIN_CAPACITY = 4;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean fsync;
+    private long size;
+
+    /**
+     * The revisions which changed a file, keyed by the path of the file.
+     */
+    private final ConcurrentSkipListMap<String, RevisionList> index = new ConcurrentSkipListMap<>();
+
+    /**
+     * The revisions which changed at least one file.
+     */
+    private final RevisionList nonEmptyRevisions = new RevisionList();
+
+    @Nullable
+    private volatile Revision headRevision;
+
+    PathHistoryDatabase(Repository repo) {
+        // Enable fsync only when the Git repository has been configured so, like CommitIdDatabase does.
+        this(repo.getDirectory(), repo.getConfig().getBoolean(CONFIG_CORE_SECTION, "fsyncObjectFiles", false));
+    }
+
+    @VisibleForTesting
+    PathHistoryDatabase(File rootDir) {
+        this(rootDir, false);
+    }
+
+    private PathHistoryDatabase(File rootDir, boolean fsync) {
+        path = new File(rootDir, "path_history.dat").toPath();
+        try {
+            channel = FileChannel.open(path,
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new StorageException("failed to open a path history database: " + path, e);
+        }
+
+        this.fsync = fsync;
+        boolean success = false;
+        try {
+            load();
+            success = true;
+        } finally {
+            if (!success) {
+                close();
+            }
+        }
+    }
+
+    private void load() {
+        final long fileSize;
+        try {
+            fileSize = channel.size();
+        } catch (IOException e) {
+            throw new StorageException("failed to get the file length: " + path, e);
+        }
+
+        long validSize = 0;
+        int lastRevision = 0;
+        final List<String> paths = new ArrayList<>();
+        try {
+            // Note that we do not close the stream because it closes the channel as well.
+            final CountingInputStream countingIn = new CountingInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel.position(0)), 65536));
+            final DataInputStream in = new DataInputStream(countingIn);
+            while (countingIn.getCount() < fileSize) {
+                final int revision = in.readInt();
+                if (revision != lastRevision + 1) {
+                    logger.warn("Found a mismatching revision in the path history database: {} " +
+                                "(actual: {}, expected: {})", path, revision, lastRevision + 1);
+                    break;
+                }
+
+                final int numPaths = in.readInt();
+                if (numPaths < 0) {
+                    logger.warn("Found an invalid number of paths in the path history database: {} ({})",
+                                path, numPaths);
+                    break;
+                }
+
+                paths.clear();
+                for (int i = 0; i < numPaths; i++) {
+                    paths.add(in.readUTF());
+                }
+
+                addToIndex(revision, paths);
+                lastRevision = revision;
+                validSize = countingIn.getCount();
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            logger.warn("Found a partially written record in the path history database: {}", path);
+        } catch (IOException e) {
+            throw new StorageException("failed to read the path history database: " + path, e);
+        }
+
+        if (validSize != fileSize) {
+            try {
+                channel.truncate(validSize);
+            } catch (IOException e) {
+                throw new StorageException("failed to truncate the path history database: " + path, e);
+            }
+        }
+
+        size = validSize;
+        headRevision = lastRevision > 0 ? new Revision(lastRevision) : null;
+    }
+
+    @Nullable
+    Revision headRevision() {
+        return headRevision;
+    }
+
+    /**
+     * Appends the paths changed by the specified {@link Revision}.
+     *
+     * @param changedPaths the paths of the changed files without the leading {@code '/'}
+     */
+    void put(Revision revision, Collection<String> changedPaths) {
+        put(revision, changedPaths, true);
+    }
+
+    private synchronized void put(Revision revision, Collection<String> changedPaths, boolean safeMode) {
+        final Revision headRevision = this.headRevision;
+        final Revision expected = headRevision != null ? headRevision.forward(1) : Revision.INIT;
+        checkState(revision.equals(expected), "incorrect revision: %s (expected: %s)", revision, expected);
+
+        // Build a record.
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream(8 + changedPaths.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            out.writeInt(revision.major());
+            out.writeInt(changedPaths.size());
+            for (String p : changedPaths) {
+                out.writeUTF(p);
+            }
+        } catch (IOException e) {
+            throw new StorageException("failed to build a path history record: " + revision, e);
+        }
+
+        // Append the record to the file.
+        final ByteBuffer buf = ByteBuffer.wrap(bout.toByteArray());
+        long pos = size;
+        try {
+            do {
+                pos += channel.write(buf, pos);
+            } while (buf.hasRemaining());
+
+            if (safeMode && fsync) {
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            throw new StorageException("failed to update the path history database: " + path, e);
+        }
+        size = pos;
+
+        addToIndex(revision.major(), changedPaths);
+        this.headRevision = revision;
+    }
+
+    private void addToIndex(int revision, Collection<String> changedPaths) {
+        if (changedPaths.isEmpty()) {
+            return;
+        }
+
+        for (String p : changedPaths) {
+            index.computeIfAbsent(p, unused -> new RevisionList()).add(revision);
+        }
+        nonEmptyRevisions.add(revision);
+    }
+
+    /**
+     * Finds the revisions between {@code from} and {@code to} (inclusive) which changed the files matching
+     * the specified {@link PathPatternFilter}.
+     *
+     * @return the found revisions in descending order, at most {@code maxRevisions}
+     */
+    int[] find(Revision from, Revision to, PathPatternFilter filter, int maxRevisions) {
+        checkArgument(!from.isRelative() && !to.isRelative(),
+                      "from: %s, to: %s (expected: absolute revisions)", from, to);
+        final int minRevision = Math.min(from.major(), to.major());
+        final int maxRevision = Math.max(from.major(), to.major());
+
+        if (filter.matchesAll()) {
+            return merge(Collections.singletonList(nonEmptyRevisions), minRevision, maxRevision, maxRevisions);
+        }
+
+        // Collect the revision lists of the matching paths, narrowing down the candidate paths with
+        // the literal prefixes of the path patterns.
+        final Map<String, RevisionList> candidates = new HashMap<>();
+        for (String pattern : filter.pathPatterns()) {
+            final int wildcardIdx = pattern.indexOf('*');
+            final String prefix = pattern.substring(1, wildcardIdx < 0 ? pattern.length() : wildcardIdx);
+            for (Map.Entry<String, RevisionList> e : index.tailMap(prefix).entrySet()) {
+                final String p = e.getKey();
+                if (!p.startsWith(prefix)) {
+                    break;
+                }
+                if (filter.matches(p)) {
+                    candidates.put(p, e.getValue());
+                }
+            }
+        }
+
+        return merge(candidates.values(), minRevision, maxRevision, maxRevisions);
+    }
+
+    private static int[] merge(Collection<RevisionList> lists, int minRevision, int maxRevision,
+                               int maxRevisions) {
+        // Iterate each list backwards from the largest revision <= maxRevision.
+        final PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, lists.size()));
+        for (RevisionList list : lists) {
+            final Cursor cursor = new Cursor(list, maxRevision);
+            if (cursor.revision() >= minRevision) {
+                queue.add(cursor);
+            }
+        }
+
+        int[] result = new int[Math.min(maxRevisions, 64)];
+        int numRevisions = 0;
+        int lastRevision = Integer.MAX_VALUE;
+        while (numRevisions < maxRevisions) {
+            final Cursor cursor = queue.poll();
+            if (cursor == null) {
+                break;
+            }
+
+            final int revision = cursor.revision();
+            if (revision != lastRevision) {
+                if (numRevisions == result.length) {
+                    result = Arrays.copyOf(result, Math.min(maxRevisions, result.length * 2));
+                }
+                result[numRevisions++] = revision;
+                lastRevision = revision;
+            }
+
+            if (cursor.next() && cursor.revision() >= minRevision) {
+                queue.add(cursor);
+            }
+        }
+
+        return numRevisions == result.length ? result : Arrays.copyOf(result, numRevisions);
+    }
+
+    /**
+     * Appends the records of the revisions which are in the specified Git repository but not in this
+     * database yet.
+     */
+    void update(Repository gitRepo, CommitIdDatabase commitIdDatabase) {
+        final Revision gitHeadRevision = commitIdDatabase.headRevision();
+        if (gitHeadRevision == null) {
+            return;
+        }
+
+        Revision headRevision = this.headRevision;
+        if (headRevision != null && headRevision.major() > gitHeadRevision.major()) {
+            logger.warn("The path history database is ahead of the Git repository: {} " +
+                        "(database: {}, repository: {})", path, headRevision, gitHeadRevision);
+            clear();
+            headRevision = null;
+        }
+
+        final int startRevision = headRevision != null ? headRevision.major() + 1 : 1;
+        final int endRevision = gitHeadRevision.major();
+        if (startRevision > endRevision) {
+            return;
+        }
+
+        logger.info("Updating the path history database from revision {} to {} ..",
+                    startRevision, endRevision);
+
+        try (RevWalk revWalk = new RevWalk(gitRepo);
+             TreeWalk treeWalk = new TreeWalk(gitRepo)) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+
+            ObjectId prevTreeId = null;
+            if (startRevision > 1) {
+                prevTreeId = revWalk.parseCommit(
+                        commitIdDatabase.get(new Revision(startRevision - 1))).getTree().copy();
+            }
+
+            final List<String> changedPaths = new ArrayList<>();
+            for (int i = startRevision; i <= endRevision; i++) {
+                final Revision revision = new Revision(i);
+                final ObjectId treeId =
+                        revWalk.parseCommit(commitIdDatabase.get(revision)).getTree().copy();
+
+                treeWalk.reset();
+                if (prevTreeId != null) {
+                    treeWalk.addTree(prevTreeId);
+                } else {
+                    treeWalk.addTree(new EmptyTreeIterator());
+                }
+                treeWalk.addTree(treeId);
+
+                changedPaths.clear();
+                while (treeWalk.next()) {
+                    changedPaths.add(treeWalk.getPathString());
+                }
+
+                put(revision, changedPaths, false);
+                prevTreeId = treeId;
+
+                // Release the parsed objects to reduce the memory usage.
+                if (i % 1024 == 0) {
+                    revWalk.dispose();
+                }
+            }
+
+            if (fsync) {
+                channel.force(true);
+            }
+        } catch (StorageException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StorageException("failed to update the path history database: " + path, e);
+        }
+
+        logger.info("Updated the path history database.");
+    }
+
+    private synchronized void clear() {
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new StorageException("failed to drop the path history database: " + path, e);
+        }
+        size = 0;
+        index.clear();
+        nonEmptyRevisions.clear();
+        headRevision = null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the path history database: {}", path, e);
+        }
+    }
+
+    /**
+     * An ascending list of revisions which is appended by a single writer and read by many readers.
+     */
+    private static final class RevisionList {
+
+        private volatile int[] revisions = new int[MIN_CAPACITY];
+        private volatile int size;
+
+        void add(int revision) {
+            final int size = this.size;
+            int[] revisions = this.revisions;
+            if (size == revisions.length) {
+                revisions = Arrays.copyOf(revisions, size * 2);
+            }
+            revisions[size] = revision;
+            // Publish the new array before the new size, so that a reader who sees the new size
+            // also sees the new array.
+            this.revisions = revisions;
+            this.size = size + 1;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final int[] revisions;
+        private int index;
+
+        Cursor(RevisionList list, int maxRevision) {
+            final int size = list.size;
+            revisions = list.revisions;
+
+            // Find the last revision which is equal to or less than maxRevision.
+            final int idx = Arrays.binarySearch(revisions, 0, size, maxRevision);
+            index = idx >= 0 ? idx : -idx - 2;
+        }
+
+        int revision() {
+            return index >= 0 ? revisions[index] : Integer.MIN_VALUE;
+        }
+
+        boolean next() {
+            return --index >= 0;
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            // Descending order
+            return Integer.compare(o.revision(), revision());
+        }
+    }
+}
@@ -23,9 +23,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
+import com.google.common.collect.ImmutableList;
+
 import com.linecorp.centraldogma.server.storage.repository.Repository;
 
 final class PathPatternFilter extends TreeFilter {
@@ -49,14 +53,24 @@ final class PathPatternFilter extends TreeFilter {
     }
 
     private final Pattern[] pathPatterns;
+    private final List<String> normalizedPathPatterns;
     private final String pathPattern;
 
+    /**
+     * The longest directory paths without wildcards which contain all the files matching the path patterns,
+     * e.g. {@code "a/b/"} for {@code "/a/b/*.json"}. {@code null} if any pattern may match a file in any
+     * directory.
+     */
+    @Nullable
+    private final String[] directoryPrefixes;
+
     private PathPatternFilter(String pathPattern) {
         validatePathPattern(pathPattern, "pathPattern");
 
         final String[] pathPatterns = SPLIT.split(pathPattern);
         final StringBuilder pathPatternBuf = new StringBuilder(pathPattern.length());
         final List<Pattern> compiledPathPatterns = new ArrayList<>(pathPatterns.length);
+        final ImmutableList.Builder<String> normalizedPathPatterns = ImmutableList.builder();
         boolean matchAll = false;
         for (String p: pathPatterns) {
             if (Repository.ALL_PATH.equals(p)) {
@@ -70,22 +84,43 @@ final class PathPatternFilter extends TreeFilter {
 
             final String normalized = normalize(p);
             compiledPathPatterns.add(compile(normalized));
+            normalizedPathPatterns.add(normalized);
             pathPatternBuf.append(normalized).append(',');
         }
 
         if (matchAll) {
             this.pathPatterns = null;
+            this.normalizedPathPatterns = ImmutableList.of();
             this.pathPattern = "/**";
+            directoryPrefixes = null;
         } else {
             if (compiledPathPatterns.isEmpty()) {
                 throw new IllegalArgumentException("pathPattern is empty.");
             }
 
             this.pathPatterns = compiledPathPatterns.toArray(new Pattern[compiledPathPatterns.size()]);
+            this.normalizedPathPatterns = normalizedPathPatterns.build();
             this.pathPattern = pathPatternBuf.substring(0, pathPatternBuf.length() - 1);
+            directoryPrefixes = directoryPrefixes(this.normalizedPathPatterns);
         }
     }
 
+    @Nullable
+    private static String[] directoryPrefixes(List<String> normalizedPathPatterns) {
+        final String[] prefixes = new String[normalizedPathPatterns.size()];
+        for (int i = 0; i < prefixes.length; i++) {
+            final String p = normalizedPathPatterns.get(i);
+            final int wildcardIdx = p.indexOf('*');
+            final int end = p.lastIndexOf('/', wildcardIdx < 0 ? p.length() - 1 : wildcardIdx);
+            if (end <= 0) {
+                // The pattern may match a file in the root directory, e.g. '/*.json' or '/**/a.json'.
+                return null;
+            }
+            prefixes[i] = p.substring(1, end + 1);
+        }
+        return prefixes;
+    }
+
     private static String normalize(String p) {
         final String normalized;
         if (p.charAt(0) != '/') {
@@ -201,12 +236,37 @@ final class PathPatternFilter extends TreeFilter {
     @Override
     public boolean include(TreeWalk walker) {
         if (walker.isSubtree()) {
-            return true;
+            return mayContainMatches(walker);
         }
 
         return matches(walker);
     }
 
+    /**
+     * Returns whether this filter can skip the subtrees which never contain a matching file.
+     */
+    boolean hasDirectoryPrefixes() {
+        return directoryPrefixes != null;
+    }
+
+    /**
+     * Returns whether the current subtree of the specified {@link TreeWalk} may contain the files that match
+     * this filter, so that the subtrees which can never contain a matching file are skipped.
+     */
+    boolean mayContainMatches(TreeWalk walker) {
+        if (directoryPrefixes == null) {
+            return true;
+        }
+
+        final String dir = walker.getPathString() + '/';
+        for (String prefix : directoryPrefixes) {
+            if (dir.startsWith(prefix) || prefix.startsWith(dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public boolean matches(TreeWalk walker) {
         if (pathPatterns == null) {
             return true;
@@ -239,6 +299,14 @@ final class PathPatternFilter extends TreeFilter {
         return pathPatterns == null;
     }
 
+    /**
+     * Returns the normalized path patterns which start with {@code '/'},
+     * or an empty list if this filter matches all paths.
+     */
+    List<String> pathPatterns() {
+        return normalizedPathPatterns;
+    }
+
     @Override
     public boolean shouldBeRecursive() {
         return true;
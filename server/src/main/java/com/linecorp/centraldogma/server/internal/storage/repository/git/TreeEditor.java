@@ -0,0 +1,548 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.linecorp.centraldogma.server.internal.storage.repository.git;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Applies file-level edits on top of a Git tree. Unlike a {@code DirCache}, which needs to load every entry
+ * of the base tree, this class loads only the tree objects along the edited paths and reuses the
+ * {@link ObjectId}s of the untouched subtrees when writing the new tree. It also keeps track of the original
+ * state of the edited paths, so that the list of {@link DiffEntry}s can be computed without comparing the
+ * two trees.
+ */
+final class TreeEditor {
+
+    private static final AbbreviatedObjectId ZERO_ID = AbbreviatedObjectId.fromObjectId(ObjectId.zeroId());
+
+    /**
+     * A placeholder which denotes that a path did not exist in the base tree.
+     */
+    private static final FileNode MISSING = new FileNode("", FileMode.MISSING, ObjectId.zeroId());
+
+    private final ObjectReader reader;
+    private final DirNode root;
+
+    /**
+     * The original state of the edited paths, keyed by their paths.
+     */
+    private final Map<String, FileNode> originalFiles = new HashMap<>();
+
+    TreeEditor(ObjectReader reader, @Nullable ObjectId baseTreeId) {
+        this.reader = requireNonNull(reader, "reader");
+        root = new DirNode("", baseTreeId);
+    }
+
+    /**
+     * Returns the {@link ObjectId} of the file at the specified {@code path}.
+     *
+     * @return the {@link ObjectId} of the file, or {@code null} if there's no file at the {@code path}.
+     */
+    @Nullable
+    ObjectId get(String path) throws IOException {
+        final FileNode file = findFile(path);
+        return file != null ? file.id : null;
+    }
+
+    /**
+     * Returns whether there's a non-empty directory at the specified {@code path}.
+     */
+    boolean isDirectory(String path) throws IOException {
+        final String[] segments = split(path);
+        if (segments.length == 0) {
+            return false;
+        }
+        final List<DirNode> dirs = lookupParents(segments);
+        if (dirs == null) {
+            return false;
+        }
+        final Node node = dirs.get(dirs.size() - 1).children(reader).get(segments[segments.length - 1]);
+        return node instanceof DirNode && !((DirNode) node).isEmpty(reader);
+    }
+
+    /**
+     * Adds or replaces the file at the specified {@code path}. Any file or directory which conflicts with
+     * the new file is removed.
+     */
+    void put(String path, ObjectId id) throws IOException {
+        put(path, FileMode.REGULAR_FILE, id);
+    }
+
+    private void put(String path, FileMode mode, ObjectId id) throws IOException {
+        final String[] segments = split(path);
+        if (segments.length == 0) {
+            throw new IllegalArgumentException("path: " + path + " (expected: a file path)");
+        }
+
+        DirNode dir = root;
+        dir.dirty = true;
+        final StringBuilder buf = new StringBuilder(path.length());
+        for (int i = 0; i < segments.length - 1; i++) {
+            final String name = segments[i];
+            buf.append(name);
+            final Map<String, Node> children = dir.children(reader);
+            Node child = children.get(name);
+            if (!(child instanceof DirNode)) {
+                if (child != null) {
+                    // Replace the file with a new directory.
+                    recordOriginal(buf.toString(), (FileNode) child);
+                }
+                child = new DirNode(name, null);
+                children.put(name, child);
+            }
+            dir = (DirNode) child;
+            dir.dirty = true;
+            buf.append('/');
+        }
+
+        final String name = segments[segments.length - 1];
+        final Map<String, Node> children = dir.children(reader);
+        final Node oldNode = children.get(name);
+        if (oldNode instanceof DirNode) {
+            // Replace the directory with a new file.
+            recordRemovals(path + '/', (DirNode) oldNode);
+            recordOriginal(path, null);
+        } else {
+            recordOriginal(path, (FileNode) oldNode);
+        }
+        children.put(name, new FileNode(name, mode, id));
+    }
+
+    /**
+     * Removes the file at the specified {@code path}.
+     *
+     * @return {@code true} if the file has been removed, or {@code false} if there's no file at the
+     *         {@code path}.
+     */
+    boolean remove(String path) throws IOException {
+        final String[] segments = split(path);
+        if (segments.length == 0) {
+            return false;
+        }
+        final List<DirNode> dirs = lookupParents(segments);
+        if (dirs == null) {
+            return false;
+        }
+
+        final String name = segments[segments.length - 1];
+        final Map<String, Node> children = dirs.get(dirs.size() - 1).children(reader);
+        final Node node = children.get(name);
+        if (!(node instanceof FileNode)) {
+            return false;
+        }
+
+        recordOriginal(path, (FileNode) node);
+        children.remove(name);
+        markDirty(dirs);
+        return true;
+    }
+
+    /**
+     * Removes the directory at the specified {@code path} recursively.
+     *
+     * @return {@code true} if any files have been removed, or {@code false} if there's no non-empty
+     *         directory at the {@code path}.
+     */
+    boolean removeDirectory(String path) throws IOException {
+        return removeDirectory(path, null);
+    }
+
+    private boolean removeDirectory(String path, @Nullable Map<String, FileNode> removed) throws IOException {
+        final String[] segments = split(path);
+        if (segments.length == 0) {
+            return false;
+        }
+        final List<DirNode> dirs = lookupParents(segments);
+        if (dirs == null) {
+            return false;
+        }
+
+        final String name = segments[segments.length - 1];
+        final Map<String, Node> children = dirs.get(dirs.size() - 1).children(reader);
+        final Node node = children.get(name);
+        if (!(node instanceof DirNode)) {
+            return false;
+        }
+
+        final DirNode dir = (DirNode) node;
+        if (dir.isEmpty(reader)) {
+            return false;
+        }
+
+        final String prefix = path.endsWith("/") ? path : path + '/';
+        collectFiles("", dir, (relativePath, file) -> {
+            recordOriginal(prefix + relativePath, file);
+            if (removed != null) {
+                removed.put(relativePath, file);
+            }
+        });
+        children.remove(name);
+        markDirty(dirs);
+        return true;
+    }
+
+    /**
+     * Moves the file at {@code oldPath} to {@code newPath}, preserving its {@link FileMode}.
+     *
+     * @return {@code true} if the file has been moved, or {@code false} if there's no file at the
+     *         {@code oldPath}.
+     */
+    boolean move(String oldPath, String newPath) throws IOException {
+        final FileNode file = findFile(oldPath);
+        if (file == null) {
+            return false;
+        }
+        remove(oldPath);
+        put(newPath, file.mode, file.id);
+        return true;
+    }
+
+    /**
+     * Moves all files under the directory at {@code oldPath} to the directory at {@code newPath}.
+     *
+     * @return {@code true} if any files have been moved, or {@code false} if there's no non-empty directory
+     *         at the {@code oldPath}.
+     */
+    boolean moveDirectory(String oldPath, String newPath) throws IOException {
+        final Map<String, FileNode> removed = new LinkedHashMap<>();
+        if (!removeDirectory(oldPath, removed)) {
+            return false;
+        }
+
+        final String newPrefix = newPath.endsWith("/") ? newPath : newPath + '/';
+        for (Map.Entry<String, FileNode> e : removed.entrySet()) {
+            final FileNode file = e.getValue();
+            put(newPrefix + e.getKey(), file.mode, file.id);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the tree objects which have been modified and returns the {@link ObjectId} of the root tree.
+     */
+    ObjectId writeTree(ObjectInserter inserter) throws IOException {
+        final ObjectId treeId = root.write(reader, inserter);
+        if (treeId != null) {
+            return treeId;
+        }
+
+        // Empty tree
+        return inserter.insert(new TreeFormatter());
+    }
+
+    /**
+     * Returns the list of {@link DiffEntry}s which describe the differences between the base tree and
+     * the current state of this editor, in the same order as a tree walk would yield.
+     */
+    List<DiffEntry> diffEntries() throws IOException {
+        if (originalFiles.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        final List<String> paths = new ArrayList<>(originalFiles.keySet());
+        paths.sort((a, b) -> compare(Constants.encode(a), false, Constants.encode(b), false));
+
+        final ImmutableList.Builder<DiffEntry> builder = ImmutableList.builder();
+        for (String path : paths) {
+            final FileNode oldFile = originalFiles.get(path);
+            final FileNode newFile = findFile(path);
+            if (oldFile == MISSING) {
+                if (newFile != null) {
+                    builder.add(new FileDiffEntry(path, null, newFile));
+                }
+            } else if (newFile == null) {
+                builder.add(new FileDiffEntry(path, oldFile, null));
+            } else if (!oldFile.id.equals(newFile.id) || !oldFile.mode.equals(newFile.mode)) {
+                builder.add(new FileDiffEntry(path, oldFile, newFile));
+            }
+        }
+        return builder.build();
+    }
+
+    private void recordOriginal(String path, @Nullable FileNode file) {
+        originalFiles.putIfAbsent(path, file != null ? file : MISSING);
+    }
+
+    private void recordRemovals(String prefix, DirNode dir) throws IOException {
+        collectFiles("", dir, (relativePath, file) -> recordOriginal(prefix + relativePath, file));
+    }
+
+    private void collectFiles(String prefix, DirNode dir, FileConsumer consumer) throws IOException {
+        final List<Node> children = new ArrayList<>(dir.children(reader).values());
+        children.sort(TreeEditor::compare);
+        for (Node child : children) {
+            if (child instanceof DirNode) {
+                collectFiles(prefix + child.name + '/', (DirNode) child, consumer);
+            } else {
+                consumer.accept(prefix + child.name, (FileNode) child);
+            }
+        }
+    }
+
+    @Nullable
+    private FileNode findFile(String path) throws IOException {
+        final String[] segments = split(path);
+        if (segments.length == 0) {
+            return null;
+        }
+        final List<DirNode> dirs = lookupParents(segments);
+        if (dirs == null) {
+            return null;
+        }
+        final Node node = dirs.get(dirs.size() - 1).children(reader).get(segments[segments.length - 1]);
+        return node instanceof FileNode ? (FileNode) node : null;
+    }
+
+    /**
+     * Returns the list of the {@link DirNode}s from the root to the parent of the last segment,
+     * or {@code null} if any of the parent directories does not exist.
+     */
+    @Nullable
+    private List<DirNode> lookupParents(String[] segments) throws IOException {
+        final List<DirNode> dirs = new ArrayList<>(segments.length);
+        DirNode dir = root;
+        dirs.add(dir);
+        for (int i = 0; i < segments.length - 1; i++) {
+            final Node child = dir.children(reader).get(segments[i]);
+            if (!(child instanceof DirNode)) {
+                return null;
+            }
+            dir = (DirNode) child;
+            dirs.add(dir);
+        }
+        return dirs;
+    }
+
+    private static void markDirty(List<DirNode> dirs) {
+        for (DirNode dir : dirs) {
+            dir.dirty = true;
+        }
+    }
+
+    private static String[] split(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (start == end) {
+            return new String[0];
+        }
+        return path.substring(start, end).split("/");
+    }
+
+    private static int compare(Node a, Node b) {
+        return compare(a.rawName, a instanceof DirNode, b.rawName, b instanceof DirNode);
+    }
+
+    /**
+     * Compares two names in the canonical order of Git tree entries, where the name of a tree is
+     * compared as if it ends with {@code '/'}.
+     */
+    private static int compare(byte[] a, boolean aIsTree, byte[] b, boolean bIsTree) {
+        final int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            final int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        final int lastA = a.length > len ? a[len] & 0xFF : aIsTree ? '/' : 0;
+        final int lastB = b.length > len ? b[len] & 0xFF : bIsTree ? '/' : 0;
+        return lastA - lastB;
+    }
+
+    @FunctionalInterface
+    private interface FileConsumer {
+        void accept(String path, FileNode file) throws IOException;
+    }
+
+    private abstract static class Node {
+        final String name;
+        final byte[] rawName;
+
+        Node(String name) {
+            this.name = name;
+            rawName = Constants.encode(name);
+        }
+    }
+
+    private static final class FileNode extends Node {
+        final FileMode mode;
+        final ObjectId id;
+
+        FileNode(String name, FileMode mode, ObjectId id) {
+            super(name);
+            this.mode = mode;
+            this.id = id;
+        }
+    }
+
+    private static final class DirNode extends Node {
+        /**
+         * The {@link ObjectId} of the tree in the base tree, or {@code null} if this directory is new.
+         */
+        @Nullable
+        private final ObjectId treeId;
+        @Nullable
+        private Map<String, Node> children;
+        boolean dirty;
+
+        DirNode(String name, @Nullable ObjectId treeId) {
+            super(name);
+            this.treeId = treeId;
+        }
+
+        Map<String, Node> children(ObjectReader reader) throws IOException {
+            if (children == null) {
+                children = new HashMap<>();
+                if (treeId != null) {
+                    loadChildren(reader, treeId, children);
+                }
+            }
+            return children;
+        }
+
+        private static void loadChildren(ObjectReader reader, ObjectId treeId,
+                                         Map<String, Node> children) throws IOException {
+            try (TreeWalk treeWalk = new TreeWalk(reader)) {
+                treeWalk.addTree(treeId);
+                treeWalk.setRecursive(false);
+                while (treeWalk.next()) {
+                    final String name = treeWalk.getNameString();
+                    final ObjectId id = treeWalk.getObjectId(0);
+                    if (treeWalk.isSubtree()) {
+                        children.put(name, new DirNode(name, id));
+                    } else {
+                        children.put(name, new FileNode(name, treeWalk.getFileMode(0), id));
+                    }
+                }
+            }
+        }
+
+        boolean isEmpty(ObjectReader reader) throws IOException {
+            if (!dirty) {
+                // An unmodified tree from the base tree is never empty.
+                return treeId == null;
+            }
+
+            for (Node child : children(reader).values()) {
+                if (!(child instanceof DirNode) || !((DirNode) child).isEmpty(reader)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Writes this tree and its modified subtrees.
+         *
+         * @return the {@link ObjectId} of this tree, or {@code null} if this tree is empty.
+         */
+        @Nullable
+        ObjectId write(ObjectReader reader, ObjectInserter inserter) throws IOException {
+            if (!dirty && treeId != null) {
+                return treeId;
+            }
+
+            final List<Node> entries = new ArrayList<>(children(reader).values());
+            if (entries.isEmpty()) {
+                return null;
+            }
+
+            Collections.sort(entries, TreeEditor::compare);
+            final TreeFormatter formatter = new TreeFormatter();
+            int numEntries = 0;
+            for (Node e : entries) {
+                if (e instanceof DirNode) {
+                    final ObjectId subtreeId = ((DirNode) e).write(reader, inserter);
+                    if (subtreeId == null) {
+                        // Git does not record an empty directory.
+                        continue;
+                    }
+                    formatter.append(e.name, FileMode.TREE, subtreeId);
+                } else {
+                    final FileNode file = (FileNode) e;
+                    formatter.append(file.name, file.mode, file.id);
+                }
+                numEntries++;
+            }
+
+            return numEntries != 0 ? inserter.insert(formatter) : null;
+        }
+    }
+
+    /**
+     * A {@link DiffEntry} which is built from the recorded edits rather than from a tree walk.
+     */
+    private static final class FileDiffEntry extends DiffEntry {
+        FileDiffEntry(String path, @Nullable FileNode oldFile, @Nullable FileNode newFile) {
+            assert oldFile != null || newFile != null;
+            if (oldFile == null) {
+                changeType = ChangeType.ADD;
+                oldPath = DEV_NULL;
+                oldMode = FileMode.MISSING;
+                oldId = ZERO_ID;
+            } else {
+                oldPath = path;
+                oldMode = oldFile.mode;
+                oldId = AbbreviatedObjectId.fromObjectId(oldFile.id);
+            }
+
+            if (newFile == null) {
+                changeType = ChangeType.DELETE;
+                newPath = DEV_NULL;
+                newMode = FileMode.MISSING;
+                newId = ZERO_ID;
+            } else {
+                newPath = path;
+                newMode = newFile.mode;
+                newId = AbbreviatedObjectId.fromObjectId(newFile.id);
+            }
+
+            if (oldFile != null && newFile != null) {
+                changeType = ChangeType.MODIFY;
+            }
+        }
+    }
+}
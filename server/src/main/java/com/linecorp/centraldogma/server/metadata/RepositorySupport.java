@@ -25,6 +25,8 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.ImmutableList;
 
 import com.linecorp.armeria.common.util.Exceptions;
@@ -44,10 +46,21 @@ import com.linecorp.centraldogma.server.storage.repository.Repository;
 
 final class RepositorySupport<T> {
 
+    private static final int MAX_CACHED_OBJECTS = 8192;
+
     private final ProjectManager projectManager;
     private final CommandExecutor executor;
     private final Function<Entry<?>, T> entryConverter;
 
+    /**
+     * The converted objects of the latest files, keyed by {@code "<project>/<repository><path>"}.
+     * An object is reused until a newer revision of the file is committed, so that the frequently accessed
+     * files such as {@code /tokens.json} are not converted again for every request.
+     * The converted objects are shared and thus must not be modified.
+     */
+    private final Cache<String, CachedObject<T>> cache =
+            Caffeine.newBuilder().maximumSize(MAX_CACHED_OBJECTS).build();
+
     RepositorySupport(ProjectManager projectManager, CommandExecutor executor,
                       Function<Entry<?>, T> entryConverter) {
         this.projectManager = requireNonNull(projectManager, "projectManager");
@@ -76,7 +89,50 @@ final class RepositorySupport<T> {
     private CompletableFuture<HolderWithRevision<T>> fetch(Repository repository, String path) {
         requireNonNull(path, "path");
         final Revision revision = normalize(repository);
-        return fetch(repository, path, revision);
+        final String cacheKey = repository.parent().name() + '/' + repository.name() + path;
+        final CachedObject<T> cached = cache.getIfPresent(cacheKey);
+        if (cached == null || cached.repository != repository) {
+            return fetchAndCache(repository, path, revision, cacheKey);
+        }
+
+        final int cmp = cached.holder.revision().compareTo(revision);
+        if (cmp == 0) {
+            return CompletableFuture.completedFuture(cached.holder);
+        }
+        if (cmp > 0) {
+            // The cached object is newer than the requested revision.
+            return fetch(repository, path, revision);
+        }
+
+        // Reuse the cached object if the file has not been changed since the cached revision.
+        return repository.findLatestRevision(cached.holder.revision(), path).thenCompose(latestRevision -> {
+            if (latestRevision != null) {
+                return fetchAndCache(repository, path, revision, cacheKey);
+            }
+
+            final HolderWithRevision<T> holder = HolderWithRevision.of(cached.holder.object(), revision);
+            updateCache(cacheKey, new CachedObject<>(repository, holder));
+            return CompletableFuture.completedFuture(holder);
+        });
+    }
+
+    private CompletableFuture<HolderWithRevision<T>> fetchAndCache(Repository repository, String path,
+                                                                   Revision revision, String cacheKey) {
+        return fetch(repository, path, revision).thenApply(holder -> {
+            updateCache(cacheKey, new CachedObject<>(repository, holder));
+            return holder;
+        });
+    }
+
+    private void updateCache(String cacheKey, CachedObject<T> newValue) {
+        cache.asMap().merge(cacheKey, newValue, (oldValue, unused) -> {
+            if (oldValue.repository == newValue.repository &&
+                oldValue.holder.revision().compareTo(newValue.holder.revision()) >= 0) {
+                // Do not replace with an older one.
+                return oldValue;
+            }
+            return newValue;
+        });
     }
 
     private CompletableFuture<HolderWithRevision<T>> fetch(Repository repository, String path,
@@ -176,4 +232,14 @@ final class RepositorySupport<T> {
             return Exceptions.throwUnsafely(cause);
         }
     }
+
+    private static final class CachedObject<T> {
+        final Repository repository;
+        final HolderWithRevision<T> holder;
+
+        CachedObject(Repository repository, HolderWithRevision<T> holder) {
+            this.repository = repository;
+            this.holder = holder;
+        }
+    }
 }
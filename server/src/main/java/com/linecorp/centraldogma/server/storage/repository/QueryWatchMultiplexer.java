@@ -0,0 +1,355 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.storage.repository;
+
+import static com.linecorp.armeria.common.util.Functions.voidFunction;
+import static com.linecorp.centraldogma.internal.Util.unsafeCast;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import com.linecorp.armeria.common.util.Exceptions;
+import com.linecorp.centraldogma.common.Entry;
+import com.linecorp.centraldogma.common.Query;
+import com.linecorp.centraldogma.common.Revision;
+
+/**
+ * Multiplexes the {@link Query} watches on the same {@link Repository}, so that the query result is
+ * evaluated only once per revision no matter how many clients are watching the same {@link Query}.
+ *
+ * <p>The watches with the same {@link Repository} and {@link Query} share a single {@link WatchGroup},
+ * which watches the {@link Repository} for the changes in {@link Query#path()}. When a change is found,
+ * the {@link WatchGroup} evaluates the {@link Query} at the new revision and completes the watches whose
+ * last known query result differs from the new one. The {@link WatchGroup} is removed when it has no more
+ * watches.
+ */
+final class QueryWatchMultiplexer {
+
+    private static final CancellationException CANCELLATION_EXCEPTION =
+            Exceptions.clearTrace(new CancellationException("no more watchers"));
+
+    private static final Map<WatchKey, WatchGroup> groups = new ConcurrentHashMap<>();
+
+    static <T> CompletableFuture<Entry<T>> watch(Repository repo, Revision lastKnownRev, Query<T> query) {
+        requireNonNull(repo, "repo");
+        requireNonNull(lastKnownRev, "lastKnownRev");
+        requireNonNull(query, "query");
+
+        final CompletableFuture<Entry<Object>> future = new CompletableFuture<>();
+        final Revision normalizedRev;
+        try {
+            normalizedRev = repo.normalizeNow(lastKnownRev);
+        } catch (Throwable cause) {
+            future.completeExceptionally(cause);
+            return unsafeCast(future);
+        }
+
+        final WatchKey key = new WatchKey(repo, unsafeCast(query));
+        final WatchGroup group = groups.get(key);
+        if (group != null) {
+            // Reuse the query result of the group if it was evaluated at the last known revision,
+            // which is the case for most clients.
+            final Entry<Object> oldResult = group.resultAt(normalizedRev);
+            if (oldResult != null) {
+                add(key, new Waiter(normalizedRev, oldResult, future));
+                return unsafeCast(future);
+            }
+        }
+
+        repo.getOrNull(normalizedRev, key.query)
+            .thenAccept(oldResult -> add(key, new Waiter(normalizedRev, oldResult, future)))
+            .exceptionally(voidFunction(future::completeExceptionally));
+
+        return unsafeCast(future);
+    }
+
+    private static void add(WatchKey key, Waiter waiter) {
+        final WatchGroup[] addedTo = new WatchGroup[1];
+        final boolean[] created = new boolean[1];
+        final Entry<Object>[] changedResult = unsafeCast(new Entry<?>[1]);
+        groups.compute(key, (unused, group) -> {
+            if (group != null) {
+                final AddResult result = group.add(waiter);
+                if (result.added) {
+                    addedTo[0] = group;
+                    return group;
+                }
+                if (result.changedResult != null) {
+                    changedResult[0] = result.changedResult;
+                    return group;
+                }
+                // The group has been closed.
+            }
+
+            final WatchGroup newGroup = new WatchGroup(key, waiter);
+            addedTo[0] = newGroup;
+            created[0] = true;
+            return newGroup;
+        });
+
+        // Complete the future and register the callbacks outside compute(), because the callbacks may
+        // update the map again.
+        if (changedResult[0] != null) {
+            waiter.future.complete(changedResult[0]);
+            return;
+        }
+
+        final WatchGroup group = addedTo[0];
+        waiter.future.whenComplete((res, cause) -> group.remove(waiter));
+        if (created[0]) {
+            group.start();
+        }
+    }
+
+    @VisibleForTesting
+    static int numGroups() {
+        return groups.size();
+    }
+
+    private QueryWatchMultiplexer() {}
+
+    private static final class WatchKey {
+        final Repository repo;
+        final Query<Object> query;
+
+        WatchKey(Repository repo, Query<Object> query) {
+            this.repo = repo;
+            this.query = query;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(repo) * 31 + query.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WatchKey)) {
+                return false;
+            }
+            final WatchKey that = (WatchKey) obj;
+            // IdentityQuery.equals() does not compare the query type.
+            return repo == that.repo && query.type() == that.query.type() && query.equals(that.query);
+        }
+    }
+
+    private static final class Waiter {
+        final Revision lastKnownRevision;
+        @Nullable
+        final Entry<Object> oldResult;
+        final CompletableFuture<Entry<Object>> future;
+
+        Waiter(Revision lastKnownRevision, @Nullable Entry<Object> oldResult,
+               CompletableFuture<Entry<Object>> future) {
+            this.lastKnownRevision = lastKnownRevision;
+            this.oldResult = oldResult;
+            this.future = future;
+        }
+    }
+
+    private static final class AddResult {
+        static final AddResult ADDED = new AddResult(true, null);
+        static final AddResult CLOSED = new AddResult(false, null);
+
+        final boolean added;
+        @Nullable
+        final Entry<Object> changedResult;
+
+        AddResult(boolean added, @Nullable Entry<Object> changedResult) {
+            this.added = added;
+            this.changedResult = changedResult;
+        }
+    }
+
+    private static final class WatchGroup {
+
+        private final WatchKey key;
+        private final Set<Waiter> waiters = new HashSet<>();
+
+        /**
+         * The revision at which {@link #result} was evaluated.
+         */
+        private Revision revision;
+        @Nullable
+        private Entry<Object> result;
+        @Nullable
+        private CompletableFuture<Revision> watchFuture;
+        private boolean closed;
+
+        WatchGroup(WatchKey key, Waiter firstWaiter) {
+            this.key = key;
+            revision = firstWaiter.lastKnownRevision;
+            result = firstWaiter.oldResult;
+            waiters.add(firstWaiter);
+        }
+
+        /**
+         * Returns the query result evaluated at the specified {@link Revision}, or {@code null} if the query
+         * result is unavailable or was not evaluated at the specified {@link Revision}.
+         */
+        @Nullable
+        synchronized Entry<Object> resultAt(Revision revision) {
+            return this.revision.equals(revision) ? result : null;
+        }
+
+        /**
+         * Adds the specified {@link Waiter} unless this group has been closed or the query result has been
+         * changed since the last known revision of the {@link Waiter}.
+         */
+        synchronized AddResult add(Waiter waiter) {
+            if (closed) {
+                return AddResult.CLOSED;
+            }
+
+            if (revision.compareTo(waiter.lastKnownRevision) > 0 && isChanged(waiter.oldResult, result)) {
+                return new AddResult(false, result);
+            }
+
+            waiters.add(waiter);
+            return AddResult.ADDED;
+        }
+
+        void start() {
+            final Revision revision;
+            synchronized (this) {
+                revision = this.revision;
+            }
+            watch(revision);
+        }
+
+        private void watch(Revision lastKnownRev) {
+            final CompletableFuture<Revision> future = key.repo.watch(lastKnownRev, key.query.path());
+            synchronized (this) {
+                if (closed) {
+                    future.completeExceptionally(CANCELLATION_EXCEPTION);
+                    return;
+                }
+                watchFuture = future;
+            }
+
+            future.thenCompose(newRev -> key.repo.getOrNull(newRev, key.query)
+                                                 .thenAccept(newResult -> onChange(newRev, newResult)))
+                  .exceptionally(voidFunction(this::onFailure));
+        }
+
+        private void onChange(Revision newRev, @Nullable Entry<Object> newResult) {
+            final List<Waiter> changedWaiters = new ArrayList<>();
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+
+                revision = newRev;
+                result = newResult;
+                if (newResult != null) {
+                    // Most waiters share the same old result, so compare each distinct old result only once.
+                    final Map<Entry<Object>, Boolean> changedCache = new IdentityHashMap<>();
+                    for (Waiter w : waiters) {
+                        if (newRev.compareTo(w.lastKnownRevision) <= 0) {
+                            // The waiter joined with a revision newer than the one this group watches from.
+                            continue;
+                        }
+
+                        final boolean changed;
+                        if (w.oldResult == null) {
+                            changed = true;
+                        } else {
+                            changed = changedCache.computeIfAbsent(
+                                    w.oldResult, oldResult -> isChanged(oldResult, newResult));
+                        }
+                        if (changed) {
+                            changedWaiters.add(w);
+                        }
+                    }
+                    changedWaiters.forEach(waiters::remove);
+                }
+
+                if (waiters.isEmpty()) {
+                    closed = true;
+                }
+            }
+
+            changedWaiters.forEach(w -> w.future.complete(newResult));
+
+            if (isClosed()) {
+                groups.remove(key, this);
+            } else {
+                // Watch again for more changes.
+                watch(newRev);
+            }
+        }
+
+        private void onFailure(Throwable cause) {
+            final List<Waiter> failedWaiters;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                failedWaiters = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+
+            groups.remove(key, this);
+            final Throwable peeled = Exceptions.peel(cause);
+            failedWaiters.forEach(w -> w.future.completeExceptionally(peeled));
+        }
+
+        void remove(Waiter waiter) {
+            final CompletableFuture<Revision> watchFuture;
+            synchronized (this) {
+                if (!waiters.remove(waiter) || !waiters.isEmpty() || closed) {
+                    return;
+                }
+                closed = true;
+                watchFuture = this.watchFuture;
+            }
+
+            groups.remove(key, this);
+            if (watchFuture != null) {
+                watchFuture.completeExceptionally(CANCELLATION_EXCEPTION);
+            }
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        private static boolean isChanged(@Nullable Entry<Object> oldResult, @Nullable Entry<Object> newResult) {
+            if (newResult == null) {
+                // Entry does not exist; keep waiting for it to be created.
+                return false;
+            }
+            return oldResult == null || !Objects.equals(oldResult.content(), newResult.content());
+        }
+    }
+}
@@ -40,6 +40,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.spotify.futures.CompletableFutures;
 
+import com.linecorp.armeria.common.util.SafeCloseable;
 import com.linecorp.centraldogma.common.Author;
 import com.linecorp.centraldogma.common.CentralDogmaException;
 import com.linecorp.centraldogma.common.Change;
@@ -513,4 +514,11 @@ public interface Repository {
      */
     @Nullable
     Revision lastGcRevision();
+
+    /**
+     * Prevents garbage collection from rewriting the files of this {@link Repository} until the returned
+     * {@link SafeCloseable} is closed. This method blocks until the garbage collection in progress, if any,
+     * is finished.
+     */
+    SafeCloseable lockGc();
 }
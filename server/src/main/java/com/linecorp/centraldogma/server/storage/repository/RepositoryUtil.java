@@ -16,7 +16,6 @@
 
 package com.linecorp.centraldogma.server.storage.repository;
 
-import static com.linecorp.armeria.common.util.Functions.voidFunction;
 import static com.linecorp.centraldogma.common.QueryType.IDENTITY;
 import static com.linecorp.centraldogma.common.QueryType.IDENTITY_JSON;
 import static com.linecorp.centraldogma.common.QueryType.IDENTITY_TEXT;
@@ -25,13 +24,9 @@ import static com.linecorp.centraldogma.internal.Util.unsafeCast;
 import static java.util.Objects.requireNonNull;
 
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
-import javax.annotation.Nullable;
-
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
@@ -59,9 +54,6 @@ import com.linecorp.centraldogma.internal.Jackson;
  */
 final class RepositoryUtil {
 
-    private static final CancellationException CANCELLATION_EXCEPTION =
-            Exceptions.clearTrace(new CancellationException("parent complete"));
-
     static CompletableFuture<MergedEntry<?>> mergeEntries(
             List<CompletableFuture<Entry<?>>> entryFutures, Revision revision,
             MergeQuery<?> query) {
@@ -148,40 +140,12 @@ final class RepositoryUtil {
         }
     }
 
+    /**
+     * Awaits and retrieves the change in the query result of the specified file. The watches with the same
+     * {@link Repository} and {@link Query} are multiplexed by {@link QueryWatchMultiplexer}.
+     */
     static <T> CompletableFuture<Entry<T>> watch(Repository repo, Revision lastKnownRev, Query<T> query) {
-
-        requireNonNull(repo, "repo");
-        requireNonNull(lastKnownRev, "lastKnownRev");
-        requireNonNull(query, "query");
-
-        final Query<Object> castQuery = unsafeCast(query);
-        final CompletableFuture<Entry<Object>> parentFuture = new CompletableFuture<>();
-        repo.getOrNull(lastKnownRev, castQuery)
-            .thenAccept(oldResult -> watch(repo, castQuery, lastKnownRev, oldResult, parentFuture))
-            .exceptionally(voidFunction(parentFuture::completeExceptionally));
-
-        return unsafeCast(parentFuture);
-    }
-
-    private static void watch(Repository repo, Query<Object> query,
-                              Revision lastKnownRev, @Nullable Entry<Object> oldResult,
-                              CompletableFuture<Entry<Object>> parentFuture) {
-
-        final CompletableFuture<Revision> future = repo.watch(lastKnownRev, query.path());
-        parentFuture.whenComplete((res, cause) -> future.completeExceptionally(CANCELLATION_EXCEPTION));
-
-        future.thenCompose(newRev -> repo.getOrNull(newRev, query).thenAccept(newResult -> {
-            if (newResult == null ||
-                oldResult != null && Objects.equals(oldResult.content(), newResult.content())) {
-                // Entry does not exist or did not change; watch again for more changes.
-                if (!parentFuture.isDone()) {
-                    // ... only when the parent future has not been cancelled.
-                    watch(repo, query, newRev, oldResult, parentFuture);
-                }
-            } else {
-                parentFuture.complete(newResult);
-            }
-        })).exceptionally(voidFunction(parentFuture::completeExceptionally));
+        return QueryWatchMultiplexer.watch(repo, lastKnownRev, query);
     }
 
     private RepositoryUtil() {}
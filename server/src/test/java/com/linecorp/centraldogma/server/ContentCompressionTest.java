@@ -22,6 +22,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
 import org.apache.thrift.TException;
@@ -124,4 +125,31 @@ class ContentCompressionTest {
             assertThat(CharStreams.toString(in)).contains(CONTENT);
         }
     }
+
+    @Test
+    void httpPrecompressed() throws Exception {
+        final WebClient client =
+                WebClient.builder("http://127.0.0.1:" + dogma.serverAddress().getPort())
+                         .setHeader(HttpHeaderNames.AUTHORIZATION, "Bearer " + CsrfToken.ANONYMOUS)
+                         .setHeader(HttpHeaderNames.ACCEPT_ENCODING, "gzip, deflate")
+                         .build();
+
+        final String contentPath = HttpApiV1Constants.PROJECTS_PREFIX + '/' + PROJ +
+                                   HttpApiV1Constants.REPOS + '/' + REPO +
+                                   "/contents" + PATH;
+
+        // The second response is served from the cache.
+        for (int i = 0; i < 2; i++) {
+            final AggregatedHttpResponse res = client.get(contentPath).aggregate().join();
+            assertThat(res.status()).isEqualTo(HttpStatus.OK);
+            assertThat(res.headers().get(HttpHeaderNames.CONTENT_ENCODING)).isEqualTo("gzip");
+            assertThat(res.headers().get(HttpHeaderNames.ETAG)).endsWith("-gzip\"");
+
+            final HttpData content = res.content();
+            try (Reader in = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(
+                    content.array(), 0, content.length())), StandardCharsets.UTF_8)) {
+                assertThat(CharStreams.toString(in)).contains(CONTENT);
+            }
+        }
+    }
 }
@@ -35,7 +35,7 @@ class ZooKeeperReplicationConfigTest {
                 6, new ZooKeeperServerConfig("7", 8, 9, 10, /* groupId */ null, /* weight */ 1));
         final ZooKeeperReplicationConfig cfg = new ZooKeeperReplicationConfig(
                 1, servers,
-                "11", ImmutableMap.of("12", "13", "14", "15"), 16, 17, 18, 19);
+                "11", ImmutableMap.of("12", "13", "14", "15"), 16, 17, 18, 19, 20, true);
         assertJsonConversion(cfg, ReplicationConfig.class,
                              '{' +
                              "  \"method\": \"ZOOKEEPER\"," +
@@ -62,7 +62,9 @@ class ZooKeeperReplicationConfigTest {
                              "  \"timeoutMillis\": 16," +
                              "  \"numWorkers\": 17," +
                              "  \"maxLogCount\": 18," +
-                             "  \"minLogAgeMillis\": 19" +
+                             "  \"minLogAgeMillis\": 19," +
+                             "  \"maxGroupCommitSize\": 20," +
+                             "  \"compressLogs\": true" +
                              '}');
     }
 
@@ -95,7 +97,7 @@ class ZooKeeperReplicationConfigTest {
                                                           0, /* groupId */ null, /* weight */ 1),
                             11, new ZooKeeperServerConfig("bar", 200, 201,
                                                           0, /* groupId */ null, /* weight */ 1)),
-                        null, null, null, null, null, null));
+                        null, null, null, null, null, null, null, null));
     }
 
     @Test
@@ -218,6 +220,6 @@ class ZooKeeperReplicationConfigTest {
                                                           0, /* groupId */ 2, /* weight */ 1),
                             13, new ZooKeeperServerConfig("bar-2", 200, 201,
                                                           0, /* groupId */ 2, /* weight */ 3)),
-                        null, null, null, null, null, null));
+                        null, null, null, null, null, null, null, null));
     }
 }
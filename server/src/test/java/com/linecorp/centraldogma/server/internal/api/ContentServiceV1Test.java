@@ -31,14 +31,20 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Strings;
 
 import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.client.WebClientBuilder;
 import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpObject;
+import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.HttpStatus;
 import com.linecorp.armeria.common.MediaType;
 import com.linecorp.armeria.common.RequestHeaders;
@@ -130,6 +136,19 @@ class ContentServiceV1Test {
                 '}');
     }
 
+    @Test
+    void acceptsGzip() {
+        assertThat(ContentServiceV1.acceptsGzip(null)).isFalse();
+        assertThat(ContentServiceV1.acceptsGzip("deflate")).isFalse();
+        assertThat(ContentServiceV1.acceptsGzip("gzip")).isTrue();
+        assertThat(ContentServiceV1.acceptsGzip("deflate, GZIP;q=0.5")).isTrue();
+        assertThat(ContentServiceV1.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(ContentServiceV1.acceptsGzip("gzip; q=0.000")).isFalse();
+        assertThat(ContentServiceV1.acceptsGzip("*")).isTrue();
+        assertThat(ContentServiceV1.acceptsGzip("*, gzip;q=0")).isFalse();
+        assertThat(ContentServiceV1.acceptsGzip("*;q=0, gzip")).isTrue();
+    }
+
     @Nested
     class FilesTest {
 
@@ -383,6 +402,38 @@ class ContentServiceV1Test {
             assertThatJson(actualJson).isEqualTo(expectedJson);
         }
 
+        @Test
+        void getFileWithEntityTag() {
+            final WebClient client = dogma.httpClient();
+            addFooJson(client);
+            final AggregatedHttpResponse res1 = client.get(CONTENTS_PREFIX + "/foo.json").aggregate().join();
+            assertThat(res1.status()).isEqualTo(HttpStatus.OK);
+            final String eTag = res1.headers().get(HttpHeaderNames.ETAG);
+            assertThat(eTag).startsWith("\"2-");
+
+            // Send the entity tag of the content the client has.
+            final RequestHeaders headers =
+                    RequestHeaders.of(HttpMethod.GET, CONTENTS_PREFIX + "/foo.json",
+                                      HttpHeaderNames.IF_NONE_MATCH, eTag);
+            final AggregatedHttpResponse res2 = client.execute(headers).aggregate().join();
+            assertThat(res2.status()).isEqualTo(HttpStatus.NOT_MODIFIED);
+            assertThat(res2.headers().get(HttpHeaderNames.ETAG)).isEqualTo(eTag);
+
+            // A different entity tag.
+            final AggregatedHttpResponse res3 = client.execute(
+                    headers.toBuilder().set(HttpHeaderNames.IF_NONE_MATCH, "\"1-foo\"").build())
+                                                      .aggregate().join();
+            assertThat(res3.status()).isEqualTo(HttpStatus.OK);
+            assertThat(res3.contentUtf8()).isEqualTo(res1.contentUtf8());
+
+            // The entity tag must change when the revision changes.
+            editFooJson(client);
+            final AggregatedHttpResponse res4 = client.execute(headers).aggregate().join();
+            assertThat(res4.status()).isEqualTo(HttpStatus.OK);
+            assertThat(res4.headers().get(HttpHeaderNames.ETAG)).isNotEqualTo(eTag);
+            assertThatJson(res4.contentUtf8()).node("revision").isEqualTo(3);
+        }
+
         @Test
         void getFileWithJsonPath() {
             final WebClient client = dogma.httpClient();
@@ -531,6 +582,42 @@ class ContentServiceV1Test {
             assertThatJson(res2.contentUtf8()).isEqualTo(expectedJson2);
         }
 
+        @Test
+        void listManyFilesWithContent() throws IOException {
+            final WebClient client = dogma.httpClient();
+            final int numFiles = 600;
+            final StringBuilder body = new StringBuilder();
+            body.append("{\"commitMessage\": {\"summary\": \"Add many files\"}, \"changes\": [");
+            for (int i = 0; i < numFiles; i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                body.append("{\"path\": \"/many/").append(i).append(".json\", ")
+                    .append("\"type\": \"UPSERT_JSON\", ")
+                    .append("\"content\": {\"value\": \"").append(Strings.repeat("x", 256)).append("\"}}");
+            }
+            body.append("]}");
+            final RequestHeaders headers = RequestHeaders.of(HttpMethod.POST, CONTENTS_PREFIX,
+                                                             HttpHeaderNames.CONTENT_TYPE, MediaType.JSON);
+            assertThat(client.execute(headers, body.toString()).aggregate().join().status())
+                    .isEqualTo(HttpStatus.OK);
+
+            // The entries are streamed because there are too many of them.
+            final AggregatedHttpResponse res = client.get(CONTENTS_PREFIX + "/many/").aggregate().join();
+            assertThat(res.status()).isEqualTo(HttpStatus.OK);
+            assertThat(res.headers().get(HttpHeaderNames.ETAG)).startsWith("\"2-");
+            final JsonNode entries = Jackson.readTree(res.contentUtf8());
+            assertThat(entries.size()).isEqualTo(numFiles);
+            for (JsonNode entry : entries) {
+                assertThat(entry.get("revision").asInt()).isEqualTo(2);
+                assertThat(entry.get("content").get("value").asText()).hasSize(256);
+            }
+
+            final AggregatedHttpResponse listRes = client.get("/api/v1/projects/myPro/repos/myRepo/list/many/")
+                                                         .aggregate().join();
+            assertThat(Jackson.readTree(listRes.contentUtf8()).size()).isEqualTo(numFiles);
+        }
+
         @Test
         void deleteFile() throws IOException {
             final WebClient client = dogma.httpClient();
@@ -726,6 +813,75 @@ class ContentServiceV1Test {
             assertThatJson(actualJson).isEqualTo(expectedJson);
         }
 
+        @Test
+        void watchMany() {
+            final WebClient client = dogma.httpClient();
+            addFooJson(client);
+            final String body =
+                    '[' +
+                    "   { \"path\": \"/foo.json\", \"jsonPaths\": [\"$.a\"], \"lastKnownRevision\": -1 }," +
+                    "   { \"pathPattern\": \"/a/**\", \"lastKnownRevision\": -1 }" +
+                    ']';
+            final RequestHeaders headers = RequestHeaders.of(HttpMethod.POST,
+                                                             "/api/v1/projects/myPro/repos/myRepo/watch",
+                                                             HttpHeaderNames.CONTENT_TYPE, MediaType.JSON);
+            final CompletableFuture<AggregatedHttpResponse> future =
+                    client.execute(headers, body).aggregate();
+
+            assertThatThrownBy(() -> future.get(500, TimeUnit.MILLISECONDS))
+                    .isExactlyInstanceOf(TimeoutException.class);
+
+            // Only the result of the changed watch is sent.
+            addBarTxt(client);
+            final String expectedJson =
+                    '[' +
+                    "   {" +
+                    "       \"index\": 1," +
+                    "       \"revision\": 3" +
+                    "   }" +
+                    ']';
+            final AggregatedHttpResponse res = future.join();
+            assertThatJson(res.contentUtf8()).isEqualTo(expectedJson);
+        }
+
+        @Test
+        void watchEvents() {
+            final WebClient client = dogma.httpClient();
+            addFooJson(client);
+            final RequestHeaders headers = RequestHeaders.of(HttpMethod.GET,
+                                                             "/api/v1/projects/myPro/repos/myRepo/watch/a/**",
+                                                             HttpHeaderNames.ACCEPT, MediaType.EVENT_STREAM,
+                                                             HttpHeaderNames.of("Last-Event-ID"), "-1");
+            final HttpResponse res = client.execute(headers);
+            final StringBuffer events = new StringBuffer();
+            res.subscribe(new Subscriber<HttpObject>() {
+                @Override
+                public void onSubscribe(Subscription s) {
+                    s.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(HttpObject obj) {
+                    if (obj instanceof HttpData) {
+                        events.append(((HttpData) obj).toStringUtf8());
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {}
+
+                @Override
+                public void onComplete() {}
+            });
+
+            // Only the change of the matching file is sent, and the stream is kept open.
+            addBarTxt(client);
+            await().untilAsserted(() -> assertThat(events.toString())
+                    .isEqualTo("id:3\ndata:{\"revision\":3}\n\n"));
+            assertThat(res.whenComplete()).isNotDone();
+            res.abort();
+        }
+
         @Test
         void listADirectoryWithoutSlash() {
             final WebClient client = dogma.httpClient();
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.linecorp.centraldogma.server.internal.api;
+
+import static com.linecorp.centraldogma.internal.api.v1.HttpApiV1Constants.API_V1_PATH_PREFIX;
+import static com.linecorp.centraldogma.testing.internal.auth.TestAuthMessageUtil.PASSWORD;
+import static com.linecorp.centraldogma.testing.internal.auth.TestAuthMessageUtil.USERNAME;
+import static com.linecorp.centraldogma.testing.internal.auth.TestAuthMessageUtil.login;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.curator.test.InstanceSpec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.auth.OAuth2Token;
+import com.linecorp.centraldogma.internal.Jackson;
+import com.linecorp.centraldogma.internal.api.v1.AccessToken;
+import com.linecorp.centraldogma.server.CentralDogmaBuilder;
+import com.linecorp.centraldogma.server.ZooKeeperReplicationConfig;
+import com.linecorp.centraldogma.server.ZooKeeperServerConfig;
+import com.linecorp.centraldogma.testing.internal.auth.TestAuthProviderFactory;
+import com.linecorp.centraldogma.testing.junit.CentralDogmaExtension;
+
+class ReplicationSnapshotTest {
+
+    private static final String SNAPSHOT_PATH = API_V1_PATH_PREFIX + "replication/snapshot";
+
+    @RegisterExtension
+    static final CentralDogmaExtension dogma = new CentralDogmaExtension() {
+        @Override
+        protected void configure(CentralDogmaBuilder builder) {
+            builder.administrators(USERNAME);
+            builder.authProviderFactory(new TestAuthProviderFactory());
+            builder.replication(new ZooKeeperReplicationConfig(
+                    1, ImmutableMap.of(1, new ZooKeeperServerConfig(
+                            "127.0.0.1", InstanceSpec.getRandomPort(), InstanceSpec.getRandomPort(),
+                            InstanceSpec.getRandomPort(), /* groupId */ null, /* weight */ 1))));
+        }
+    };
+
+    @Test
+    void snapshot() throws Exception {
+        final AggregatedHttpResponse res = adminClient().get(SNAPSHOT_PATH).aggregate().join();
+        assertThat(res.status()).isEqualTo(HttpStatus.OK);
+        assertThat(res.headers().contentType()).isEqualTo(MediaType.ZIP);
+        assertThat(res.headers().get(HttpHeaderNames.CONTENT_DISPOSITION))
+                .startsWith("attachment; filename=\"snapshot-");
+
+        final List<String> entryNames = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(res.content().array()))) {
+            for (ZipEntry e = in.getNextEntry(); e != null; e = in.getNextEntry()) {
+                entryNames.add(e.getName());
+            }
+        }
+        assertThat(entryNames).contains("last_revision")
+                              .noneMatch(name -> name.startsWith("_zookeeper"));
+    }
+
+    @Test
+    void snapshotRequiresAdministrator() throws Exception {
+        // Anonymous user
+        assertThat(dogma.httpClient().get(SNAPSHOT_PATH).aggregate().join().status())
+                .isEqualTo(HttpStatus.UNAUTHORIZED);
+
+        // Non-administrator
+        final HttpRequest request = HttpRequest.builder()
+                                               .post(API_V1_PATH_PREFIX + "tokens")
+                                               .content(MediaType.FORM_DATA,
+                                                        "secret=appToken-user&isAdmin=false&appId=user")
+                                               .build();
+        assertThat(adminClient().execute(request).aggregate().join().status()).isEqualTo(HttpStatus.CREATED);
+        final WebClient userClient = WebClient.builder(dogma.httpClient().uri())
+                                              .auth(OAuth2Token.of("appToken-user"))
+                                              .build();
+        assertThat(userClient.get(SNAPSHOT_PATH).aggregate().join().status())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+    }
+
+    private static WebClient adminClient() throws Exception {
+        final AggregatedHttpResponse res = login(dogma.httpClient(), USERNAME, PASSWORD);
+        assertThat(res.status()).isEqualTo(HttpStatus.OK);
+        final String sessionId = Jackson.readValue(res.content().array(), AccessToken.class).accessToken();
+        return WebClient.builder(dogma.httpClient().uri())
+                        .auth(OAuth2Token.of(sessionId))
+                        .build();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.linecorp.centraldogma.server.internal.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.metric.NoopMeterRegistry;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import com.linecorp.centraldogma.common.Revision;
+
+class WatchEventStreamerTest {
+
+    @Test
+    void closeStreamsWhenServerStops() {
+        final WatchService watchService = new WatchService(NoopMeterRegistry.get());
+        final CompletableFuture<Revision> watch = new CompletableFuture<>();
+        final HttpResponse res = stream(watchService, watch);
+        assertThat(res.whenComplete()).isNotDone();
+
+        // The stream is closed with a comment, and the pending watch is cancelled.
+        watchService.serverStopping();
+        final AggregatedHttpResponse aggregated = res.aggregate().join();
+        assertThat(aggregated.contentUtf8()).isEqualTo(":server is shutting down\n\n");
+        assertThat(watch).isCancelled();
+
+        // A stream opened after the server started to stop is closed right away.
+        final HttpResponse lateRes = stream(watchService, new CompletableFuture<>());
+        assertThat(lateRes.aggregate().join().contentUtf8()).isEqualTo(":server is shutting down\n\n");
+    }
+
+    private static HttpResponse stream(WatchService watchService, CompletableFuture<Revision> watch) {
+        final ServiceRequestContext ctx = ServiceRequestContext.of(HttpRequest.of(HttpMethod.GET, "/"));
+        return WatchEventStreamer.stream(ctx, watchService, Revision.INIT, revision -> watch,
+                                         Function.identity(), Revision::major);
+    }
+}
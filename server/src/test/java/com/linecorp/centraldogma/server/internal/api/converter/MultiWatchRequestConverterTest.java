@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.linecorp.centraldogma.server.internal.api.converter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+import com.linecorp.armeria.common.AggregatedHttpRequest;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.RequestHeaders;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.internal.api.v1.WatchTimeout;
+import com.linecorp.centraldogma.server.internal.api.converter.MultiWatchRequestConverter.MultiWatchRequest;
+
+class MultiWatchRequestConverterTest {
+
+    private static final MultiWatchRequestConverter converter = new MultiWatchRequestConverter();
+
+    @Test
+    void convertMultiWatchRequest() throws Exception {
+        final MultiWatchRequest watchRequest = convert(
+                "[{\"path\":\"/a.json\",\"jsonPaths\":[\"$.a\"],\"lastKnownRevision\":3}," +
+                " {\"pathPattern\":\"/**\",\"lastKnownRevision\":2}]");
+        assertThat(watchRequest.timeoutMillis()).isEqualTo(10000); // 10 seconds
+        assertThat(watchRequest.targets()).hasSize(2);
+        assertThat(watchRequest.targets().get(0).query().path()).isEqualTo("/a.json");
+        assertThat(watchRequest.targets().get(0).lastKnownRevision()).isEqualTo(new Revision(3));
+        assertThat(watchRequest.targets().get(1).pathPattern()).isEqualTo("/**");
+        assertThat(watchRequest.targets().get(1).lastKnownRevision()).isEqualTo(new Revision(2));
+    }
+
+    @Test
+    void rejectTooManyTargets() throws Exception {
+        final StringBuilder buf = new StringBuilder("[");
+        for (int i = 0; i <= WatchTimeout.MAX_MULTI_WATCH_TARGETS; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append("{\"pathPattern\":\"/**\",\"lastKnownRevision\":1}");
+        }
+        buf.append(']');
+        assertThatThrownBy(() -> convert(buf.toString()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("too many watch targets");
+    }
+
+    private static MultiWatchRequest convert(String content) throws Exception {
+        final RequestHeaders headers = RequestHeaders.builder(HttpMethod.POST, "/")
+                                                     .contentType(MediaType.JSON_UTF_8)
+                                                     .set(HttpHeaderNames.PREFER, "wait=10")
+                                                     .build();
+        final AggregatedHttpRequest request = AggregatedHttpRequest.of(headers,
+                                                                       HttpData.ofUtf8(content));
+        final ServiceRequestContext ctx = ServiceRequestContext.of(request.toHttpRequest());
+        return converter.convertRequest(ctx, request, MultiWatchRequest.class, null);
+    }
+}
@@ -48,6 +48,7 @@ final class ClusterBuilder {
     private int numGroups = 1;
     private boolean autoStart = true;
     private QuotaConfig writeQuota;
+    private int maxGroupCommitSize = 1;
 
     ClusterBuilder numReplicas(int numReplicas) {
         this.numReplicas = numReplicas;
@@ -69,6 +70,11 @@ final class ClusterBuilder {
         return this;
     }
 
+    ClusterBuilder maxGroupCommitSize(int maxGroupCommitSize) {
+        this.maxGroupCommitSize = maxGroupCommitSize;
+        return this;
+    }
+
     ClusterBuilder weightMappingFunction(ToIntBiFunction<Integer, Integer> function) {
         requireNonNull(function, "function");
         weightMappingFunction = function;
@@ -124,7 +130,8 @@ final class ClusterBuilder {
 
         final Builder<Replica> builder = ImmutableList.builder();
         for (InstanceSpec spec : specs) {
-            final Replica r = new Replica(spec, servers, commandExecutorSupplier.get(), writeQuota, autoStart);
+            final Replica r = new Replica(spec, servers, commandExecutorSupplier.get(), writeQuota,
+                                          maxGroupCommitSize, autoStart);
             builder.add(r);
         }
 
@@ -37,6 +37,7 @@ import org.apache.curator.test.InstanceSpec;
 
 import com.linecorp.armeria.common.metric.PrometheusMeterRegistries;
 import com.linecorp.centraldogma.common.Author;
+import com.linecorp.centraldogma.internal.Jackson;
 import com.linecorp.centraldogma.server.QuotaConfig;
 import com.linecorp.centraldogma.server.ZooKeeperReplicationConfig;
 import com.linecorp.centraldogma.server.ZooKeeperServerConfig;
@@ -59,14 +60,19 @@ final class Replica {
 
     Replica(InstanceSpec spec, Map<Integer, ZooKeeperServerConfig> servers,
             Function<Command<?>, CompletableFuture<?>> delegate,
-            @Nullable QuotaConfig writeQuota, boolean start) {
+            @Nullable QuotaConfig writeQuota, int maxGroupCommitSize, boolean start) throws Exception {
         this.delegate = delegate;
 
         dataDir = spec.getDataDirectory();
         meterRegistry = PrometheusMeterRegistries.newRegistry();
 
         final int id = spec.getServerId();
-        final ZooKeeperReplicationConfig zkCfg = new ZooKeeperReplicationConfig(id, servers);
+        final ZooKeeperReplicationConfig zkCfg =
+                Jackson.readValue('{' +
+                                  "  \"serverId\": " + id + ',' +
+                                  "  \"servers\": " + Jackson.writeValueAsString(servers) + ',' +
+                                  "  \"maxGroupCommitSize\": " + maxGroupCommitSize +
+                                  '}', ZooKeeperReplicationConfig.class);
 
         commandExecutor = new ZooKeeperCommandExecutor(zkCfg, dataDir, new AbstractCommandExecutor(null, null) {
             @Override
@@ -89,7 +95,7 @@ final class Replica {
             protected <T> CompletableFuture<T> doExecute(Command<T> command) {
                 return (CompletableFuture<T>) delegate.apply(command);
             }
-        }, meterRegistry, mock(ProjectManager.class), writeQuota, null, null);
+        }, meterRegistry, mock(ProjectManager.class), /* purgeWorker */ null, writeQuota, null, null);
         commandExecutor.setMetadataService(mockMetaService());
 
         startFuture = start ? commandExecutor.start() : null;
@@ -122,6 +128,10 @@ final class Replica {
         return Files.isReadable(new File(dataDir, "last_revision").toPath());
     }
 
+    File dataDir() {
+        return dataDir;
+    }
+
     ZooKeeperCommandExecutor commandExecutor() {
         return commandExecutor;
     }
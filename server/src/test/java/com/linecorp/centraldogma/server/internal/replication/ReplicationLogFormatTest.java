@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.replication;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import com.linecorp.centraldogma.common.Author;
+import com.linecorp.centraldogma.common.Change;
+import com.linecorp.centraldogma.common.Markup;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.internal.Jackson;
+import com.linecorp.centraldogma.server.command.Command;
+import com.linecorp.centraldogma.server.command.CommitResult;
+import com.linecorp.centraldogma.server.command.NormalizingPushCommand;
+import com.linecorp.centraldogma.server.command.PushAsIsCommand;
+
+class ReplicationLogFormatTest {
+
+    private static final ReplicationLog<Revision> smallLog = newLog("small");
+    private static final ReplicationLog<Revision> largeLog = newLog(Strings.repeat("large ", 10000));
+
+    @Test
+    void uncompressed() throws Exception {
+        final byte[] encoded = ReplicationLogFormat.encode(largeLog, false);
+        assertThat(encoded).isEqualTo(Jackson.writeValueAsBytes(largeLog));
+        assertThat(ReplicationLogFormat.decode(encoded)).isEqualTo(largeLog);
+    }
+
+    @Test
+    void compressed() throws Exception {
+        final byte[] json = Jackson.writeValueAsBytes(largeLog);
+        final byte[] encoded = ReplicationLogFormat.encode(largeLog, true);
+        assertThat(encoded[0]).isNotEqualTo((byte) '{');
+        assertThat(encoded.length).isLessThan(json.length / 10);
+        assertThat(ReplicationLogFormat.decode(encoded)).isEqualTo(largeLog);
+    }
+
+    @Test
+    void smallLogIsNotCompressed() throws Exception {
+        final byte[] encoded = ReplicationLogFormat.encode(smallLog, true);
+        assertThat(encoded).isEqualTo(Jackson.writeValueAsBytes(smallLog));
+        assertThat(ReplicationLogFormat.decode(encoded)).isEqualTo(smallLog);
+    }
+
+    @Test
+    void truncated() throws Exception {
+        final byte[] encoded = ReplicationLogFormat.encode(largeLog, true);
+        assertThatThrownBy(() -> ReplicationLogFormat.decode(Arrays.copyOf(encoded, encoded.length / 2)))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static ReplicationLog<Revision> newLog(String content) {
+        final ImmutableList<Change<?>> changes = ImmutableList.of(Change.ofTextUpsert("/a.txt", content));
+        final Command<CommitResult> push = Command.push(1234L, Author.SYSTEM, "foo", "bar", new Revision(42),
+                                                        "summary", "", Markup.PLAINTEXT, changes);
+        final PushAsIsCommand pushAsIs = ((NormalizingPushCommand) push).asIs(
+                CommitResult.of(new Revision(43), changes));
+        return new ReplicationLog<>(1, pushAsIs, new Revision(43));
+    }
+}
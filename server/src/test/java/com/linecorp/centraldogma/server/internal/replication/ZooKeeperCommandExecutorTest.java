@@ -28,14 +28,26 @@ import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -44,12 +56,16 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreV2;
+import org.apache.curator.framework.state.ConnectionState;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.function.ThrowingConsumer;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -223,6 +239,231 @@ class ZooKeeperCommandExecutorTest {
         }
     }
 
+    /**
+     * Same with {@link #testRace()} except that the commands are submitted at once with group commit enabled.
+     */
+    @Test
+    void testRaceWithGroupCommit() throws Exception {
+        try (Cluster cluster = Cluster.builder()
+                                      .numReplicas(3)
+                                      .maxGroupCommitSize(4)
+                                      .build(() -> {
+                                          final AtomicInteger counter = new AtomicInteger();
+                                          return command -> completedFuture(
+                                                  new Revision(counter.incrementAndGet()));
+                                      })) {
+            final Command<CommitResult> command = Command.push(null, Author.SYSTEM, "foo", "bar",
+                                                               new Revision(42), "", "", Markup.PLAINTEXT,
+                                                               ImmutableList.of());
+            final PushAsIsCommand asIsCommand = ((NormalizingPushCommand) command).asIs(
+                    CommitResult.of(new Revision(43), ImmutableList.of()));
+
+            final int COMMANDS_PER_REPLICA = 10;
+            final List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (final Replica r : cluster) {
+                for (int j = 0; j < COMMANDS_PER_REPLICA; j++) {
+                    futures.add(r.commandExecutor().execute(asIsCommand));
+                }
+            }
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+            for (Replica r : cluster) {
+                for (int i = 0; i < COMMANDS_PER_REPLICA * cluster.size(); i++) {
+                    @SuppressWarnings("unchecked")
+                    final ReplicationLog<Revision> log =
+                            (ReplicationLog<Revision>) r.commandExecutor().loadLog(i, false).get();
+
+                    assertThat(log.result().major()).isEqualTo(i + 1);
+                }
+
+                final Map<String, Double> meters = MoreMeters.measureAll(r.meterRegistry());
+                assertThat(meters).containsKeys("replica.group.commit.size#count",
+                                                "replica.group.commit.wait.time#count");
+            }
+        }
+    }
+
+    @Test
+    void replayConcurrently() throws Exception {
+        final Map<Command<?>, CompletableFuture<Void>> heldCommands = new ConcurrentHashMap<>();
+        final Queue<Command<?>> replayedCommands = new ConcurrentLinkedQueue<>();
+        try (Cluster cluster = Cluster.builder()
+                                      .numReplicas(3)
+                                      .build(newHoldingDelegateSupplier(heldCommands, replayedCommands))) {
+
+            final ZooKeeperCommandExecutor executor = cluster.get(0).commandExecutor();
+            final Replica replica = cluster.get(2);
+
+            // Hold the replay of the first log, so that the next logs are replayed together.
+            final Command<Void> command0 = Command.createProject(Author.SYSTEM, "gate");
+            final CompletableFuture<Void> held0 = new CompletableFuture<>();
+            heldCommands.put(command0, held0);
+            executor.execute(command0).join();
+            await().until(() -> replayedCommands.contains(command0));
+
+            final Command<Void> command1 = Command.createRepository(Author.SYSTEM, "foo", "repo1");
+            final Command<Void> command2 = Command.createRepository(Author.SYSTEM, "bar", "repo1");
+            final Command<Void> command3 = Command.createRepository(Author.SYSTEM, "foo", "repo2");
+            final CompletableFuture<Void> held1 = new CompletableFuture<>();
+            heldCommands.put(command1, held1);
+            executor.execute(command1).join();
+            executor.execute(command2).join();
+            executor.execute(command3).join();
+            held0.complete(null);
+
+            // '/bar' is replayed while '/foo' is being replayed, but the second '/foo' waits for the first.
+            await().until(() -> replayedCommands.contains(command2));
+            assertThat(replayedCommands).containsExactly(command0, command1, command2);
+            assertThat(replica.localRevision()).isZero();
+
+            held1.complete(null);
+            await().untilAsserted(() -> assertThat(replica.localRevision()).isEqualTo(3L));
+            assertThat(replayedCommands).containsExactly(command0, command1, command2, command3);
+        }
+    }
+
+    @Test
+    void replayFailureWithinWindow() throws Exception {
+        final Map<Command<?>, CompletableFuture<Void>> heldCommands = new ConcurrentHashMap<>();
+        final Queue<Command<?>> replayedCommands = new ConcurrentLinkedQueue<>();
+        try (Cluster cluster = Cluster.builder()
+                                      .numReplicas(3)
+                                      .build(newHoldingDelegateSupplier(heldCommands, replayedCommands))) {
+
+            final ZooKeeperCommandExecutor executor = cluster.get(0).commandExecutor();
+            final Replica replica = cluster.get(2);
+
+            final Command<Void> command0 = Command.createProject(Author.SYSTEM, "gate");
+            final CompletableFuture<Void> held0 = new CompletableFuture<>();
+            heldCommands.put(command0, held0);
+            executor.execute(command0).join();
+            await().until(() -> replayedCommands.contains(command0));
+
+            final Command<Void> command1 = Command.createRepository(Author.SYSTEM, "foo", "repo1");
+            final Command<Void> command2 = Command.createRepository(Author.SYSTEM, "bar", "repo1");
+            final Command<Void> command3 = Command.createRepository(Author.SYSTEM, "baz", "repo1");
+            final CompletableFuture<Void> held1 = new CompletableFuture<>();
+            heldCommands.put(command1, held1);
+            executor.execute(command1).join();
+            executor.execute(command2).join();
+            executor.execute(command3).join();
+            held0.complete(null);
+            await().until(() -> replayedCommands.contains(command3));
+
+            // The replica stops when the oldest replay in the window fails.
+            held1.completeExceptionally(new IllegalStateException());
+            await().until(() -> !replica.commandExecutor().isStarted());
+            replica.commandExecutor().stop().join();
+            assertThat(replica.localRevision()).isZero();
+
+            // Only the failed log is replayed again after restart.
+            replica.commandExecutor().start().join();
+            await().untilAsserted(() -> assertThat(replica.localRevision()).isEqualTo(3L));
+            assertThat(replayedCommands).containsExactly(command0, command1, command2, command3, command1);
+        }
+    }
+
+    @Test
+    void createSnapshotWhileCommitting(@TempDir Path tempDir) throws Exception {
+        final AtomicReference<File> replayDir = new AtomicReference<>();
+        final AtomicInteger numDelegates = new AtomicInteger();
+        final Supplier<Function<Command<?>, CompletableFuture<?>>> delegates = () -> {
+            final Function<Command<?>, CompletableFuture<?>> delegate = newMockDelegate();
+            if (numDelegates.incrementAndGet() != 2) {
+                return delegate;
+            }
+            // Leave a file for each replayed command, so that a snapshot can be compared with its revision.
+            final AtomicInteger numReplayed = new AtomicInteger();
+            return command -> {
+                final File file = new File(replayDir.get(), "replayed-" + numReplayed.getAndIncrement());
+                try {
+                    Files.createFile(file.toPath());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return delegate.apply(command);
+            };
+        };
+
+        try (Cluster cluster = Cluster.builder()
+                                      .numReplicas(2)
+                                      .build(delegates)) {
+
+            final ZooKeeperCommandExecutor executor = cluster.get(0).commandExecutor();
+            final Replica replica = cluster.get(1);
+            replayDir.set(replica.dataDir());
+
+            final int numCommands = 30;
+            final CompletableFuture<Void> commits = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < numCommands; i++) {
+                    executor.execute(Command.createRepository(Author.SYSTEM, "project" + i, "repo1")).join();
+                }
+            });
+
+            // Take the snapshots while the commands are being committed and replayed.
+            int numSnapshots = 0;
+            do {
+                final File zipFile = tempDir.resolve("snapshot-" + numSnapshots++ + ".zip").toFile();
+                final long revision = replica.commandExecutor().createSnapshot(zipFile);
+                assertSnapshot(zipFile, revision);
+            } while (!commits.isDone());
+            commits.join();
+
+            final File zipFile = tempDir.resolve("snapshot-last.zip").toFile();
+            assertThat(replica.commandExecutor().createSnapshot(zipFile)).isEqualTo(numCommands - 1);
+            assertSnapshot(zipFile, numCommands - 1);
+
+            // A cancelled snapshot is abandoned.
+            final File cancelledZipFile = tempDir.resolve("snapshot-cancelled.zip").toFile();
+            assertThatThrownBy(() -> replica.commandExecutor().createSnapshot(cancelledZipFile, () -> true))
+                    .isInstanceOf(CancellationException.class);
+        }
+    }
+
+    /**
+     * Asserts that the specified snapshot contains exactly the commands up to the specified revision.
+     */
+    private static void assertSnapshot(File zipFile, long revision) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            final ZipEntry revisionEntry = zip.getEntry("last_revision");
+            assertThat(revisionEntry).isNotNull();
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                    zip.getInputStream(revisionEntry), StandardCharsets.UTF_8))) {
+                assertThat(Long.parseLong(br.readLine())).isEqualTo(revision);
+            }
+
+            final long numReplayed = zip.stream()
+                                        .filter(e -> e.getName().startsWith("replayed-"))
+                                        .count();
+            assertThat(numReplayed).isEqualTo(revision + 1);
+        }
+    }
+
+    /**
+     * Returns the {@link Supplier} of the delegates where the delegate of the third replica records the
+     * commands it replayed and holds the replay of the commands in {@code heldCommands} until the future
+     * mapped to the command is completed.
+     */
+    private static Supplier<Function<Command<?>, CompletableFuture<?>>> newHoldingDelegateSupplier(
+            Map<Command<?>, CompletableFuture<Void>> heldCommands, Queue<Command<?>> replayedCommands) {
+        final AtomicInteger numDelegates = new AtomicInteger();
+        return () -> {
+            final Function<Command<?>, CompletableFuture<?>> delegate = newMockDelegate();
+            if (numDelegates.incrementAndGet() != 3) {
+                return delegate;
+            }
+            return command -> {
+                replayedCommands.add(command);
+                final CompletableFuture<Void> held = heldCommands.remove(command);
+                if (held == null) {
+                    return delegate.apply(command);
+                }
+                return held.thenCompose(unused -> delegate.apply(command));
+            };
+        };
+    }
+
     /**
      * Makes sure that we can stop a replica that's waiting for the initial quorum.
      */
@@ -448,6 +689,48 @@ class ZooKeeperCommandExecutorTest {
         }
     }
 
+    @Test
+    void groupCommitDoesNotWaitForContendedLock() throws Exception {
+        final AtomicBoolean neverEnding = new AtomicBoolean();
+        final AtomicReference<CompletableFuture<?>> pendingFuture = new AtomicReference<>();
+        final Supplier<Function<Command<?>, CompletableFuture<?>>> mockDelegate = () -> command -> {
+            if (neverEnding.get()) {
+                final CompletableFuture<Object> future = new CompletableFuture<>();
+                pendingFuture.set(future);
+                return future;
+            } else {
+                return newMockDelegate().apply(command);
+            }
+        };
+
+        try (Cluster cluster = Cluster.builder()
+                                      .numReplicas(1)
+                                      .maxGroupCommitSize(4)
+                                      .build(mockDelegate)) {
+
+            final ZooKeeperCommandExecutor executor = cluster.get(0).commandExecutor();
+
+            neverEnding.set(true);
+            executor.execute(Command.createRepository(Author.SYSTEM, "project", "repo1"));
+            // Await until the first command holds the lock for '/project'.
+            await().untilAtomic(pendingFuture, Matchers.notNullValue());
+            neverEnding.set(false);
+
+            final CompletableFuture<Void> contended =
+                    executor.execute(Command.createRepository(Author.SYSTEM, "project", "repo2"));
+            final CompletableFuture<Void> uncontended =
+                    executor.execute(Command.createRepository(Author.SYSTEM, "another", "repo1"));
+
+            // The command for the other execution path is not stalled by the contended lock.
+            uncontended.get(5, TimeUnit.SECONDS);
+            assertThat(contended).isNotDone();
+
+            // The contended command is executed once the lock is released.
+            pendingFuture.get().complete(null);
+            contended.get(10, TimeUnit.SECONDS);
+        }
+    }
+
     @Test
     void metrics() throws Exception {
         try (Cluster cluster = Cluster.builder()
@@ -487,6 +770,39 @@ class ZooKeeperCommandExecutorTest {
         }
     }
 
+    @Test
+    void findLatestLogRevision() throws Exception {
+        try (Cluster cluster = Cluster.builder()
+                                      .numReplicas(1)
+                                      .build(ZooKeeperCommandExecutorTest::newMockDelegate)) {
+            final Replica replica = cluster.get(0);
+            final ZooKeeperCommandExecutor executor = replica.commandExecutor();
+            for (int i = 0; i < 3; i++) {
+                executor.execute(Command.createRepository(Author.SYSTEM, "project", "repo" + i)).join();
+            }
+            await().untilAsserted(() -> assertThat(replica.localRevision()).isEqualTo(2L));
+            assertThat(executor.latestLogRevision.get()).isEqualTo(2L);
+
+            // Only the logs newer than the latest known log are probed.
+            executor.latestLogRevision.set(0);
+            assertThat(executor.findLatestLogRevision()).isEqualTo(2L);
+            assertThat(executor.latestLogRevision.get()).isEqualTo(2L);
+
+            // A suspended connection does not reset the latest known log.
+            executor.onConnectionStateChanged(ConnectionState.SUSPENDED);
+            assertThat(executor.latestLogRevision.get()).isEqualTo(2L);
+
+            // The logs might have been missed while disconnected, so all logs are listed again.
+            for (ConnectionState state : ImmutableList.of(ConnectionState.RECONNECTED, ConnectionState.LOST)) {
+                executor.onConnectionStateChanged(state);
+                assertThat(executor.latestLogRevision.get())
+                        .isEqualTo(ZooKeeperCommandExecutor.UNKNOWN_LOG_REVISION);
+                assertThat(executor.findLatestLogRevision()).isEqualTo(2L);
+                assertThat(executor.latestLogRevision.get()).isEqualTo(2L);
+            }
+        }
+    }
+
     @Test
     void setWriteQuota() throws Exception {
         try (Cluster cluster = Cluster.builder()
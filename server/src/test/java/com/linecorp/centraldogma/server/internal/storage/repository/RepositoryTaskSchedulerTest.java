@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.storage.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import com.linecorp.armeria.common.metric.NoopMeterRegistry;
+import com.linecorp.centraldogma.server.internal.storage.repository.RepositoryTaskScheduler.Lane;
+import com.linecorp.centraldogma.server.internal.storage.repository.RepositoryTaskScheduler.Tenant;
+
+class RepositoryTaskSchedulerTest {
+
+    private ExecutorService delegate;
+    private RepositoryTaskScheduler scheduler;
+    private final StringBuffer order = new StringBuffer();
+
+    @BeforeEach
+    void setUp() {
+        delegate = Executors.newSingleThreadExecutor();
+        scheduler = new RepositoryTaskScheduler(delegate, 1, NoopMeterRegistry.get());
+    }
+
+    @AfterEach
+    void tearDown() {
+        delegate.shutdownNow();
+    }
+
+    @Test
+    void tenantsTakeTurns() {
+        final Tenant noisy = scheduler.newTenant();
+        final Tenant quiet = scheduler.newTenant();
+        final CountDownLatch blocker = block(noisy, Lane.READ);
+
+        for (int i = 0; i < 5; i++) {
+            noisy.executor(Lane.READ).execute(() -> order.append('N'));
+        }
+        quiet.executor(Lane.READ).execute(() -> order.append('Q'));
+        assertThat(scheduler.numPendingTasks(Lane.READ)).isEqualTo(6);
+
+        blocker.countDown();
+        await().until(() -> order.length() == 6);
+        // The task of the quiet tenant does not wait for all tasks of the noisy tenant.
+        assertThat(order.toString()).isEqualTo("NQNNNN");
+        assertThat(scheduler.numPendingTasks(Lane.READ)).isZero();
+    }
+
+    @Test
+    void weightedLanes() {
+        final Tenant tenant = scheduler.newTenant();
+        final CountDownLatch blocker = block(tenant, Lane.COMMIT);
+
+        for (int i = 0; i < 6; i++) {
+            tenant.executor(Lane.READ).execute(() -> order.append('R'));
+            tenant.executor(Lane.WATCH).execute(() -> order.append('W'));
+            tenant.executor(Lane.COMMIT).execute(() -> order.append('C'));
+        }
+
+        blocker.countDown();
+        await().until(() -> order.length() == 18);
+        // The lanes of lower weights are not starved.
+        assertThat(order.toString()).isEqualTo("CCCWWRCCCWWRWWRRRR");
+    }
+
+    @Test
+    void maxWorkersPerTenant() throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final RepositoryTaskScheduler limited =
+                    new RepositoryTaskScheduler(pool, 4, 2, NoopMeterRegistry.get());
+            final Tenant noisy = limited.newTenant();
+            final Tenant quiet = limited.newTenant();
+            final CountDownLatch blocker = new CountDownLatch(1);
+            final AtomicInteger numRunningTasks = new AtomicInteger();
+            final AtomicInteger maxRunningTasks = new AtomicInteger();
+            final AtomicInteger numDoneTasks = new AtomicInteger();
+            for (int i = 0; i < 5; i++) {
+                noisy.executor(i % 2 == 0 ? Lane.READ : Lane.WATCH).execute(() -> {
+                    maxRunningTasks.accumulateAndGet(numRunningTasks.incrementAndGet(), Math::max);
+                    Uninterruptibles.awaitUninterruptibly(blocker);
+                    numRunningTasks.decrementAndGet();
+                    numDoneTasks.incrementAndGet();
+                });
+            }
+
+            // Only two tasks of the noisy tenant run.
+            await().until(() -> limited.numPendingTasks(Lane.READ) +
+                                limited.numPendingTasks(Lane.WATCH) == 3);
+            assertThat(numRunningTasks).hasValue(2);
+
+            // ... which leaves room for other tenants.
+            final CountDownLatch quietDone = new CountDownLatch(1);
+            quiet.executor(Lane.READ).execute(quietDone::countDown);
+            assertThat(quietDone.await(10, TimeUnit.SECONDS)).isTrue();
+
+            blocker.countDown();
+            await().until(() -> numDoneTasks.get() == 5);
+            assertThat(maxRunningTasks).hasValue(2);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectedTask() {
+        delegate.shutdown();
+        assertThatThrownBy(() -> scheduler.execute(() -> {}))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(scheduler.numPendingTasks(Lane.READ)).isZero();
+    }
+
+    /**
+     * Occupies the only worker until the returned latch is counted down.
+     */
+    private CountDownLatch block(Tenant tenant, Lane lane) {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        tenant.executor(lane).execute(() -> {
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(blocker);
+        });
+        Uninterruptibles.awaitUninterruptibly(started);
+        return blocker;
+    }
+}
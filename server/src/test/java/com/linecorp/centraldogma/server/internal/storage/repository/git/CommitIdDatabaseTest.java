@@ -88,6 +88,31 @@ class CommitIdDatabaseTest {
                 .isInstanceOf(RevisionNotFoundException.class);
     }
 
+    @Test
+    void reopen() {
+        // Put enough records to span more than one read buffer and to grow the in-heap records.
+        final int numCommits = 2000;
+        final ObjectId[] expectedCommitIds = new ObjectId[numCommits + 1];
+        for (int i = 1; i <= numCommits; i++) {
+            final ObjectId commitId = randomCommitId();
+            expectedCommitIds[i] = commitId;
+            db.put(new Revision(i), commitId);
+        }
+        db.close();
+
+        db = new CommitIdDatabase(tempDir);
+        assertThat(db.headRevision()).isEqualTo(new Revision(numCommits));
+        for (int i = 1; i <= numCommits; i++) {
+            assertThat(db.get(new Revision(i))).isEqualTo(expectedCommitIds[i]);
+        }
+
+        // Make sure the records loaded from the file can be extended.
+        final ObjectId commitId = randomCommitId();
+        db.put(new Revision(numCommits + 1), commitId);
+        assertThat(db.get(new Revision(numCommits + 1))).isEqualTo(commitId);
+        assertThat(db.get(new Revision(numCommits))).isEqualTo(expectedCommitIds[numCommits]);
+    }
+
     @Test
     void truncatedDatabase() throws Exception {
         db.put(Revision.INIT, randomCommitId());
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.storage.repository.git;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import com.linecorp.centraldogma.common.CentralDogmaException;
+import com.linecorp.centraldogma.common.Revision;
+
+class CommitWatchersTest {
+
+    private final CommitWatchers commitWatchers = new CommitWatchers(MoreExecutors.directExecutor());
+
+    @Test
+    void exactPath() {
+        final CompletableFuture<Revision> future = watch("/foo/bar.json");
+        commitWatchers.notify(new Revision(2), "foo/baz.json");
+        assertThat(future).isNotDone();
+        commitWatchers.notify(new Revision(3), "foo/bar.json");
+        assertThat(future).isCompletedWithValue(new Revision(3));
+        assertThat(commitWatchers.watchesMap).isEmpty();
+    }
+
+    @Test
+    void directory() {
+        final CompletableFuture<Revision> future = watch("/foo/**");
+        commitWatchers.notify(new Revision(2), "foobar/a.json");
+        assertThat(future).isNotDone();
+        commitWatchers.notify(new Revision(3), "foo/bar/a.json");
+        assertThat(future).isCompletedWithValue(new Revision(3));
+    }
+
+    @Test
+    void wildcard() {
+        final CompletableFuture<Revision> future = watch("/foo/*.json");
+        commitWatchers.notify(new Revision(2), "foo/bar/a.json");
+        assertThat(future).isNotDone();
+        commitWatchers.notify(new Revision(3), "foo/a.json");
+        assertThat(future).isCompletedWithValue(new Revision(3));
+    }
+
+    @Test
+    void multiplePatterns() {
+        final CompletableFuture<Revision> future = watch("/a.json,/b/**,*.txt");
+        commitWatchers.notify(new Revision(2), "c.json");
+        assertThat(future).isNotDone();
+        commitWatchers.notify(new Revision(3), "c/d.txt");
+        assertThat(future).isCompletedWithValue(new Revision(3));
+    }
+
+    @Test
+    void matchAll() {
+        final CompletableFuture<Revision> future = watch("/**");
+        commitWatchers.notify(new Revision(2), "a/b/c.json");
+        assertThat(future).isCompletedWithValue(new Revision(2));
+    }
+
+    @Test
+    void notifyMultiplePaths() {
+        final CompletableFuture<Revision> future1 = watch("/foo/*.json");
+        final CompletableFuture<Revision> future2 = watch("/bar/**");
+        final CompletableFuture<Revision> future3 = watch("/baz.json");
+        commitWatchers.notify(new Revision(2), ImmutableList.of("foo/a.json", "foo/b.json", "bar/c/d.txt"));
+        assertThat(future1).isCompletedWithValue(new Revision(2));
+        assertThat(future2).isCompletedWithValue(new Revision(2));
+        assertThat(future3).isNotDone();
+        assertThat(commitWatchers.watchesMap).hasSize(1);
+    }
+
+    @Test
+    void notifyOnExecutor() {
+        final CommitWatchers commitWatchers = new CommitWatchers(ForkJoinPool.commonPool());
+        final CompletableFuture<Revision> future = new CompletableFuture<>();
+        commitWatchers.add(Revision.INIT, "/a.json", future);
+        commitWatchers.notify(new Revision(2), ImmutableList.of("a.json"));
+        assertThat(future.join()).isEqualTo(new Revision(2));
+    }
+
+    @Test
+    void ignoreWatchesWithNewerRevision() {
+        final CompletableFuture<Revision> future = new CompletableFuture<>();
+        commitWatchers.add(new Revision(5), "/a.json", future);
+        commitWatchers.notify(new Revision(5), "a.json");
+        assertThat(future).isNotDone();
+        commitWatchers.notify(new Revision(6), "a.json");
+        assertThat(future).isCompletedWithValue(new Revision(6));
+    }
+
+    @Test
+    void cancelledWatchIsRemoved() {
+        final CompletableFuture<Revision> future = watch("/foo/**");
+        assertThat(commitWatchers.watchesMap).hasSize(1);
+        future.cancel(true);
+        assertThat(commitWatchers.watchesMap).isEmpty();
+
+        // Should be able to watch the same pattern again after removal.
+        final CompletableFuture<Revision> future2 = watch("/foo/**");
+        commitWatchers.notify(new Revision(2), "foo/a.json");
+        assertThat(future2).isCompletedWithValue(new Revision(2));
+    }
+
+    @Test
+    void close() {
+        final CompletableFuture<Revision> future = watch("/foo/*.json");
+        commitWatchers.close(() -> new CentralDogmaException("closed"));
+        assertThat(future).isCompletedExceptionally();
+        assertThat(commitWatchers.watchesMap).isEmpty();
+    }
+
+    private CompletableFuture<Revision> watch(String pathPattern) {
+        final CompletableFuture<Revision> future = new CompletableFuture<>();
+        commitWatchers.add(Revision.INIT, pathPattern, future);
+        return future;
+    }
+}
@@ -24,6 +24,7 @@ import static org.mockito.Mockito.mock;
 
 import java.io.File;
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.jupiter.api.AfterAll;
@@ -99,4 +100,23 @@ class GitGcTimeoutTest {
         assertThat(latestRevision).isEqualTo(revision2);
         repo.gcLock.unlock();
     }
+
+    @Test
+    void shouldNotBlockReadWhileCommitting() throws Exception {
+        final Change<String> change = Change.ofTextUpsert("/baz.txt", "qux");
+        final Revision revision = repo.commit(HEAD, 0L, Author.UNKNOWN, "summary", change).join().revision();
+
+        // Hold the write lock as if a commit is in progress.
+        assertThat(repo.writeLock(false)).isTrue();
+        try {
+            assertThat(repo.find(revision, "/baz.txt").get(10, TimeUnit.SECONDS)).containsOnlyKeys("/baz.txt");
+            assertThat(repo.history(revision, revision, "/baz.txt").get(10, TimeUnit.SECONDS)).hasSize(1);
+            assertThat(repo.diff(Revision.INIT, revision, "/baz.txt").get(10, TimeUnit.SECONDS))
+                    .containsOnlyKeys("/baz.txt");
+            assertThat(repo.findLatestRevision(Revision.INIT, "/baz.txt").get(10, TimeUnit.SECONDS))
+                    .isEqualTo(revision);
+        } finally {
+            repo.writeUnLock();
+        }
+    }
 }
@@ -62,6 +62,7 @@ import org.junit.jupiter.api.io.TempDir;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 
+import com.linecorp.armeria.common.metric.NoopMeterRegistry;
 import com.linecorp.centraldogma.common.Author;
 import com.linecorp.centraldogma.common.CentralDogmaException;
 import com.linecorp.centraldogma.common.Change;
@@ -75,6 +76,7 @@ import com.linecorp.centraldogma.common.RedundantChangeException;
 import com.linecorp.centraldogma.common.Revision;
 import com.linecorp.centraldogma.common.RevisionNotFoundException;
 import com.linecorp.centraldogma.internal.Util;
+import com.linecorp.centraldogma.server.internal.storage.repository.RepositoryCache;
 import com.linecorp.centraldogma.server.storage.StorageException;
 import com.linecorp.centraldogma.server.storage.project.Project;
 import com.linecorp.centraldogma.server.storage.repository.Repository;
@@ -1323,4 +1325,80 @@ class GitRepositoryTest {
         assertThatThrownBy(() -> repo.watch(
                 INIT, Query.ofJson("/foo.json")).get(10, TimeUnit.SECONDS)).hasCause(expectedException);
     }
+
+    @Test
+    void parsedBlobCache() throws Exception {
+        final RepositoryCache cache = new RepositoryCache("maximumSize=0", NoopMeterRegistry.get());
+        final GitRepository repo = new GitRepository(mock(Project.class),
+                                                     new File(repoDir, "parsed_blob_cache_test_repo"),
+                                                     GitRepositoryFormat.V1, commonPool(), 0L, Author.SYSTEM,
+                                                     cache);
+        try {
+            repo.commit(HEAD, 0L, Author.SYSTEM, SUMMARY,
+                        Change.ofJsonUpsert("/a.json", "{ \"a\": 1 }"),
+                        Change.ofJsonUpsert("/b.json", "{ \"a\": 1 }"),
+                        Change.ofTextUpsert("/c.txt", "foo")).join();
+
+            final Map<String, Entry<?>> entries = repo.find(HEAD, "/**").join();
+            assertThat(entries).hasSize(3);
+
+            // The identical blobs must share the same parsed content.
+            assertThat(entries.get("/a.json").content()).isSameAs(entries.get("/b.json").content());
+            assertThat(repo.find(HEAD, "/c.txt").join().get("/c.txt").content())
+                    .isSameAs(entries.get("/c.txt").content());
+
+            // The cached content must not be affected by the diff operations.
+            final Map<String, Change<?>> changes = repo.diff(INIT, HEAD, "/a.json").join();
+            assertThatJson(changes.get("/a.json").content()).isEqualTo("{ \"a\": 1 }");
+            assertThat(repo.previewDiff(HEAD, Change.ofJsonPatch("/a.json", "{ \"a\": 1 }",
+                                                                 "{ \"a\": 2 }")).join())
+                    .containsOnlyKeys("/a.json");
+            assertThatJson(repo.find(HEAD, "/a.json").join().get("/a.json").content())
+                    .isEqualTo("{ \"a\": 1 }");
+        } finally {
+            repo.internalClose();
+        }
+    }
+
+    @Test
+    void findLatestRevisionByComparingTrees() throws Exception {
+        final File repoDir = new File(GitRepositoryTest.repoDir, "compare_trees_test_repo");
+        GitRepository repo = new GitRepository(mock(Project.class), repoDir, GitRepositoryFormat.V1,
+                                               commonPool(), 0L, Author.SYSTEM, null);
+        try {
+            repo.commit(HEAD, 0L, Author.SYSTEM, SUMMARY,
+                        Change.ofJsonUpsert("/a/b/c.json", "{ \"a\": 1 }"),
+                        Change.ofTextUpsert("/a/d.txt", "foo"),
+                        Change.ofTextUpsert("/e/f.txt", "bar")).join();
+            repo.commit(HEAD, 0L, Author.SYSTEM, SUMMARY,
+                        Change.ofJsonUpsert("/a/b/c.json", "{ \"a\": 2 }")).join();
+        } finally {
+            repo.internalClose();
+        }
+
+        // Reopen the repository so that findLatestRevision() cannot use the in-memory index.
+        final RepositoryCache cache = new RepositoryCache("maximumSize=1000", NoopMeterRegistry.get());
+        repo = new GitRepository(mock(Project.class), repoDir, commonPool(), cache);
+        try {
+            final Revision rev2 = new Revision(2);
+            // Path patterns with a directory prefix.
+            assertThat(repo.findLatestRevision(rev2, "/a/b/*.json").join()).isEqualTo(new Revision(3));
+            assertThat(repo.findLatestRevision(rev2, "/a/**").join()).isEqualTo(new Revision(3));
+            assertThat(repo.findLatestRevision(rev2, "/a/d.txt").join()).isNull();
+            assertThat(repo.findLatestRevision(rev2, "/e/**,/x/*").join()).isNull();
+            assertThat(repo.findLatestRevision(INIT, "/e/f.txt").join()).isEqualTo(new Revision(3));
+
+            // Path patterns without a directory prefix.
+            assertThat(repo.findLatestRevision(rev2, "*.txt").join()).isNull();
+            assertThat(repo.findLatestRevision(rev2, "/**").join()).isEqualTo(new Revision(3));
+            assertThat(repo.findLatestRevision(rev2, "c.json").join()).isEqualTo(new Revision(3));
+
+            // The subtrees that do not match must be skipped without affecting the result.
+            assertThat(repo.find(HEAD, "/a/b/*").join()).containsOnlyKeys("/a/b/c.json");
+            assertThat(repo.find(HEAD, "/a/*").join()).containsOnlyKeys("/a/b", "/a/d.txt");
+            assertThat(repo.diff(INIT, HEAD, "/a/b/**").join()).containsOnlyKeys("/a/b/c.json");
+        } finally {
+            repo.internalClose();
+        }
+    }
 }
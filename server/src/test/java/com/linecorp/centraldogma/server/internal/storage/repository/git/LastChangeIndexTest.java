@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.storage.repository.git;
+
+import static com.linecorp.centraldogma.server.internal.storage.repository.git.LastChangeIndex.NO_CHANGE;
+import static com.linecorp.centraldogma.server.internal.storage.repository.git.LastChangeIndex.UNKNOWN;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+
+class LastChangeIndexTest {
+
+    @Test
+    void notInitialized() {
+        final LastChangeIndex index = new LastChangeIndex();
+        index.add(2, ImmutableList.of("a.json"));
+        assertThat(index.find(1, 2, PathPatternFilter.of("/**"))).isEqualTo(UNKNOWN);
+    }
+
+    @Test
+    void find() {
+        final LastChangeIndex index = new LastChangeIndex();
+        index.init(10);
+        index.add(11, ImmutableList.of("a/b/c.json"));
+        index.add(12, ImmutableList.of("a/d.txt", "e.json"));
+        index.add(13, ImmutableList.of());
+
+        // Revisions not covered by the index.
+        assertThat(index.find(9, 13, PathPatternFilter.of("/**"))).isEqualTo(UNKNOWN);
+
+        assertThat(index.find(10, 13, PathPatternFilter.of("/**"))).isEqualTo(12);
+        assertThat(index.find(10, 11, PathPatternFilter.of("/**"))).isEqualTo(11);
+        assertThat(index.find(12, 13, PathPatternFilter.of("/**"))).isEqualTo(NO_CHANGE);
+
+        // Exact paths
+        assertThat(index.find(10, 13, PathPatternFilter.of("/a/b/c.json"))).isEqualTo(11);
+        assertThat(index.find(11, 13, PathPatternFilter.of("/a/b/c.json"))).isEqualTo(NO_CHANGE);
+        assertThat(index.find(10, 13, PathPatternFilter.of("/a/b/c.txt"))).isEqualTo(NO_CHANGE);
+
+        // Directory prefixes
+        assertThat(index.find(10, 13, PathPatternFilter.of("/a/**"))).isEqualTo(12);
+        assertThat(index.find(11, 13, PathPatternFilter.of("/a/b/*"))).isEqualTo(NO_CHANGE);
+        assertThat(index.find(10, 13, PathPatternFilter.of("/x/**"))).isEqualTo(NO_CHANGE);
+
+        // Patterns without a directory prefix
+        assertThat(index.find(10, 13, PathPatternFilter.of("*.json"))).isEqualTo(12);
+        assertThat(index.find(10, 13, PathPatternFilter.of("c.json"))).isEqualTo(11);
+        assertThat(index.find(10, 13, PathPatternFilter.of("/x/**,*.txt"))).isEqualTo(12);
+        assertThat(index.find(10, 13, PathPatternFilter.of("*.yaml"))).isEqualTo(NO_CHANGE);
+    }
+
+    @Test
+    void eviction() {
+        final LastChangeIndex index = new LastChangeIndex();
+        index.init(1);
+        final int lastRevision = LastChangeIndex.MAX_REVISIONS + 10;
+        for (int i = 2; i <= lastRevision; i++) {
+            index.add(i, ImmutableList.of(i + ".json"));
+        }
+
+        assertThat(index.find(1, lastRevision, PathPatternFilter.of("/2.json"))).isEqualTo(UNKNOWN);
+        assertThat(index.find(lastRevision - 1, lastRevision, PathPatternFilter.of("/*.json")))
+                .isEqualTo(lastRevision);
+        assertThat(index.find(lastRevision - 2, lastRevision, PathPatternFilter.of("/2.json")))
+                .isEqualTo(NO_CHANGE);
+    }
+}
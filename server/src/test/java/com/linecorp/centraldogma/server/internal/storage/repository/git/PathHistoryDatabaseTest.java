@@ -0,0 +1,169 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.storage.repository.git;
+
+import static java.util.concurrent.ForkJoinPool.commonPool;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.ImmutableList;
+
+import com.linecorp.centraldogma.common.Author;
+import com.linecorp.centraldogma.common.Change;
+import com.linecorp.centraldogma.common.Commit;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.server.storage.project.Project;
+
+class PathHistoryDatabaseTest {
+
+    @TempDir
+    File tempDir;
+
+    private PathHistoryDatabase db;
+
+    @BeforeEach
+    void setUp() {
+        db = new PathHistoryDatabase(tempDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (db != null) {
+            db.close();
+        }
+    }
+
+    @Test
+    void emptyDatabase() {
+        assertThat(db.headRevision()).isNull();
+        assertThat(db.find(new Revision(1), new Revision(1), PathPatternFilter.of("/**"), 10)).isEmpty();
+    }
+
+    @Test
+    void find() {
+        putAll();
+
+        final Revision head = db.headRevision();
+        assertThat(head).isEqualTo(new Revision(6));
+        assertThat(find(head, Revision.INIT, "/**", 10)).containsExactly(6, 5, 4, 3, 2);
+        assertThat(find(head, Revision.INIT, "/**", 2)).containsExactly(6, 5);
+        assertThat(find(Revision.INIT, head, "/**", 10)).containsExactly(6, 5, 4, 3, 2);
+        assertThat(find(new Revision(4), new Revision(3), "/**", 10)).containsExactly(4, 3);
+
+        assertThat(find(head, Revision.INIT, "/a.json", 10)).containsExactly(5, 2);
+        assertThat(find(new Revision(4), Revision.INIT, "/a.json", 10)).containsExactly(2);
+        assertThat(find(head, Revision.INIT, "/a/**", 10)).containsExactly(6, 4, 3);
+        assertThat(find(head, Revision.INIT, "/a/*.json", 10)).containsExactly(3);
+        assertThat(find(head, Revision.INIT, "*.json", 10)).containsExactly(5, 3, 2);
+        assertThat(find(head, Revision.INIT, "/a.json,/a/c.txt", 10)).containsExactly(5, 4, 2);
+        assertThat(find(head, Revision.INIT, "/a.jso", 10)).isEmpty();
+        assertThat(find(head, Revision.INIT, "/x/**", 10)).isEmpty();
+    }
+
+    @Test
+    void reopen() {
+        putAll();
+        db.close();
+
+        db = new PathHistoryDatabase(tempDir);
+        assertThat(db.headRevision()).isEqualTo(new Revision(6));
+        assertThat(find(db.headRevision(), Revision.INIT, "/a/**", 10)).containsExactly(6, 4, 3);
+
+        assertThatThrownBy(() -> db.put(new Revision(8), ImmutableList.of("b.json")))
+                .isInstanceOf(IllegalStateException.class);
+        db.put(new Revision(7), ImmutableList.of("b.json"));
+        assertThat(find(db.headRevision(), Revision.INIT, "/b.json", 10)).containsExactly(7);
+    }
+
+    @Test
+    void truncatedDatabase() throws Exception {
+        putAll();
+        db.close();
+
+        // Truncate the last record.
+        final File file = new File(tempDir, "path_history.dat");
+        try (FileChannel f = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            f.truncate(f.size() - 1);
+        }
+
+        db = new PathHistoryDatabase(tempDir);
+        assertThat(db.headRevision()).isEqualTo(new Revision(5));
+        assertThat(find(db.headRevision(), Revision.INIT, "/a/**", 10)).containsExactly(4, 3);
+
+        // The partial record should have been discarded.
+        db.put(new Revision(6), ImmutableList.of("a/d/e.txt"));
+        db.close();
+        db = new PathHistoryDatabase(tempDir);
+        assertThat(db.headRevision()).isEqualTo(new Revision(6));
+        assertThat(find(db.headRevision(), Revision.INIT, "/a/**", 10)).containsExactly(6, 4, 3);
+    }
+
+    @Test
+    void rebuildFromGit() throws Exception {
+        final File repoDir = new File(tempDir, "repo");
+        GitRepository repo = new GitRepository(mock(Project.class), repoDir, commonPool(), 0, Author.SYSTEM);
+        try {
+            for (int i = 1; i <= 10; i++) {
+                repo.commit(Revision.HEAD, 0, Author.SYSTEM, "",
+                            Change.ofTextUpsert("/" + i % 3 + ".txt", String.valueOf(i))).join();
+            }
+        } finally {
+            repo.internalClose();
+        }
+
+        // Wipe out the path history database.
+        final File file = new File(repoDir, "path_history.dat");
+        assertThat(file).exists();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ch.truncate(0);
+        }
+
+        // Open the repository again to see if the path history database is rebuilt automatically.
+        repo = new GitRepository(mock(Project.class), repoDir, commonPool(), null);
+        try {
+            final List<Commit> commits = repo.history(Revision.HEAD, Revision.INIT, "/1.txt").join();
+            assertThat(commits.stream().map(c -> c.revision().major()).collect(Collectors.toList()))
+                    .containsExactly(11, 8, 5, 2);
+        } finally {
+            repo.internalClose();
+        }
+    }
+
+    private void putAll() {
+        db.put(new Revision(1), ImmutableList.of());
+        db.put(new Revision(2), ImmutableList.of("a.json"));
+        db.put(new Revision(3), ImmutableList.of("a/b.json", "a/c.txt"));
+        db.put(new Revision(4), ImmutableList.of("a/c.txt"));
+        db.put(new Revision(5), ImmutableList.of("a.json"));
+        db.put(new Revision(6), ImmutableList.of("a/d/e.txt"));
+    }
+
+    private int[] find(Revision from, Revision to, String pathPattern, int maxRevisions) {
+        return db.find(from, to, PathPatternFilter.of(pathPattern), maxRevisions);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.internal.storage.repository.git;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TreeEditorTest {
+
+    @TempDir
+    File tempDir;
+
+    private Repository repo;
+    private ObjectInserter inserter;
+    private ObjectReader reader;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repo = new RepositoryBuilder().setGitDir(tempDir).setBare().build();
+        repo.create(true);
+        inserter = repo.newObjectInserter();
+        reader = inserter.newReader();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reader.close();
+        inserter.close();
+        repo.close();
+    }
+
+    @Test
+    void producesSameTreeAsDirCache() throws Exception {
+        final String[] paths = { "a.json", "a/b.json", "a-b/c.txt", "a/b/c/d.txt", "a0.txt", "z.txt" };
+        final TreeEditor editor = new TreeEditor(reader, null);
+        final DirCache dirCache = DirCache.newInCore();
+        for (String path : paths) {
+            final ObjectId blobId = blob(path);
+            editor.put(path, blobId);
+            add(dirCache, path, blobId);
+        }
+
+        final ObjectId treeId = editor.writeTree(inserter);
+        assertThat(treeId).isEqualTo(dirCache.writeTree(inserter));
+        assertThat(editor.diffEntries()).hasSize(paths.length)
+                                        .allMatch(e -> e.getChangeType() == ChangeType.ADD);
+    }
+
+    @Test
+    void reusesUntouchedSubtrees() throws Exception {
+        final TreeEditor baseEditor = new TreeEditor(reader, null);
+        baseEditor.put("a/1.txt", blob("1"));
+        baseEditor.put("a/2.txt", blob("2"));
+        baseEditor.put("b/3.txt", blob("3"));
+        final ObjectId baseTreeId = baseEditor.writeTree(inserter);
+
+        final TreeEditor editor = new TreeEditor(reader, baseTreeId);
+        editor.put("b/3.txt", blob("3'"));
+        assertThat(editor.remove("a/2.txt")).isTrue();
+        assertThat(editor.remove("a/4.txt")).isFalse();
+
+        final List<DiffEntry> diffEntries = editor.diffEntries();
+        assertThat(diffEntries).hasSize(2);
+        assertThat(diffEntries.get(0).getChangeType()).isEqualTo(ChangeType.DELETE);
+        assertThat(diffEntries.get(0).getOldPath()).isEqualTo("a/2.txt");
+        assertThat(diffEntries.get(1).getChangeType()).isEqualTo(ChangeType.MODIFY);
+        assertThat(diffEntries.get(1).getNewPath()).isEqualTo("b/3.txt");
+
+        final DirCache dirCache = DirCache.newInCore();
+        add(dirCache, "a/1.txt", blob("1"));
+        add(dirCache, "b/3.txt", blob("3'"));
+        assertThat(editor.writeTree(inserter)).isEqualTo(dirCache.writeTree(inserter));
+    }
+
+    @Test
+    void moveDirectory() throws Exception {
+        final TreeEditor baseEditor = new TreeEditor(reader, null);
+        baseEditor.put("a/1.txt", blob("1"));
+        baseEditor.put("a/b/2.txt", blob("2"));
+        final ObjectId baseTreeId = baseEditor.writeTree(inserter);
+
+        final TreeEditor editor = new TreeEditor(reader, baseTreeId);
+        assertThat(editor.isDirectory("a")).isTrue();
+        assertThat(editor.moveDirectory("a", "c")).isTrue();
+        assertThat(editor.isDirectory("a")).isFalse();
+        assertThat(editor.moveDirectory("a", "d")).isFalse();
+        assertThat(editor.get("c/b/2.txt")).isEqualTo(blob("2"));
+        assertThat(editor.diffEntries()).hasSize(4);
+
+        // Moving back must result in no changes.
+        assertThat(editor.moveDirectory("c", "a")).isTrue();
+        assertThat(editor.diffEntries()).isEmpty();
+        assertThat(editor.writeTree(inserter)).isEqualTo(baseTreeId);
+    }
+
+    @Test
+    void removeEverything() throws Exception {
+        final TreeEditor baseEditor = new TreeEditor(reader, null);
+        baseEditor.put("a/b/1.txt", blob("1"));
+        final ObjectId baseTreeId = baseEditor.writeTree(inserter);
+
+        final TreeEditor editor = new TreeEditor(reader, baseTreeId);
+        assertThat(editor.removeDirectory("a")).isTrue();
+        assertThat(editor.writeTree(inserter)).isEqualTo(DirCache.newInCore().writeTree(inserter));
+    }
+
+    private ObjectId blob(String content) throws Exception {
+        return inserter.insert(Constants.OBJ_BLOB, content.getBytes(UTF_8));
+    }
+
+    private static void add(DirCache dirCache, String path, ObjectId blobId) {
+        final DirCacheEditor dirCacheEditor = dirCache.editor();
+        dirCacheEditor.add(new PathEdit(path) {
+            @Override
+            public void apply(DirCacheEntry ent) {
+                ent.setFileMode(FileMode.REGULAR_FILE);
+                ent.setObjectId(blobId);
+            }
+        });
+        dirCacheEditor.finish();
+    }
+}
@@ -401,6 +401,32 @@ class MetadataServiceTest {
         return metadata.repo(repo1);
     }
 
+    @Test
+    void convertedObjectsAreReusedUntilChanged() {
+        final MetadataService mds = newMetadataService(manager);
+
+        final Tokens tokens = mds.getTokens().join();
+        final ProjectMetadata metadata = getProject(mds, project1);
+        assertThat(mds.getTokens().join()).isSameAs(tokens);
+        assertThat(getProject(mds, project1)).isSameAs(metadata);
+
+        // The tokens are not affected by the change of the project metadata.
+        mds.addRepo(author, project1, repo1).join();
+        assertThat(mds.getTokens().join()).isSameAs(tokens);
+        final ProjectMetadata newMetadata = getProject(mds, project1);
+        assertThat(newMetadata).isNotSameAs(metadata);
+        assertThat(newMetadata.repos().get(repo1)).isNotNull();
+
+        mds.createToken(author, app1).join();
+        final Tokens newTokens = mds.getTokens().join();
+        assertThat(newTokens).isNotSameAs(tokens);
+        assertThat(newTokens.get(app1)).isNotNull();
+        assertThat(getProject(mds, project1)).isSameAs(newMetadata);
+
+        // A new service shares nothing with the old one.
+        assertThat(newMetadataService(manager).getTokens().join()).isNotSameAs(newTokens);
+    }
+
     private static MetadataService newMetadataService(ProjectManagerExtension extension) {
         return new MetadataService(extension.projectManager(), extension.executor());
     }
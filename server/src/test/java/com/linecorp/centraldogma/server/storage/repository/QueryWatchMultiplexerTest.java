@@ -0,0 +1,205 @@
+/*
+ * Copyright 2021 LINE Corporation
+ *
+ * LINE Corporation licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.linecorp.centraldogma.server.storage.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.linecorp.centraldogma.common.Entry;
+import com.linecorp.centraldogma.common.Query;
+import com.linecorp.centraldogma.common.Revision;
+import com.linecorp.centraldogma.internal.Jackson;
+
+class QueryWatchMultiplexerTest {
+
+    private static final String PATH = "/foo.json";
+
+    private final Map<Revision, JsonNode> contents = new ConcurrentHashMap<>();
+    private final List<CompletableFuture<Revision>> watchFutures = new ArrayList<>();
+    private Repository repo;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repo = mock(Repository.class);
+        when(repo.normalizeNow(any(Revision.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(repo.watch(any(Revision.class), anyString())).thenAnswer(invocation -> {
+            final CompletableFuture<Revision> future = new CompletableFuture<>();
+            synchronized (watchFutures) {
+                watchFutures.add(future);
+            }
+            return future;
+        });
+        when(repo.getOrNull(any(Revision.class), any(Query.class))).thenAnswer(invocation -> {
+            final Revision revision = invocation.getArgument(0);
+            final Query<JsonNode> query = invocation.getArgument(1);
+            final JsonNode content = contents.get(revision);
+            if (content == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.completedFuture(
+                    RepositoryUtil.applyQuery(Entry.ofJson(revision, PATH, content), query));
+        });
+
+        contents.put(new Revision(1), Jackson.readTree("{ \"a\": 1 }"));
+        contents.put(new Revision(2), Jackson.readTree("{ \"a\": 1, \"b\": 2 }"));
+        contents.put(new Revision(3), Jackson.readTree("{ \"a\": 2, \"b\": 2 }"));
+    }
+
+    @Test
+    void sharedEvaluation() {
+        final Query<JsonNode> query = Query.ofJsonPath(PATH, "$.a");
+        final List<CompletableFuture<Entry<JsonNode>>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(watch(new Revision(1), Query.ofJsonPath(PATH, "$.a")));
+        }
+
+        // The query was evaluated and the repository was watched only once.
+        verify(repo, times(1)).getOrNull(new Revision(1), query);
+        verify(repo, times(1)).watch(new Revision(1), PATH);
+        assertThat(QueryWatchMultiplexer.numGroups()).isOne();
+
+        // The query result was not changed.
+        lastWatchFuture().complete(new Revision(2));
+        verify(repo, times(1)).getOrNull(new Revision(2), query);
+        verify(repo, times(1)).watch(new Revision(2), PATH);
+        assertThat(futures).noneMatch(CompletableFuture::isDone);
+
+        // A new watcher which knows the latest result joins the group without evaluating the query.
+        futures.add(watch(new Revision(2), query));
+        verify(repo, times(1)).getOrNull(new Revision(2), query);
+
+        // The query result was changed.
+        lastWatchFuture().complete(new Revision(3));
+        verify(repo, times(1)).getOrNull(new Revision(3), query);
+        for (CompletableFuture<Entry<JsonNode>> f : futures) {
+            final Entry<JsonNode> entry = f.join();
+            assertThat(entry.revision()).isEqualTo(new Revision(3));
+            assertThat(entry.content().intValue()).isEqualTo(2);
+        }
+        assertThat(QueryWatchMultiplexer.numGroups()).isZero();
+    }
+
+    @Test
+    void staleWatcherCompletesImmediately() {
+        final Query<JsonNode> query = Query.ofJsonPath(PATH, "$.a");
+        final CompletableFuture<Entry<JsonNode>> first = watch(new Revision(1), query);
+        lastWatchFuture().complete(new Revision(2));
+        lastWatchFuture().complete(new Revision(3));
+        assertThat(first.join().content().intValue()).isEqualTo(2);
+
+        final CompletableFuture<Entry<JsonNode>> second = watch(new Revision(2), query);
+        final CompletableFuture<Entry<JsonNode>> third = watch(new Revision(1), query);
+        assertThat(second).isNotDone();
+        assertThat(third).isNotDone();
+
+        // Both watchers are notified by the same group.
+        assertThat(QueryWatchMultiplexer.numGroups()).isOne();
+        lastWatchFuture().complete(new Revision(3));
+        assertThat(second.join().content().intValue()).isEqualTo(2);
+        assertThat(third.join().content().intValue()).isEqualTo(2);
+
+        contents.put(new Revision(4), contents.get(new Revision(3)));
+        contents.put(new Revision(5), contents.get(new Revision(3)));
+        final CompletableFuture<Entry<JsonNode>> fourth = watch(new Revision(4), query);
+        lastWatchFuture().complete(new Revision(5));
+        assertThat(fourth).isNotDone();
+
+        // A watcher with an older result is notified without waiting for another change.
+        final CompletableFuture<Entry<JsonNode>> fifth = watch(new Revision(2), query);
+        assertThat(fifth.join().revision()).isEqualTo(new Revision(5));
+        assertThat(fourth).isNotDone();
+        fourth.cancel(true);
+        assertThat(QueryWatchMultiplexer.numGroups()).isZero();
+    }
+
+    @Test
+    void watchersWithDifferentRevisions() throws Exception {
+        contents.put(new Revision(4), Jackson.readTree("{ \"a\": 3, \"b\": 2 }"));
+        final Query<JsonNode> query = Query.ofJsonPath(PATH, "$.a");
+        final CompletableFuture<Entry<JsonNode>> older = watch(new Revision(1), query);
+        // Joins the group which watches for the changes since the revision 1.
+        final CompletableFuture<Entry<JsonNode>> newer = watch(new Revision(3), query);
+        assertThat(QueryWatchMultiplexer.numGroups()).isOne();
+
+        // The result at the revision 2 differs from the result the newer watcher knows,
+        // but the newer watcher must not be notified of a revision older than it knows.
+        lastWatchFuture().complete(new Revision(2));
+        assertThat(older).isNotDone();
+        assertThat(newer).isNotDone();
+
+        lastWatchFuture().complete(new Revision(3));
+        assertThat(older.join().revision()).isEqualTo(new Revision(3));
+        assertThat(newer).isNotDone();
+
+        lastWatchFuture().complete(new Revision(4));
+        assertThat(newer.join().revision()).isEqualTo(new Revision(4));
+        assertThat(newer.join().content().intValue()).isEqualTo(3);
+        assertThat(QueryWatchMultiplexer.numGroups()).isZero();
+    }
+
+    @Test
+    void cancellation() {
+        final Query<JsonNode> query = Query.ofJsonPath(PATH, "$.a");
+        final CompletableFuture<Entry<JsonNode>> a = watch(new Revision(1), query);
+        final CompletableFuture<Entry<JsonNode>> b = watch(new Revision(1), query);
+        final CompletableFuture<Revision> watchFuture = lastWatchFuture();
+
+        a.completeExceptionally(new CancellationException());
+        assertThat(watchFuture).isNotDone();
+        b.completeExceptionally(new CancellationException());
+
+        // The underlying watch must be cancelled when there are no more watchers.
+        assertThat(watchFuture).isCompletedExceptionally();
+        assertThat(QueryWatchMultiplexer.numGroups()).isZero();
+    }
+
+    @Test
+    void failure() {
+        final CompletableFuture<Entry<JsonNode>> a = watch(new Revision(1), Query.ofJsonPath(PATH, "$.a"));
+        final IllegalStateException cause = new IllegalStateException();
+        lastWatchFuture().completeExceptionally(cause);
+        assertThat(a).isCompletedExceptionally();
+        assertThat(a.handle((unused, thrown) -> thrown).join()).isSameAs(cause);
+        assertThat(QueryWatchMultiplexer.numGroups()).isZero();
+    }
+
+    private <T> CompletableFuture<Entry<T>> watch(Revision lastKnownRevision, Query<T> query) {
+        return QueryWatchMultiplexer.watch(repo, lastKnownRevision, query);
+    }
+
+    private CompletableFuture<Revision> lastWatchFuture() {
+        synchronized (watchFutures) {
+            return watchFutures.get(watchFutures.size() - 1);
+        }
+    }
+}